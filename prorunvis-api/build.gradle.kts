@@ -33,11 +33,21 @@ dependencies {
     implementation("com.google.code.gson:gson:2.10.1")
     implementation("commons-io:commons-io:2.15.1")
 
+    // Reading uploaded tar archives
+    implementation("org.apache.commons:commons-compress:1.26.1")
+
     // Local modules
     implementation(project(":prorunvis"))
     implementation(project(":frontend"))
 }
 
+// Virtual threads (spring.threads.virtual.enabled) need Java 21
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    }
+}
+
 tasks.test {
     useJUnitPlatform()
 }
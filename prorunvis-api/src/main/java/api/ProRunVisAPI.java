@@ -1,12 +1,21 @@
 package api;
 
+import api.job.JobThreads;
 import api.upload.storage.StorageProperties;
 import api.upload.storage.StorageService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import prorunvis.LaunchOptions;
+import prorunvis.RunLimits;
+import prorunvis.RunnerPool;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
 
 @SpringBootApplication
 @EnableConfigurationProperties(StorageProperties.class)
@@ -35,4 +44,48 @@ public class ProRunVisAPI {
             storageService.init();
         };
     }
+
+    /**
+     * The limits of every traced program. A program exceeding them is stopped
+     * and the trace written so far is processed as a truncated trace.
+     * @param timeout       the maximum wall-clock time of a program.
+     * @param maxHeap       the maximum heap of a program in megabytes.
+     * @param maxTraceBytes the maximum size of the trace of a program.
+     * @return the limits passed to {@link prorunvis.CompileAndRun}.
+     */
+    @Bean
+    RunLimits runLimits(@Value("${prorunvis.run.timeout:5m}") final Duration timeout,
+                        @Value("${prorunvis.run.max-heap-mb:512}") final int maxHeap,
+                        @Value("${prorunvis.run.max-trace-bytes:1073741824}") final long maxTraceBytes) {
+        return new RunLimits(timeout, maxHeap, maxTraceBytes);
+    }
+
+    /**
+     * How the JVM of a traced program running outside the {@link RunnerPool} is started.
+     * @param classDataSharing true to run every build from an AppCDS archive dumped by its first run.
+     * @param jvmOptions       further options of the JVM, tuned for short runs.
+     * @return the options passed to {@link prorunvis.CompileAndRun}.
+     */
+    @Bean
+    LaunchOptions launchOptions(@Value("${prorunvis.run.class-data-sharing:true}") final boolean classDataSharing,
+                                @Value("${prorunvis.run.jvm-options:}") final List<String> jvmOptions) {
+        return new LaunchOptions(classDataSharing, jvmOptions);
+    }
+
+    /**
+     * The warm JVMs running the traced programs, replacing the start of a
+     * new JVM for every program. The workers run with the heap of the limits.
+     * @param size       the number of idle workers kept, 0 disables the pool.
+     * @param maxJobs    the number of programs a worker runs before it is replaced.
+     * @param limits     the limits of every traced program.
+     * @param jobThreads creates the threads reading the output of the workers.
+     * @return the pool, closed when the application shuts down.
+     * @throws IOException if the pool cannot provide the classes of its workers.
+     */
+    @Bean
+    RunnerPool runnerPool(@Value("${prorunvis.runner.pool-size:2}") final int size,
+                          @Value("${prorunvis.runner.max-jobs-per-worker:100}") final int maxJobs,
+                          final RunLimits limits, final JobThreads jobThreads) throws IOException {
+        return new RunnerPool(size, maxJobs, limits.maxHeapMegabytes(), jobThreads.factory("prorunvis-runner-"));
+    }
 }
@@ -0,0 +1,23 @@
+package api.controller;
+
+import api.job.AdmissionException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Answers work rejected by the admission control of any endpoint with
+ * 429 Too Many Requests and a Retry-After header.
+ */
+@RestControllerAdvice
+public class AdmissionAdvice {
+
+    @ExceptionHandler(AdmissionException.class)
+    public ResponseEntity<String> handleRejected(final AdmissionException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, e.getRetryAfter().toSeconds())))
+                .body(e.getMessage());
+    }
+}
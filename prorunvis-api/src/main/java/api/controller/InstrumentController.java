@@ -1,7 +1,12 @@
 package api.controller;
 
+import api.job.AdmissionControl;
 import api.service.InstrumentationService;
+import api.service.Util;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.File;
 import java.util.UUID;
@@ -10,9 +15,11 @@ import java.util.UUID;
 @RequestMapping("/api/instrument")
 public class InstrumentController {
     private final InstrumentationService service;
+    private final AdmissionControl admission;
 
-    public InstrumentController(InstrumentationService service) {
+    public InstrumentController(InstrumentationService service, AdmissionControl admission) {
         this.service = service;
+        this.admission = admission;
     }
 
     /**
@@ -28,6 +35,7 @@ public class InstrumentController {
         if (inputDir == null || inputDir.isEmpty()) {
             inputDir = "/Users/yourname/Somewhere/defaultProjectDir";
         }
+        admission.admit();
 
         // Generate a unique ID (could be a timestamp, but here we use UUID)
         String randomId = UUID.randomUUID().toString();
@@ -39,4 +47,19 @@ public class InstrumentController {
         // Return that ID so the frontend can pass it to subsequent endpoints
         return randomId;
     }
-}
\ No newline at end of file
+
+    /**
+     * GET /api/instrument/<localId>/download
+     *
+     * Returns the instrumented sources of an ID as a zip archive, which is
+     * created while it is sent, so it is never held in memory or stored.
+     */
+    @GetMapping(value = "/{localId}/download", produces = "application/zip")
+    public ResponseEntity<StreamingResponseBody> download(@PathVariable String localId) {
+        File instrumentedDir = service.getInstrumentedDir(localId);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + localId + "-instrumented.zip\"")
+                .body(out -> Util.zipDirectory(instrumentedDir.toPath(), out));
+    }
+}
@@ -0,0 +1,93 @@
+package api.controller;
+
+import api.job.Job;
+import api.job.JobService;
+import api.job.JobStatus;
+import api.upload.storage.StorageException;
+import api.upload.storage.StorageService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import prorunvis.output.SchemaVersion;
+
+import java.net.URI;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    private final JobService service;
+    private final StorageService storageService;
+
+    public JobController(JobService service, StorageService storageService) {
+        this.service = service;
+        this.storageService = storageService;
+    }
+
+    /**
+     * POST /api/jobs?projectName=<name>&inputDir=<dir>[&schema=2]
+     * POST /api/jobs?projectName=<name>&uploadId=<id>[&schema=2]
+     *
+     * Submits a job instrumenting, tracing and processing the project and returns
+     * right away with 202 Accepted. The ID of the returned status is polled via
+     * GET /api/jobs/<id>, and once the job is DONE it is the local ID for
+     * GET /api/visualize/<id>.
+     * When the job queue is full or the node is at its limits, the job is
+     * rejected with 429 Too Many Requests and a Retry-After header. An unknown
+     * schema version is rejected with 400 Bad Request.
+     */
+    @PostMapping
+    public ResponseEntity<JobStatus> submit(@RequestParam String projectName,
+                                            @RequestParam(required = false) String inputDir,
+                                            @RequestParam(required = false) String uploadId,
+                                            @RequestParam(defaultValue = "1") int schema) {
+        Optional<SchemaVersion> version = SchemaVersion.find(schema);
+        if (version.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (uploadId != null) {
+            inputDir = storageService.load(uploadId).toString();
+        } else if (inputDir == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        Job job = service.submit(projectName, inputDir, version.get());
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/jobs/" + job.getId()))
+                .body(job.getStatus());
+    }
+
+    /**
+     * GET /api/jobs/<id>
+     *
+     * Returns the stage and the progress within the stage, e.g. the bytes of the
+     * trace read so far while processing.
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<JobStatus> getStatus(@PathVariable String id) {
+        return service.get(id)
+                .map(job -> ResponseEntity.ok(job.getStatus()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * DELETE /api/jobs/<id>
+     *
+     * Cancels a job. A queued job is dropped, a running one is interrupted and
+     * its traced program killed; poll the status to see it reach CANCELLED.
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<JobStatus> cancel(@PathVariable String id) {
+        return service.cancel(id)
+                .map(job -> ResponseEntity.ok(job.getStatus()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Answers submissions naming an unknown upload.
+     */
+    @ExceptionHandler(StorageException.class)
+    public ResponseEntity<String> handleUnknownUpload(final StorageException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+    }
+}
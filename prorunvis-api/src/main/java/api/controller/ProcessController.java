@@ -1,32 +1,48 @@
 package api.controller;
 
+import api.job.AdmissionControl;
 import api.service.ProcessingService;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import prorunvis.output.SchemaVersion;
+
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/process")
 public class ProcessController {
 
     private final ProcessingService processingService;
+    private final AdmissionControl admission;
 
-    public ProcessController(ProcessingService processingService) {
+    public ProcessController(ProcessingService processingService, AdmissionControl admission) {
         this.processingService = processingService;
+        this.admission = admission;
     }
 
     /**
-     * POST /api/process?traceId=<shortId>
+     * POST /api/process?traceId=<shortId>[&schema=2]
      *
      * We'll read local_storage/<shortId>/Trace.tr,
      * produce processedTrace.json, store it in the same folder,
      * and return the shortId (or path) for the next step.
+     * The optional schema selects the JSON schema version (default 1),
+     * an unknown version is answered with 400.
+     * If the free heap is short, the request is answered with 429.
      */
     @PostMapping
-    public String processTrace(@RequestParam String traceId) {
+    public ResponseEntity<String> processTrace(@RequestParam String traceId,
+                                               @RequestParam(defaultValue = "1") int schema) {
+        Optional<SchemaVersion> version = SchemaVersion.find(schema);
+        if (version.isEmpty()) {
+            return ResponseEntity.badRequest().body("Unknown schema version: " + schema);
+        }
+        admission.checkHeap();
         // run the processing
-        processingService.processTrace(traceId);
+        processingService.processTrace(traceId, version.get());
 
         // return the same short ID for the front end
         // so the front end can do a GET /api/visualize/<traceId> if desired
-        return traceId;
+        return ResponseEntity.ok(traceId);
     }
 }
\ No newline at end of file
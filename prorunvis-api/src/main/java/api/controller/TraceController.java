@@ -1,16 +1,27 @@
 package api.controller;
 
+import api.job.AdmissionControl;
 import api.service.TracingService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import prorunvis.RunLogs;
 
 @RestController
 @RequestMapping("/api/trace")
 public class TraceController {
 
+    /**
+     * The maximum number of bytes returned from the end of a log.
+     */
+    private static final int MAX_TAIL_BYTES = 1 << 20;
+
     private final TracingService service;
+    private final AdmissionControl admission;
 
-    public TraceController(TracingService service) {
+    public TraceController(TracingService service, AdmissionControl admission) {
         this.service = service;
+        this.admission = admission;
     }
 
     /**
@@ -18,14 +29,42 @@ public class TraceController {
      * We do NOT return a big absolute path anymore.
      * Instead, we just return the same short ID so the user can
      * pass it to /api/process later.
+     * If too many programs are running already, the request is answered with 429.
      */
     @PostMapping
     public String runTrace(@RequestParam String instrumentId) {
-        // This will decode and produce the trace file "Trace.tr"
-        // in local_storage/<instrumentId>/Trace.tr.
-        service.runTrace(instrumentId);
+        admission.checkStorage();
+        admission.tryAcquireChildProcess();
+        try {
+            // This will decode and produce the trace file "Trace.tr"
+            // in local_storage/<instrumentId>/Trace.tr.
+            service.runTrace(instrumentId);
+        } finally {
+            admission.releaseChildProcess();
+        }
 
         // Instead of returning an absolute path, we now just return the same short ID.
         return instrumentId;
     }
-}
\ No newline at end of file
+
+    /**
+     * GET /api/trace/<localId>/log?stream=stdout|stderr&bytes=<n>
+     *
+     * Returns the end of the standard or error output of the compiler and the
+     * traced program, which can be polled while a job is tracing.
+     */
+    @GetMapping(value = "/{localId}/log", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> getLog(@PathVariable String localId,
+                                         @RequestParam(defaultValue = "stdout") String stream,
+                                         @RequestParam(defaultValue = "65536") int bytes) {
+        String log = switch (stream) {
+            case "stdout" -> RunLogs.STDOUT;
+            case "stderr" -> RunLogs.STDERR;
+            default -> null;
+        };
+        if (log == null || bytes < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(service.tailLog(localId, log, Math.min(bytes, MAX_TAIL_BYTES)));
+    }
+}
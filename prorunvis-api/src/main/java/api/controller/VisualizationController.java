@@ -1,45 +1,238 @@
 package api.controller;
 
 import api.service.VisualizationService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import prorunvis.trace.MappedTraceNodeStore;
+import prorunvis.trace.TraceNodeSource;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
 
 /**
- * Returns JSON from the processedTrace.json file in local_storage/<localId>.
+ * Returns JSON from the processed trace files in local_storage/<localId>.
  */
 @RestController
 @RequestMapping("/api/visualize")
 public class VisualizationController {
 
+    /**
+     * The maximum number of nodes returned by a single request for a list of nodes.
+     */
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * The header set to "true" on a subtree cut off at {@link #MAX_PAGE_SIZE} nodes.
+     */
+    static final String TRUNCATED_HEADER = "X-Truncated";
+
     private final VisualizationService service;
-    private final ObjectMapper objectMapper;
+    private final Gson gson;
 
     public VisualizationController(VisualizationService service) {
         this.service = service;
-        this.objectMapper = new ObjectMapper();
+        this.gson = new Gson();
     }
 
     /**
      * We pass a local ID referencing the folder with processedTrace.json.
      *
-     * 1) We read the raw JSON string from VisualizationService.
-     * 2) Parse it into an Object so Spring can produce real JSON with correct Content-Type.
+     * The file is sent as it is, from memory for recently used traces and streamed
+     * from disk otherwise, preferring the precompressed copy for clients accepting
+     * gzip. Since the body is a {@link Resource}, Spring answers Range requests with
+     * partial content, and the ETag lets it answer If-None-Match requests for an
+     * unchanged trace with 304 Not Modified.
      */
     @GetMapping(value = "/{localId}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Object> getTraceJson(@PathVariable String localId) {
-        String rawJson = service.getTraceJson(localId);
-        try {
-            // Convert the raw JSON string to a generic Object
-            Object jsonObj = objectMapper.readValue(rawJson, Object.class);
-            // Return as JSON, 200 OK
-            return ResponseEntity.ok(jsonObj);
-        } catch (Exception e) {
-            // If parse fails or file is invalid, return 500
-            return ResponseEntity
-                    .status(500)
-                    .body("Failed to parse processedTrace.json: " + e.getMessage());
+    public ResponseEntity<Resource> getTraceJson(@PathVariable String localId,
+                                                 @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+                                                 String acceptEncoding) {
+        boolean gzip = acceptsGzip(acceptEncoding);
+        VisualizationService.TraceFile trace = service.getTrace(localId, gzip);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(trace.eTag())
+                .lastModified(trace.lastModified())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (trace.compressed()) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(trace.resource());
+    }
+
+    /**
+     * Checks whether an Accept-Encoding header allows gzip, honouring the
+     * q-values, so "gzip;q=0" refuses it. Without an entry for gzip, the
+     * wildcard "*" decides.
+     *
+     * @param acceptEncoding the value of the header, or null if it is missing.
+     * @return true if the response may be gzip compressed.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double wildcard = null;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = quality;
+            } else if (coding.equals("*")) {
+                wildcard = quality;
+            }
+        }
+        Double decisive = gzip != null ? gzip : wildcard;
+        return decisive != null && decisive > 0;
+    }
+
+    /**
+     * Returns a single node of a processed trace, with its index like the nodes
+     * returned by the other node endpoints. The node is read from the
+     * memory-mapped node store, so the rest of the trace is never loaded.
+     */
+    @GetMapping(value = "/{localId}/node/{index}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getNode(@PathVariable String localId, @PathVariable int index) {
+        MappedTraceNodeStore store = service.getNodeStore(localId);
+        if (index < 0 || index >= store.size()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(gson.toJson(toJsonTree(store, index)));
+    }
+
+    /**
+     * Returns a page of the node list of a processed trace. Every node carries
+     * its position in the node list as additional "index" property.
+     */
+    @GetMapping(value = "/{localId}/nodes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getNodes(@PathVariable String localId,
+                                           @RequestParam(defaultValue = "0") int from,
+                                           @RequestParam(defaultValue = "" + MAX_PAGE_SIZE) int count) {
+        MappedTraceNodeStore store = service.getNodeStore(localId);
+        if (from < 0 || count < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        int to = (int) Math.min(store.size(), (long) from + Math.min(count, MAX_PAGE_SIZE));
+        List<Integer> indices = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            indices.add(i);
         }
+        return ResponseEntity.ok(toJson(store, indices));
+    }
+
+    /**
+     * Returns a page of the children of a node, so nodes can be expanded one at a time.
+     */
+    @GetMapping(value = "/{localId}/node/{index}/children", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getChildren(@PathVariable String localId, @PathVariable int index,
+                                              @RequestParam(defaultValue = "0") int from,
+                                              @RequestParam(defaultValue = "" + MAX_PAGE_SIZE) int count) {
+        MappedTraceNodeStore store = service.getNodeStore(localId);
+        if (index < 0 || index >= store.size()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (from < 0 || count < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        int to = (int) Math.min(store.getChildCount(index), (long) from + Math.min(count, MAX_PAGE_SIZE));
+        List<Integer> indices = new ArrayList<>();
+        for (int k = from; k < to; k++) {
+            indices.add(store.getChild(index, k));
+        }
+        return ResponseEntity.ok(toJson(store, indices));
+    }
+
+    /**
+     * Returns a node and its descendants up to the given depth in breadth-first
+     * order. At most {@value #MAX_PAGE_SIZE} nodes are returned; if the subtree
+     * is larger, the response carries the header {@value #TRUNCATED_HEADER},
+     * and the missing nodes can be requested as children or subtrees of the
+     * returned ones. Children are only queued while they fit into the page, so
+     * a wide subtree never holds more than a page of nodes in memory.
+     */
+    @GetMapping(value = "/{localId}/node/{index}/subtree", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getSubtree(@PathVariable String localId, @PathVariable int index,
+                                             @RequestParam(defaultValue = "1") int depth) {
+        MappedTraceNodeStore store = service.getNodeStore(localId);
+        if (index < 0 || index >= store.size()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (depth < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<Integer> indices = new ArrayList<>();
+        Deque<int[]> queue = new ArrayDeque<>();
+        queue.add(new int[]{index, 0});
+        boolean truncated = false;
+        while (!queue.isEmpty()) {
+            int[] next = queue.poll();
+            indices.add(next[0]);
+            if (next[1] < depth) {
+                int childCount = store.getChildCount(next[0]);
+                int room = MAX_PAGE_SIZE - indices.size() - queue.size();
+                if (childCount > room) {
+                    truncated = true;
+                }
+                for (int k = 0; k < Math.min(childCount, room); k++) {
+                    queue.add(new int[]{store.getChild(next[0], k), next[1] + 1});
+                }
+            }
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (truncated) {
+            response.header(TRUNCATED_HEADER, "true");
+        }
+        return response.body(toJson(store, indices));
+    }
+
+    /**
+     * Returns an iteration of the loop a node is an iteration of, using the iteration
+     * index built during processing instead of searching the children of the loop's parent.
+     */
+    @GetMapping(value = "/{localId}/node/{index}/iteration/{iteration}",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getIteration(@PathVariable String localId, @PathVariable int index,
+                                               @PathVariable int iteration) {
+        MappedTraceNodeStore store = service.getNodeStore(localId);
+        if (index < 0 || index >= store.size()
+                || iteration < 1 || iteration > store.getIterationCount(index)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(gson.toJson(toJsonTree(store, store.getIterationNode(index, iteration - 1))));
+    }
+
+    private String toJson(TraceNodeSource store, List<Integer> indices) {
+        JsonArray nodes = new JsonArray();
+        for (int index : indices) {
+            nodes.add(toJsonTree(store, index));
+        }
+        return gson.toJson(nodes);
+    }
+
+    private JsonObject toJsonTree(TraceNodeSource store, int index) {
+        JsonObject node = gson.toJsonTree(store.getNode(index)).getAsJsonObject();
+        node.addProperty("index", index);
+        return node;
     }
 }
\ No newline at end of file
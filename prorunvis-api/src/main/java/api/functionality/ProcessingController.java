@@ -3,47 +3,135 @@ package api.functionality;
 
 import api.functionality.process.ProcessingException;
 import api.functionality.process.ProcessingService;
+import api.job.AdmissionControl;
+import api.job.JobThreads;
+import api.service.ParsePipeline;
+import api.service.Workspace;
+import api.service.WorkspaceService;
+import api.upload.storage.StorageException;
+import api.upload.storage.StorageService;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import prorunvis.RunLimits;
+
+import java.nio.file.Path;
+import java.util.concurrent.ThreadFactory;
 
 @Controller
 public class ProcessingController {
 
     /**
-     * The processing service used by this controller.
+     * Provides a new processing service for every run.
+     */
+    private final ObjectProvider<ProcessingService> processingServices;
+
+    /**
+     * The storage service holding the uploaded input.
      */
-    private final ProcessingService processingService;
+    private final StorageService storageService;
 
     /**
-     * @param processingService The processing service which this controller
-     *                          will use for handling the processing of the
-     *                          given input.
+     * Provides the private output directory of every run.
+     */
+    private final WorkspaceService workspaces;
+
+    /**
+     * Creates the threads draining the output of the compiler and the traced program.
+     */
+    private final ThreadFactory outputThreads;
+
+    /**
+     * Decides whether the node can take another run.
+     */
+    private final AdmissionControl admission;
+
+    /**
+     * The limits of the traced programs.
+     */
+    private final RunLimits limits;
+
+    /**
+     * Parses the uploads, most of their files while they are uploaded.
+     */
+    private final ParsePipeline parsePipeline;
+
+    /**
+     * @param processingServices Provides the processing services which this
+     *                           controller will use for handling the processing
+     *                           of the given input, one per request.
+     * @param storageService     The storage service holding the uploads.
+     * @param workspaces         Provides the output directories of the runs.
+     * @param jobThreads         Creates the threads used by the runs.
+     * @param admission          Decides whether the node can take another run.
+     * @param limits             The limits of the traced programs.
+     * @param parsePipeline      Parses the uploads.
      */
     @Autowired
-    public ProcessingController(final ProcessingService processingService) {
-        this.processingService = processingService;
+    public ProcessingController(final ObjectProvider<ProcessingService> processingServices,
+                                final StorageService storageService,
+                                final WorkspaceService workspaces,
+                                final JobThreads jobThreads,
+                                final AdmissionControl admission,
+                                final RunLimits limits,
+                                final ParsePipeline parsePipeline) {
+        this.processingServices = processingServices;
+        this.storageService = storageService;
+        this.workspaces = workspaces;
+        this.outputThreads = jobThreads.factory("prorunvis-output-");
+        this.admission = admission;
+        this.limits = limits;
+        this.parsePipeline = parsePipeline;
     }
 
 
     /**
      * Handles the processing of provided data. The data will be processed as
      * provided by the used {@link ProcessingService} of this controller.
+     * Every request runs in a workspace of its own, which is deleted once
+     * the trace has been processed, so concurrent requests do not interfere.
+     * Requests exceeding the limits of the admission control are answered
+     * with 429 Too Many Requests, requests without an upload ID with
+     * 400 Bad Request.
      *
-     * @return A JSON-String representation of the processed data.
+     * @param uploadId The ID of the upload to process.
+     * @return A body streaming the JSON representation of the processed data.
      */
-    @GetMapping("api/process")
+    @GetMapping(value = "api/process", produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public String getProcessingData() {
-        if (!processingService.isReady()) {
-            throw new ProcessingException("No Data has been uploaded!");
+    public StreamingResponseBody getProcessingData(@RequestParam final String uploadId) {
+        Path input;
+        try {
+            input = storageService.load(uploadId);
+        } catch (StorageException e) {
+            throw new ProcessingException("No Data has been uploaded!", e);
+        }
+
+        admission.admit();
+        try (Workspace workspace = workspaces.open(uploadId)) {
+            ProcessingService processingService = processingServices.getObject(input, workspace.getRoot(),
+                    outputThreads, limits, parsePipeline);
+            if (!processingService.isReady()) {
+                throw new ProcessingException("No Data has been uploaded!");
+            }
+            processingService.instrument();
+            admission.tryAcquireChildProcess();
+            try {
+                processingService.trace();
+            } finally {
+                admission.releaseChildProcess();
+            }
+            admission.checkHeap();
+            processingService.process();
+            // the processed nodes are held in memory, the workspace is not needed for writing them
+            return processingService::writeJSON;
         }
-        processingService.instrument();
-        processingService.trace();
-        processingService.process();
-        return processingService.toJSON();
     }
 
     /**
@@ -1,5 +1,12 @@
 package api.functionality.process;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Instruments, traces and processes uploaded code. An implementation holds the
+ * state of a single run, so a new instance is obtained for every run.
+ */
 public interface ProcessingService {
 
     /**
@@ -28,9 +35,11 @@ public interface ProcessingService {
     void process();
 
     /**
-     * Converts a processed trace to a JSON representation.
+     * Writes the JSON representation of a processed trace to a stream.
+     * The stream is flushed but not closed.
      *
-     * @return A String containing the JSON representation.
+     * @param out The stream to write the JSON representation to.
+     * @throws IOException If writing to the stream fails.
      */
-    String toJSON();
+    void writeJSON(OutputStream out) throws IOException;
 }
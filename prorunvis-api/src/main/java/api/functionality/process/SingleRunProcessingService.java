@@ -1,28 +1,27 @@
 package api.functionality.process;
 
-import api.upload.storage.StorageProperties;
-import com.github.javaparser.StaticJavaParser;
+import api.service.ParsePipeline;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Node;
-import com.github.javaparser.symbolsolver.JavaSymbolSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
-import com.github.javaparser.symbolsolver.utils.SymbolSolverCollectionStrategy;
-import com.github.javaparser.utils.ProjectRoot;
-import com.google.gson.Gson;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 import prorunvis.CompileAndRun;
+import prorunvis.RunLimits;
 import prorunvis.instrument.Instrumenter;
-import prorunvis.preprocess.Preprocessor;
-import prorunvis.trace.TraceNode;
+import prorunvis.output.TraceJsonWriter;
+import prorunvis.trace.TraceNodeTable;
 import prorunvis.trace.process.TraceProcessor;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ThreadFactory;
 
 @Service
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public final class SingleRunProcessingService implements ProcessingService {
 
     /**
@@ -35,6 +34,21 @@ public final class SingleRunProcessingService implements ProcessingService {
      */
     private final Path outLocation;
 
+    /**
+     * Creates the threads draining the output of the compiler and the traced program.
+     */
+    private final ThreadFactory outputThreads;
+
+    /**
+     * The limits of the traced program.
+     */
+    private final RunLimits limits;
+
+    /**
+     * Parses the input, using the files parsed while they were uploaded.
+     */
+    private final ParsePipeline parsePipeline;
+
     /**
      * A List of {@link CompilationUnit}s.
      */
@@ -52,25 +66,36 @@ public final class SingleRunProcessingService implements ProcessingService {
     private HashMap<Integer, Node> traceMap;
 
     /**
-     * A List of {@link TraceNode} objects as provided by the
-     * {@link TraceProcessor} of the ProRunVis library.
+     * The processed trace as compacted by the {@link TraceProcessor} of the
+     * ProRunVis library.
      */
-    private List<TraceNode> nodes;
+    private TraceNodeTable nodes;
 
     /**
      * Constructs a ProcessingService for processing a single program
-     * run.
+     * run. As the service holds the state of its run, a new instance is
+     * created for every run, see {@link ProcessingService}.
      *
-     * @param properties The StorageProperties for input and output
-     *                   locations.
+     * @param inLocation  The directory holding the uploaded input.
+     * @param outLocation The directory for the output of this run, which
+     *                    must not be used by other runs.
+     * @param outputThreads Creates the threads draining the output of the
+     *                      compiler and the traced program.
+     * @param limits      The limits of the traced program.
+     * @param parsePipeline Parses the input.
      */
-    public SingleRunProcessingService(final StorageProperties properties) {
-        if (properties.getLocation().trim().isEmpty()) {
+    public SingleRunProcessingService(final Path inLocation, final Path outLocation,
+                                      final ThreadFactory outputThreads, final RunLimits limits,
+                                      final ParsePipeline parsePipeline) {
+        if (inLocation == null || outLocation == null) {
             throw new ProcessingException("Cannot process empty directory.");
         }
 
-        inLocation = Paths.get(properties.getLocation());
-        outLocation = Paths.get(properties.getOutLocation());
+        this.inLocation = inLocation;
+        this.outLocation = outLocation;
+        this.outputThreads = outputThreads;
+        this.limits = limits;
+        this.parsePipeline = parsePipeline;
     }
     @Override
     public boolean isReady() {
@@ -81,37 +106,27 @@ public final class SingleRunProcessingService implements ProcessingService {
 
     @Override
     public void instrument() {
-        //setup parser and trace file
-        StaticJavaParser.getParserConfiguration().setSymbolResolver(new JavaSymbolSolver(new CombinedTypeSolver()));
-        ProjectRoot projectRoot =
-                new SymbolSolverCollectionStrategy().collect(inLocation);
-
+        //setup trace file
         traceFile = new File(outLocation.toString() + "/Trace.tr");
         Instrumenter.setupTrace(traceFile);
 
-        //run parser and collect compilation units
-        cus = new ArrayList<>();
-        projectRoot.getSourceRoots().forEach(sr -> {
-            try {
-                sr.tryToParse().forEach(cu -> cus.add(cu.getResult().orElseThrow()));
-            } catch (IOException | NoSuchElementException e) {
-                throw new ProcessingException("Cannot parse provided input.", e);
-            }
-        });
+        //collect the compilation units, most of them parsed and preprocessed during the upload
+        try {
+            cus = parsePipeline.parse(inLocation);
+        } catch (RuntimeException e) {
+            throw new ProcessingException("Cannot parse provided input.", e);
+        }
 
         traceMap = new HashMap<>();
-        cus.forEach(cu -> {
-            Preprocessor.run(cu);
-            Instrumenter.run(cu, traceMap);
-        });
-        Instrumenter.saveInstrumented(projectRoot, outLocation.toString() + "/instrumented");
+        cus.forEach(cu -> Instrumenter.run(cu, traceMap));
+        Instrumenter.saveInstrumented(cus, outLocation.toString() + "/instrumented");
     }
 
     @Override
     public void trace() {
         try {
             CompileAndRun.run(cus, outLocation.toString() + "/instrumented",
-                    outLocation.toString() + "/compiled");
+                    outLocation.toString() + "/compiled", outputThreads, limits);
         } catch (IOException | InterruptedException | ArrayIndexOutOfBoundsException e) {
             throw new ProcessingException(e.getMessage());
         }
@@ -125,14 +140,12 @@ public final class SingleRunProcessingService implements ProcessingService {
         } catch (IOException e) {
             throw new ProcessingException("An error occurred during processing of the trace.", e);
         }
-        nodes = processor.getNodeList();
+        nodes = processor.getNodeTable();
     }
 
     @Override
-    public String toJSON() {
-        Gson gson = new Gson();
-        String response = gson.toJson(nodes);
-        //replace \\ from windows paths with / for webkit directory
-        return response.replace("\\\\", "/");
+    public void writeJSON(final OutputStream out) throws IOException {
+        //windows paths are already converted to / by the JumpLinks
+        new TraceJsonWriter(false).write(nodes.asList(), out);
     }
 }
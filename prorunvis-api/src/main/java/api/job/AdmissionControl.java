@@ -0,0 +1,214 @@
+package api.job;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Decides whether the service accepts more work, so a burst of requests
+ * degrades into 429 responses instead of exhausting the node.
+ * <p>
+ * Three resources are guarded:
+ * <ul>
+ *     <li>the number of child JVMs (javac and the traced program) running at once,</li>
+ *     <li>the free heap, which processing a trace fills with its nodes,</li>
+ *     <li>the size of the local storage holding the instrumented code and traces.</li>
+ * </ul>
+ * Jobs wait for child process permits and free heap, while requests processed
+ * synchronously are rejected with an {@link AdmissionException} right away.
+ */
+@Component
+public class AdmissionControl {
+
+    /**
+     * The folder holding the results of all local IDs.
+     */
+    private static final Path LOCAL_STORAGE_DIR = Paths.get("resources/local_storage");
+
+    /**
+     * How long a measured size of the local storage is reused, in nanoseconds.
+     */
+    private static final long STORAGE_CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * How often a job waiting for free heap checks it again, in milliseconds.
+     */
+    private static final long HEAP_POLL_INTERVAL = 1000;
+
+    /**
+     * The permits for running a child JVM.
+     */
+    private final Semaphore childProcesses;
+
+    /**
+     * The heap that must be available before a trace is processed, in bytes.
+     */
+    private final long minFreeHeap;
+
+    /**
+     * The maximum size of the local storage in bytes.
+     */
+    private final long storageQuota;
+
+    /**
+     * How long a job waits for free heap before it fails.
+     */
+    private final Duration heapWait;
+
+    /**
+     * The time after which rejected clients should retry.
+     */
+    private final Duration retryAfter;
+
+    /**
+     * The last measured size of the local storage and the time it was measured.
+     */
+    private long storageSize;
+    private long storageMeasured;
+    private boolean storageKnown;
+
+    public AdmissionControl(@Value("${prorunvis.admission.max-child-processes:2}") int maxChildProcesses,
+                            @Value("${prorunvis.admission.min-free-heap-bytes:268435456}") long minFreeHeap,
+                            @Value("${prorunvis.admission.storage-quota-bytes:10737418240}") long storageQuota,
+                            @Value("${prorunvis.admission.heap-wait:1m}") Duration heapWait,
+                            @Value("${prorunvis.admission.retry-after:30s}") Duration retryAfter) {
+        this.childProcesses = new Semaphore(maxChildProcesses, true);
+        this.minFreeHeap = minFreeHeap;
+        this.storageQuota = storageQuota;
+        this.heapWait = heapWait;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the time after which rejected clients should retry.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Checks whether new work can be admitted at all.
+     *
+     * @throws AdmissionException If the local storage exceeds its quota or the heap is short.
+     */
+    public void admit() {
+        checkStorage();
+        checkHeap();
+    }
+
+    /**
+     * @throws AdmissionException If the local storage exceeds its quota.
+     */
+    public void checkStorage() {
+        long size = storageSize();
+        if (size >= storageQuota) {
+            throw new AdmissionException("The local storage is full (" + size + " of " + storageQuota
+                    + " bytes), please try again later.", retryAfter);
+        }
+    }
+
+    /**
+     * @throws AdmissionException If less than the required heap is available.
+     */
+    public void checkHeap() {
+        long free = freeHeap();
+        if (free < minFreeHeap) {
+            throw new AdmissionException("Not enough free memory to process a trace (" + free + " of "
+                    + minFreeHeap + " bytes), please try again later.", retryAfter);
+        }
+    }
+
+    /**
+     * Waits until the required heap is available, for at most the configured time.
+     *
+     * @throws AdmissionException   If the heap is still short after waiting.
+     * @throws InterruptedException If the waiting thread is interrupted.
+     */
+    public void awaitHeap() throws InterruptedException {
+        long deadline = System.nanoTime() + heapWait.toNanos();
+        while (freeHeap() < minFreeHeap && System.nanoTime() < deadline) {
+            Thread.sleep(HEAP_POLL_INTERVAL);
+        }
+        checkHeap();
+    }
+
+    /**
+     * @return the permits for running a child JVM, which jobs wait for.
+     */
+    public Semaphore getChildProcessPermits() {
+        return childProcesses;
+    }
+
+    /**
+     * Takes a permit to run a child JVM if one is available right away,
+     * to be returned by {@link #releaseChildProcess()}.
+     *
+     * @throws AdmissionException If all permits are taken.
+     */
+    public void tryAcquireChildProcess() {
+        if (!childProcesses.tryAcquire()) {
+            throw new AdmissionException("Too many programs are running, please try again later.", retryAfter);
+        }
+    }
+
+    /**
+     * Returns a permit taken by {@link #tryAcquireChildProcess()}.
+     */
+    public void releaseChildProcess() {
+        childProcesses.release();
+    }
+
+    /**
+     * Estimates the heap available for new objects. Garbage not collected
+     * yet counts as used, so the estimate errs on the safe side.
+     */
+    private static long freeHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * @return the size of the local storage, measured at most every few seconds.
+     */
+    private synchronized long storageSize() {
+        long now = System.nanoTime();
+        if (!storageKnown || now - storageMeasured > STORAGE_CHECK_INTERVAL) {
+            try {
+                storageSize = measure(LOCAL_STORAGE_DIR);
+                storageMeasured = now;
+                storageKnown = true;
+            } catch (IOException | UncheckedIOException e) {
+                // a folder removed while walking, keep the last size and measure again on the next check
+                System.out.println("Could not measure the local storage: " + e.getMessage());
+            }
+        }
+        return storageSize;
+    }
+
+    private static long measure(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (NoSuchFileException e) {
+                    return 0;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package api.job;
+
+import java.time.Duration;
+
+/**
+ * Signals that work was not admitted because the service is at its limits,
+ * e.g. the job queue is full or the local storage exceeds its quota.
+ * Clients are answered with 429 Too Many Requests and should retry after
+ * {@link #getRetryAfter()}.
+ */
+public class AdmissionException extends RuntimeException {
+
+    /**
+     * The time after which the client should try again.
+     */
+    private final Duration retryAfter;
+
+    /**
+     * Constructs an AdmissionException with the specified detail message.
+     *
+     * @param message    The detail message.
+     * @param retryAfter The time after which the client should try again.
+     */
+    public AdmissionException(final String message, final Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the time after which the client should try again.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,137 @@
+package api.job;
+
+import java.time.Instant;
+import java.util.concurrent.Future;
+import java.util.function.LongSupplier;
+
+/**
+ * A single run of the instrument, trace and process pipeline, executed
+ * asynchronously by the {@link JobService}.
+ */
+public final class Job implements ProgressTracker {
+
+    /**
+     * Supplies no progress, used until a stage registers its own.
+     */
+    private static final LongSupplier NO_PROGRESS = () -> 0;
+
+    /**
+     * The ID of this job, also used as local ID of its results.
+     */
+    private final String id;
+
+    /**
+     * The current stage of this job.
+     */
+    private volatile JobStage stage = JobStage.QUEUED;
+
+    /**
+     * Supplies the work done in the current stage.
+     */
+    private volatile LongSupplier done = NO_PROGRESS;
+
+    /**
+     * Supplies the total work of the current stage.
+     */
+    private volatile LongSupplier total = NO_PROGRESS;
+
+    /**
+     * The reason this job failed, or null.
+     */
+    private volatile String error;
+
+    /**
+     * The time this job finished, or null while it is queued or running.
+     */
+    private volatile Instant finished;
+
+    /**
+     * Whether cancelling this job was requested.
+     */
+    private volatile boolean cancelRequested;
+
+    /**
+     * The task executing this job, set once it is submitted.
+     */
+    private volatile Future<?> future;
+
+    Job(final String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public JobStage getStage() {
+        return stage;
+    }
+
+    /**
+     * @return the time this job finished, or null if it has not finished yet.
+     */
+    public Instant getFinished() {
+        return finished;
+    }
+
+    /**
+     * @return a snapshot of the current state of this job.
+     */
+    public JobStatus getStatus() {
+        return new JobStatus(id, stage, done.getAsLong(), total.getAsLong(), error);
+    }
+
+    @Override
+    public void track(final LongSupplier workDone, final LongSupplier totalWork) {
+        this.done = workDone;
+        this.total = totalWork;
+    }
+
+    boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    void setFuture(final Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * Enters the next stage, unless the job has already finished.
+     *
+     * @param next the stage to enter.
+     */
+    synchronized void enter(final JobStage next) {
+        if (!stage.isFinished()) {
+            stage = next;
+            done = NO_PROGRESS;
+            total = NO_PROGRESS;
+        }
+    }
+
+    /**
+     * Finishes this job. Only the first call has an effect, so a job cancelled
+     * while queued is not marked as failed by its task afterwards.
+     *
+     * @param result the final stage, one of the finished stages.
+     * @param reason the reason the job failed, or null.
+     */
+    synchronized void finish(final JobStage result, final String reason) {
+        if (!stage.isFinished()) {
+            stage = result;
+            error = reason;
+            finished = Instant.now();
+        }
+    }
+
+    /**
+     * Requests cancelling this job. A queued job is cancelled immediately,
+     * a running one is interrupted and finishes as soon as its stage notices.
+     */
+    void cancel() {
+        cancelRequested = true;
+        Future<?> task = future;
+        if (task != null && task.cancel(true) && stage == JobStage.QUEUED) {
+            finish(JobStage.CANCELLED, null);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package api.job;
+
+import api.service.InstrumentationService;
+import api.service.ProcessingService;
+import api.service.TracingService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import prorunvis.output.SchemaVersion;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the instrument, trace and process pipeline asynchronously, so long
+ * running programs do not block request threads.
+ * <p>
+ * Jobs are executed by a fixed number of threads and wait in a bounded queue
+ * when all threads are busy; submissions beyond the queue, or while the
+ * {@link AdmissionControl} reports the node at its limits, are rejected with an
+ * {@link AdmissionException}. In addition, the number of jobs instrumenting and
+ * processing at once is limited per stage, tracing waits for a permit to run
+ * its child JVMs, and processing waits for enough free heap.
+ * <p>
+ * With virtual threads enabled (see {@link JobThreads}), a job waiting for a
+ * permit or for its traced program only parks a virtual thread, so the number
+ * of threads can be raised to the number of jobs that should be accepted at once.
+ */
+@Service
+public class JobService {
+
+    private final InstrumentationService instrumentationService;
+    private final TracingService tracingService;
+    private final ProcessingService processingService;
+    private final AdmissionControl admission;
+
+    /**
+     * The executor running the jobs.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The permits for running each stage.
+     */
+    private final Semaphore instrumentPermits;
+    private final Semaphore processPermits;
+
+    /**
+     * How long finished jobs can still be queried.
+     */
+    private final Duration retention;
+
+    /**
+     * All jobs which are running or finished within the retention time, by ID.
+     */
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public JobService(InstrumentationService instrumentationService,
+                      TracingService tracingService,
+                      ProcessingService processingService,
+                      JobThreads jobThreads,
+                      AdmissionControl admission,
+                      @Value("${prorunvis.jobs.threads:4}") int threads,
+                      @Value("${prorunvis.jobs.queue-capacity:32}") int queueCapacity,
+                      @Value("${prorunvis.jobs.concurrency.instrument:1}") int instrumentConcurrency,
+                      @Value("${prorunvis.jobs.concurrency.process:1}") int processConcurrency,
+                      @Value("${prorunvis.jobs.retention:1h}") Duration retention) {
+        this.instrumentationService = instrumentationService;
+        this.tracingService = tracingService;
+        this.processingService = processingService;
+        this.admission = admission;
+        this.instrumentPermits = new Semaphore(instrumentConcurrency, true);
+        this.processPermits = new Semaphore(processConcurrency, true);
+        this.retention = retention;
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), jobThreads.factory("prorunvis-job-"));
+    }
+
+    /**
+     * Submits a job instrumenting, tracing and processing a project.
+     *
+     * @param projectName the name of the project.
+     * @param inputDir    the folder containing the source code of the project.
+     * @param schema      the JSON schema version of the processed trace.
+     * @return the submitted job.
+     * @throws AdmissionException If the queue of waiting jobs is full or the node is at its limits.
+     */
+    public Job submit(String projectName, String inputDir, SchemaVersion schema) {
+        removeExpired();
+        admission.admit();
+        Job job = new Job(UUID.randomUUID().toString());
+        jobs.put(job.getId(), job);
+        try {
+            job.setFuture(executor.submit(() -> run(job, projectName, inputDir, schema)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new AdmissionException("Too many jobs are waiting, please try again later.",
+                    admission.getRetryAfter());
+        }
+        return job;
+    }
+
+    /**
+     * @param id the ID of a job.
+     * @return the job, if it is running or finished within the retention time.
+     */
+    public Optional<Job> get(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Cancels a job, killing the traced program if it is running.
+     *
+     * @param id the ID of the job.
+     * @return the job, if it is known.
+     */
+    public Optional<Job> cancel(String id) {
+        Optional<Job> job = get(id);
+        job.ifPresent(Job::cancel);
+        // drop cancelled jobs from the queue right away, so they do not take up its capacity
+        executor.purge();
+        return job;
+    }
+
+    /**
+     * Interrupts all running jobs when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(Job job, String projectName, String inputDir, SchemaVersion schema) {
+        if (job.isCancelRequested()) {
+            job.finish(JobStage.CANCELLED, null);
+            return;
+        }
+        try {
+            runStage(job, JobStage.INSTRUMENTING, instrumentPermits,
+                    () -> instrumentationService.instrumentProject(projectName, inputDir, job.getId(), job));
+            runStage(job, JobStage.TRACING, admission.getChildProcessPermits(),
+                    () -> tracingService.runTrace(job.getId()));
+            runStage(job, JobStage.PROCESSING, processPermits, () -> {
+                admission.awaitHeap();
+                processingService.processTrace(job.getId(), schema, job);
+            });
+            job.finish(JobStage.DONE, null);
+        } catch (InterruptedException e) {
+            job.finish(JobStage.CANCELLED, null);
+        } catch (RuntimeException e) {
+            if (job.isCancelRequested()) {
+                job.finish(JobStage.CANCELLED, null);
+            } else {
+                job.finish(JobStage.FAILED, describe(e));
+            }
+        }
+    }
+
+    private void runStage(Job job, JobStage stage, Semaphore permits, StageWork work) throws InterruptedException {
+        permits.acquire();
+        try {
+            job.enter(stage);
+            work.run();
+        } finally {
+            permits.release();
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * The work of a stage, which may wait for resources.
+     */
+    @FunctionalInterface
+    private interface StageWork {
+        void run() throws InterruptedException;
+    }
+
+    private static String describe(Throwable e) {
+        StringBuilder message = new StringBuilder(String.valueOf(e.getMessage()));
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            message.append("\n").append(cause);
+        }
+        return message.toString();
+    }
+
+    private void removeExpired() {
+        Instant limit = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.getFinished() != null && job.getFinished().isBefore(limit));
+    }
+}
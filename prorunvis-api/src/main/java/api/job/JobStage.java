@@ -0,0 +1,22 @@
+package api.job;
+
+/**
+ * The stages a {@link Job} passes through, in order. A job ends in
+ * {@link #DONE}, {@link #FAILED} or {@link #CANCELLED}.
+ */
+public enum JobStage {
+    QUEUED,
+    INSTRUMENTING,
+    TRACING,
+    PROCESSING,
+    DONE,
+    FAILED,
+    CANCELLED;
+
+    /**
+     * @return true if a job in this stage will not change anymore.
+     */
+    public boolean isFinished() {
+        return this == DONE || this == FAILED || this == CANCELLED;
+    }
+}
@@ -0,0 +1,13 @@
+package api.job;
+
+/**
+ * A snapshot of the state of a {@link Job}, returned by the job endpoints.
+ *
+ * @param id       the ID of the job, which is also the local ID of its results.
+ * @param stage    the current stage of the job.
+ * @param progress the work done in the current stage.
+ * @param total    the total work of the current stage, 0 if it is unknown.
+ * @param error    the reason the job failed, or null.
+ */
+public record JobStatus(String id, JobStage stage, long progress, long total, String error) {
+}
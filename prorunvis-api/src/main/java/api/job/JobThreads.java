@@ -0,0 +1,46 @@
+package api.job;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads running jobs and draining the output of traced programs.
+ * <p>
+ * Both spend most of their time blocked, waiting for a child process or on a
+ * pipe. With "spring.threads.virtual.enabled" set, which also moves the request
+ * handling of Tomcat onto virtual threads, they are created as virtual threads,
+ * so hundreds of them share a small pool of carrier threads. Otherwise they are
+ * platform daemon threads.
+ */
+@Component
+public class JobThreads {
+
+    /**
+     * Whether virtual threads are created.
+     */
+    private final boolean virtual;
+
+    public JobThreads(@Value("${spring.threads.virtual.enabled:false}") boolean virtual) {
+        this.virtual = virtual;
+    }
+
+    /**
+     * @return true if the created threads are virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @param prefix the prefix of the thread names, which are numbered from 1.
+     * @return a factory creating threads for jobs or their child processes.
+     */
+    public ThreadFactory factory(String prefix) {
+        if (virtual) {
+            return Thread.ofVirtual().name(prefix, 1).factory();
+        }
+        return Thread.ofPlatform().daemon().name(prefix, 1).factory();
+    }
+}
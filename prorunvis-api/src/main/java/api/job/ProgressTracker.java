@@ -0,0 +1,25 @@
+package api.job;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Receives the progress of the stage a job is currently in. Services running a
+ * stage register suppliers for the work done and the total work, which are
+ * queried whenever the status of the job is requested.
+ */
+@FunctionalInterface
+public interface ProgressTracker {
+
+    /**
+     * A tracker ignoring all progress, used when a stage is not run as part of a job.
+     */
+    ProgressTracker NONE = (done, total) -> { };
+
+    /**
+     * Registers the progress of the current stage.
+     *
+     * @param done  supplies the work done so far, e.g. the bytes of the trace read.
+     * @param total supplies the total work of the stage, 0 if it is unknown.
+     */
+    void track(LongSupplier done, LongSupplier total);
+}
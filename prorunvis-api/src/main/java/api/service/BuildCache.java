@@ -0,0 +1,300 @@
+package api.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the compiled classes of the instrumented code of every local ID, so
+ * tracing the same code again only starts the program instead of compiling
+ * all sources first.
+ * <p>
+ * A build is stored in "local_storage/&lt;ID&gt;/build/&lt;hash&gt;", where the
+ * hash covers the paths and contents of all instrumented files. A build whose
+ * hash no longer matches the instrumented code is stale; it is never run, and
+ * is replaced by the next build. Builds are compiled into a temporary folder
+ * and then renamed, so concurrent runs of the same ID never see half of them,
+ * and the classes are only read by the programs running them.
+ * <p>
+ * A run holds a {@link Lease} on its build until the program has ended. Stale
+ * builds are only deleted while no run holds them: a build still in use when a
+ * newer one replaces it is deleted once its last lease is closed, so a program
+ * of an older build never loses its classes while it is running.
+ * <p>
+ * Programs running in a JVM of their own keep the AppCDS archive of a build
+ * next to it, in "build/&lt;hash&gt;.cds" (see {@link prorunvis.LaunchOptions}),
+ * which is removed together with the build.
+ * <p>
+ * Hits and misses are published as the standard Micrometer cache meters
+ * (tagged with cache=compiledBuilds).
+ */
+@Component
+public class BuildCache implements MeterBinder {
+
+    /**
+     * The folder within local_storage/&lt;ID&gt; holding the builds of the ID.
+     */
+    public static final String BUILD_DIR = "build";
+
+    /**
+     * The name used to tag the meters of this cache.
+     */
+    private static final String CACHE_NAME = "compiledBuilds";
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * The number of open leases of every build in use. Builds are only looked
+     * up, leased and deleted while holding this map's lock.
+     */
+    private final Map<Path, Integer> leases = new HashMap<>();
+
+    /**
+     * The stale builds which could not be deleted yet as they were in use.
+     */
+    private final Set<Path> staleInUse = new HashSet<>();
+
+    /**
+     * Compiles instrumented code, e.g. with {@link prorunvis.CompileAndRun#compile}.
+     */
+    @FunctionalInterface
+    public interface Compiler {
+
+        /**
+         * @param classesDir the empty folder receiving the compiled classes.
+         * @throws IOException          if the code cannot be compiled due to I/O.
+         * @throws InterruptedException if the compilation fails or is interrupted.
+         */
+        void compile(Path classesDir) throws IOException, InterruptedException;
+    }
+
+    /**
+     * The use of a build by a single run. The build is not deleted until the
+     * lease is closed, which has to happen once the program has ended.
+     */
+    public final class Lease implements AutoCloseable {
+
+        /**
+         * The folder of the leased build.
+         */
+        private final Path build;
+
+        /**
+         * Set once the lease is closed, so closing it twice releases the build only once.
+         */
+        private boolean closed;
+
+        private Lease(final Path build) {
+            this.build = build;
+        }
+
+        /**
+         * @return the folder of the compiled classes, which must not be modified.
+         */
+        public Path getClasses() {
+            return build;
+        }
+
+        /**
+         * Releases the build, deleting it if it became stale while it was in use.
+         */
+        @Override
+        public void close() {
+            synchronized (leases) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (leases.merge(build, -1, Integer::sum) == 0) {
+                    leases.remove(build);
+                    if (staleInUse.remove(build)) {
+                        deleteBuild(build);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Leases the compiled classes of the instrumented code of an ID, compiling
+     * them first unless the code was compiled in this state before.
+     *
+     * @param localIdFolder   the folder of the ID in local_storage.
+     * @param instrumentedDir the folder of the instrumented sources.
+     * @param compiler        compiles the sources if there is no current build.
+     * @return the lease of the build, to be closed once the program has ended.
+     * @throws IOException          if the sources cannot be read or compiled due to I/O.
+     * @throws InterruptedException if the compilation fails or is interrupted.
+     */
+    public Lease open(Path localIdFolder, Path instrumentedDir, Compiler compiler)
+            throws IOException, InterruptedException {
+        Path buildRoot = localIdFolder.resolve(BUILD_DIR);
+        String hash = hash(instrumentedDir);
+        Path build = buildRoot.resolve(hash);
+        Lease lease = leaseIfPresent(build);
+        if (lease != null) {
+            hits.incrementAndGet();
+            return lease;
+        }
+        misses.incrementAndGet();
+
+        Files.createDirectories(buildRoot);
+        Path partial = Files.createTempDirectory(buildRoot, hash + ".partial-");
+        try {
+            compiler.compile(partial);
+            try {
+                Files.move(partial, build, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // a concurrent run of the same code was faster, use its build
+                if (!Files.isDirectory(build)) {
+                    throw e;
+                }
+            }
+        } finally {
+            deleteQuietly(partial);
+        }
+        lease = leaseIfPresent(build);
+        if (lease == null) {
+            throw new IOException("The build " + build + " was removed right after it was compiled.");
+        }
+        removeStale(buildRoot, hash);
+        return lease;
+    }
+
+    /**
+     * @return a lease of the build, or null if it does not exist.
+     */
+    private Lease leaseIfPresent(Path build) {
+        synchronized (leases) {
+            if (!Files.isDirectory(build)) {
+                return null;
+            }
+            leases.merge(build, 1, Integer::sum);
+            // a stale build leased again is current again
+            staleInUse.remove(build);
+            return new Lease(build);
+        }
+    }
+
+    /**
+     * Hashes the relative paths and the contents of all files of a folder.
+     *
+     * @param dir the folder of the instrumented sources.
+     * @return the hex encoded SHA-256 hash.
+     * @throws IOException if the folder cannot be read.
+     */
+    static String hash(Path dir) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(Files::isRegularFile).sorted().toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (Path file : files) {
+            // the path is separated from the content, so moving bytes between them changes the hash
+            digest.update(dir.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Deletes the builds of an ID other than the current one, with the
+     * archives kept next to them. Builds still being compiled by a concurrent
+     * run are left alone, and builds still in use are deleted once their last
+     * lease is closed.
+     */
+    private void removeStale(Path buildRoot, String current) {
+        List<Path> stale;
+        try (Stream<Path> entries = Files.list(buildRoot)) {
+            // the archive of a build is named after it, so both are found by the build's name
+            stale = entries.map(entry -> entry.getFileName().toString())
+                    .filter(name -> !name.contains(".partial-"))
+                    .map(name -> name.contains(".") ? name.substring(0, name.indexOf('.')) : name)
+                    .filter(name -> !name.equals(current))
+                    .distinct()
+                    .map(buildRoot::resolve)
+                    .toList();
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Could not remove stale builds in " + buildRoot + ": " + e.getMessage());
+            return;
+        }
+        synchronized (leases) {
+            for (Path build : stale) {
+                if (leases.containsKey(build)) {
+                    staleInUse.add(build);
+                } else {
+                    deleteBuild(build);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes a build together with the archive kept next to it.
+     */
+    private static void deleteBuild(Path build) {
+        String name = build.getFileName().toString();
+        try (Stream<Path> entries = Files.list(build.getParent())) {
+            entries.filter(entry -> entry.getFileName().toString().equals(name)
+                            || entry.getFileName().toString().startsWith(name + ".")
+                            && !entry.getFileName().toString().contains(".partial-"))
+                    .forEach(BuildCache::deleteQuietly);
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("Could not remove the stale build " + build + ": " + e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path dir) {
+        try {
+            FileSystemUtils.deleteRecursively(dir);
+        } catch (IOException e) {
+            System.out.println("Could not delete " + dir + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", hits, AtomicLong::get)
+                .tags("cache", CACHE_NAME, "result", "hit")
+                .description("The number of trace runs reusing compiled classes")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", misses, AtomicLong::get)
+                .tags("cache", CACHE_NAME, "result", "miss")
+                .description("The number of trace runs compiling the instrumented code")
+                .register(registry);
+    }
+}
@@ -0,0 +1,114 @@
+package api.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import prorunvis.instrument.InstrumentedFile;
+import prorunvis.instrument.Manifest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A content-addressed store of instrumented source files on disk. Files are
+ * keyed by the SHA-256 hash of their source (see {@link Manifest#hash(byte[])})
+ * and the version of the instrumentation, so a file is instrumented once and
+ * reused by every upload containing it, whichever user or project it belongs to.
+ * <p>
+ * Every entry is a single JSON file holding the instrumented source together
+ * with the nodes of its trace ids, see {@link InstrumentedFile#toJson()}.
+ * Entries are written under a temporary name and then renamed, so concurrent
+ * writers of the same file do not corrupt it, and the whole store may be
+ * deleted at any time.
+ * <p>
+ * Hits and misses are published as the standard Micrometer cache meters
+ * (tagged with cache=instrumentedFiles).
+ */
+@Component
+public class InstrumentationCache implements MeterBinder {
+
+    /**
+     * The name used to tag the meters of this cache.
+     */
+    private static final String CACHE_NAME = "instrumentedFiles";
+
+    /**
+     * The folder of the entries of the current instrumentation version.
+     */
+    private final Path dir;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public InstrumentationCache(@Value("${prorunvis.instrument-cache.dir:resources/instrument_cache}") String dir) {
+        this.dir = Paths.get(dir, "v" + InstrumentedFile.FORMAT_VERSION);
+    }
+
+    /**
+     * Looks up an instrumented file. Entries which cannot be read are treated as missing.
+     *
+     * @param hash the hash of the source, see {@link Manifest#hash(byte[])}.
+     * @return the instrumented file, if the source was instrumented before.
+     */
+    public Optional<InstrumentedFile> get(String hash) {
+        Path entry = entry(hash);
+        if (Files.isRegularFile(entry)) {
+            try {
+                InstrumentedFile file = InstrumentedFile.fromJson(Files.readString(entry, StandardCharsets.UTF_8));
+                hits.incrementAndGet();
+                return Optional.of(file);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Ignoring unreadable instrumentation cache entry " + entry + ": " + e.getMessage());
+            }
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    /**
+     * Stores an instrumented file. Failing to store it only costs instrumenting it again.
+     *
+     * @param hash the hash of the source, see {@link Manifest#hash(byte[])}.
+     * @param file the source instrumented on its own.
+     */
+    public void put(String hash, InstrumentedFile file) {
+        Path entry = entry(hash);
+        try {
+            Files.createDirectories(entry.getParent());
+            Path temp = Files.createTempFile(entry.getParent(), hash, ".tmp");
+            try {
+                Files.writeString(temp, file.toJson(), StandardCharsets.UTF_8);
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not cache instrumented file " + hash + ": " + e.getMessage());
+        }
+    }
+
+    private Path entry(String hash) {
+        // spread the entries over subfolders, so no folder holds too many files
+        return dir.resolve(hash.substring(0, 2)).resolve(hash + ".json");
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", hits, AtomicLong::get)
+                .tags("cache", CACHE_NAME, "result", "hit")
+                .description("The number of source files whose instrumentation was reused")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", misses, AtomicLong::get)
+                .tags("cache", CACHE_NAME, "result", "miss")
+                .description("The number of source files instrumented")
+                .register(registry);
+    }
+}
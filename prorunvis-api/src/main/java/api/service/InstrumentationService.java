@@ -1,19 +1,23 @@
 package api.service;
 
+import api.job.ProgressTracker;
 import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.Node;
-import com.github.javaparser.utils.ProjectRoot;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import prorunvis.instrument.InstrumentedFile;
 import prorunvis.instrument.Instrumenter;
-import prorunvis.preprocess.Preprocessor;
+import prorunvis.instrument.Manifest;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A reworked InstrumentationService that does NOT store data in a DB.
@@ -28,39 +32,41 @@ public class InstrumentationService {
      */
     private static final String LOCAL_STORAGE_DIR = "resources/local_storage";
 
-    public InstrumentationService() {
-        // No repository injection needed anymore.
-    }
+    /**
+     * The name of the file recording the source folder of an ID, which
+     * processing parses again to map the trace ids back to the code.
+     */
+    public static final String INPUT_DIR_FILE = "input_dir.txt";
 
     /**
-     * Creates/cleans "resources/out" so the instrumentation can run
-     * from a clean slate. This is the same logic you had before.
+     * The name of the folder holding the instrumented sources of an ID.
      */
-    private void ensureCleanOutputDirectories() {
-        File outDir = new File("resources/out");
-        if (outDir.exists()) {
-            System.out.println("Cleaning existing resources/out directory...");
-            try {
-                Files.walk(outDir.toPath())
-                        .map(java.nio.file.Path::toFile)
-                        .sorted((o1, o2) -> -o1.compareTo(o2)) // delete children first
-                        .forEach(File::delete);
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to clean output directories", e);
-            }
-        }
-        if (!outDir.mkdirs()) {
-            throw new RuntimeException("Failed to create output directory at resources/out.");
-        }
+    public static final String INSTRUMENTED_DIR = "instrumented";
 
-        File instrDir = new File("resources/out/instrumented");
-        if (!instrDir.exists() && !instrDir.mkdirs()) {
-            throw new RuntimeException("Failed to create instrumented directory at resources/out/instrumented.");
-        }
+    /**
+     * The name of the file holding the {@link Manifest} of an ID, which lets
+     * tracing and processing work without parsing the whole project again.
+     */
+    public static final String MANIFEST_FILE = Manifest.FILE_NAME;
+
+    /**
+     * Parses the projects, using the files parsed while they were uploaded.
+     */
+    private final ParsePipeline parsePipeline;
+
+    /**
+     * Holds the instrumented source files of earlier uploads.
+     */
+    private final InstrumentationCache cache;
+
+    public InstrumentationService(ParsePipeline parsePipeline, InstrumentationCache cache) {
+        // No repository injection needed anymore.
+        this.parsePipeline = parsePipeline;
+        this.cache = cache;
     }
 
     /**
-     * Instruments the code and stores results in "resources/local_storage/<randomId>/".
+     * Instruments the code and stores results in "resources/local_storage/<randomId>/instrumented".
      *
      * @param projectName   the name of the user's project
      * @param inputDirPath  the folder containing the source code to be instrumented
@@ -70,6 +76,24 @@ public class InstrumentationService {
     public String instrumentProject(String projectName,
                                     String inputDirPath,
                                     String randomId) {
+        return instrumentProject(projectName, inputDirPath, randomId, ProgressTracker.NONE);
+    }
+
+    /**
+     * Instruments the code like {@link #instrumentProject(String, String, String)},
+     * reporting the number of instrumented compilation units as progress.
+     * Instrumentation stops early if the calling thread is interrupted.
+     *
+     * @param projectName   the name of the user's project
+     * @param inputDirPath  the folder containing the source code to be instrumented
+     * @param randomId      a unique ID that we can use for storing output
+     * @param progress      receives the progress of the instrumentation
+     * @return Some success message (or path).
+     */
+    public String instrumentProject(String projectName,
+                                    String inputDirPath,
+                                    String randomId,
+                                    ProgressTracker progress) {
 
         // 1) Verify input directory is valid
         File inputDir = new File(inputDirPath);
@@ -78,63 +102,124 @@ public class InstrumentationService {
         }
 
 
-        // 2) Clean & set up "resources/out"
-        ensureCleanOutputDirectories();
-
-        // 3) Parse & instrument code
+        // 2) Look up every source file in the cache, so only new or changed files are parsed
+        // and instrumented; most of an upload has been parsed and preprocessed already
         System.out.println("Parsing project at: " + inputDirPath);
-        ProjectRoot projectRoot = Util.parseProject(inputDir);
-        List<CompilationUnit> cus = Util.getCUs(projectRoot);
-        if (cus.isEmpty()) {
+        List<Path> files = ParsePipeline.sourceFiles(inputDir.toPath());
+        Map<Path, String> hashes = new HashMap<>();
+        Map<Path, InstrumentedFile> byFile = new HashMap<>();
+        for (Path file : files) {
+            String hash;
+            try {
+                hash = Manifest.hash(Files.readAllBytes(file));
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading source file " + file + ": " + e.getMessage(), e);
+            }
+            hashes.put(file, hash);
+            cache.get(hash).ifPresent(instrumentedFile -> byFile.put(file, instrumentedFile));
+        }
+        int unchanged = byFile.size();
+        List<CompilationUnit> cus = parsePipeline.parse(inputDir.toPath(),
+                file -> !byFile.containsKey(file));
+        if (unchanged + cus.size() == 0) {
             throw new RuntimeException("No Java files found in: " + inputDirPath);
         }
-        System.out.println("Found " + cus.size() + " compilation units.");
+        System.out.println("Found " + (unchanged + cus.size()) + " compilation units, "
+                + unchanged + " of them instrumented before.");
 
-        Map<Integer, Node> map = new HashMap<>();
+        // every file is instrumented on its own, its trace ids are offset when it is saved
+        AtomicInteger instrumented = new AtomicInteger(unchanged);
+        progress.track(instrumented::get, () -> unchanged + cus.size());
         for (CompilationUnit cu : cus) {
-            Preprocessor.run(cu);
-            Instrumenter.run(cu, map);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new RuntimeException("Instrumentation was interrupted.");
+            }
+            Path file = cu.getStorage().get().getPath();
+            InstrumentedFile instrumentedFile = InstrumentedFile.of(cu);
+            cache.put(hashes.get(file), instrumentedFile);
+            byFile.put(file, instrumentedFile);
+            instrumented.incrementAndGet();
         }
 
 
-        // 5) Save instrumented code
-        Instrumenter.saveInstrumented(projectRoot, "resources/out/instrumented");
+        // 3) Save the instrumented code as plain files, first into a partial folder which is
+        // renamed once complete, so tracing never compiles half of the sources
+        File randomIdFolder = new File(LOCAL_STORAGE_DIR, randomId);
+        Path instrDir = randomIdFolder.toPath().resolve(INSTRUMENTED_DIR);
+        Path partialDir = randomIdFolder.toPath().resolve(INSTRUMENTED_DIR + ".partial");
+        try {
+            // the ids continue in the order of the files, like when instrumenting them together
+            List<Manifest.SourceFile> sourceFiles = new ArrayList<>();
+            String mainClass = null;
+            int firstId = 0;
+            for (Path file : files) {
+                InstrumentedFile instrumentedFile = byFile.get(file);
+                if (instrumentedFile != null) {
+                    String fileName = file.getFileName().toString();
+                    instrumentedFile.save(partialDir, fileName, firstId);
+                    if (mainClass == null && instrumentedFile.mainMethod()) {
+                        mainClass = instrumentedFile.className(fileName);
+                    }
+                    String relativePath = inputDir.toPath().toAbsolutePath().normalize().relativize(file).toString()
+                            .replace(File.separatorChar, '/');
+                    sourceFiles.add(new Manifest.SourceFile(relativePath, hashes.get(file), firstId,
+                            instrumentedFile.nodes()));
+                    firstId += instrumentedFile.traceIds();
+                }
+            }
+            Instrumenter.saveTraceClass(partialDir.toFile());
+            Manifest.of(sourceFiles, mainClass).write(randomIdFolder.toPath().resolve(MANIFEST_FILE));
 
-        // 6) Check that something was indeed saved
-        File instrDir = new File("resources/out/instrumented");
-        String[] instrumentedFiles = instrDir.list();
-        if (instrumentedFiles == null || instrumentedFiles.length == 0) {
-            throw new RuntimeException("No files found in instrumented directory after saving instrumented code.");
-        }
-        System.out.println("Files in instrumented directory:");
-        for (String f : instrumentedFiles) {
-            System.out.println(" - " + f);
-        }
+            // 4) Check that something was indeed saved
+            String[] instrumentedFiles = partialDir.toFile().list();
+            if (instrumentedFiles == null || instrumentedFiles.length == 0) {
+                throw new RuntimeException("No files found in instrumented directory after saving instrumented code.");
+            }
+            System.out.println("Files in instrumented directory:");
+            for (String f : instrumentedFiles) {
+                System.out.println(" - " + f);
+            }
 
-        // 7) Zip & encode
-        System.out.println("Zipping instrumented code...");
-        String zipBase64 = Util.zipAndEncode(projectRoot);
-        if (zipBase64 == null || zipBase64.isEmpty()) {
-            throw new RuntimeException("Failed to zip instrumented code.");
+            Files.move(partialDir, instrDir, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Error storing instrumented code: " + e.getMessage(), e);
+        } finally {
+            deleteQuietly(partialDir);
         }
 
-        // 8) Store the resulting Base64 in "resources/local_storage/<randomId>/instrumented.txt"
-        // Make a local folder for this randomId
-        File randomIdFolder = new File(LOCAL_STORAGE_DIR, randomId);
-        if (!randomIdFolder.exists()) {
-            randomIdFolder.mkdirs();
-        }
-        File outputFile = new File(randomIdFolder, "instrumented_base64.txt");
-        try (FileOutputStream fos = new FileOutputStream(outputFile)) {
-            fos.write(zipBase64.getBytes());
+        // 5) Remember the source folder, which processing parses the traced files from
+        try {
+            Files.writeString(new File(randomIdFolder, INPUT_DIR_FILE).toPath(), inputDir.getAbsolutePath());
         } catch (IOException e) {
-            throw new RuntimeException("Error writing local instrumented file: " + e.getMessage(), e);
+            throw new RuntimeException("Error writing local input folder file: " + e.getMessage(), e);
         }
 
-        System.out.println("Instrumented code stored locally in: " + outputFile.getAbsolutePath());
+        System.out.println("Instrumented code stored locally in: " + instrDir.toAbsolutePath());
 
         // Return a success message
         return "Instrumented code saved under ID=" + randomId
-                + " at: " + outputFile.getAbsolutePath();
+                + " at: " + instrDir.toAbsolutePath();
+    }
+
+    /**
+     * Returns the folder holding the instrumented code of an ID.
+     *
+     * @param randomId the ID the code was instrumented under
+     * @return the folder, containing the instrumented sources as plain files
+     */
+    public File getInstrumentedDir(String randomId) {
+        File instrDir = new File(new File(LOCAL_STORAGE_DIR, randomId), INSTRUMENTED_DIR);
+        if (!instrDir.isDirectory()) {
+            throw new RuntimeException("No instrumented code found for ID: " + randomId);
+        }
+        return instrDir;
+    }
+
+    private static void deleteQuietly(Path dir) {
+        try {
+            FileSystemUtils.deleteRecursively(dir);
+        } catch (IOException e) {
+            System.out.println("Could not delete " + dir + ": " + e.getMessage());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,223 @@
+package api.service;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import prorunvis.ParallelParser;
+import prorunvis.preprocess.Preprocessor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Parses and preprocesses the source files of a project, starting while the
+ * project is still being uploaded.
+ * <p>
+ * The storage hands every completed ".java" file of an upload to
+ * {@link #submit(Path, Path)}, which parses it on a pool of worker threads.
+ * Once the upload is instrumented, {@link #parse(Path)} collects these results
+ * and only parses the files that were not submitted, on all cores with the
+ * {@link ParallelParser}, so for large uploads most of the parsing is hidden
+ * behind the transfer and the rest is not done file by file.
+ * <p>
+ * The compilation units are modified by instrumentation, so the results of an
+ * upload are handed out once. Results that are never collected are dropped
+ * after "prorunvis.parse.retention".
+ */
+@Service
+public class ParsePipeline {
+
+    /**
+     * The workers parsing the submitted files.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * How long the results of an upload are kept if they are not collected.
+     */
+    private final Duration retention;
+
+    /**
+     * The files submitted for every upload directory which has not been collected yet.
+     */
+    private final Map<Path, PendingUpload> pending = new ConcurrentHashMap<>();
+
+    public ParsePipeline(@Value("${prorunvis.parse.threads:0}") int threads,
+                         @Value("${prorunvis.parse.retention:10m}") Duration retention) {
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "prorunvis-parse-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.retention = retention;
+    }
+
+    /**
+     * Starts parsing a file of an upload, if it is a Java source file.
+     *
+     * @param uploadDir the directory of the upload.
+     * @param file      a completely stored file inside the upload directory.
+     */
+    public void submit(Path uploadDir, Path file) {
+        if (!file.getFileName().toString().endsWith(".java")) {
+            return;
+        }
+        removeExpired();
+        PendingUpload upload = pending.computeIfAbsent(key(uploadDir), dir -> new PendingUpload(Instant.now()));
+        upload.files().put(key(file), workers.submit(() -> parseFile(file)));
+    }
+
+    /**
+     * Drops the files submitted for an upload, e.g. because the upload failed or was deleted.
+     *
+     * @param uploadDir the directory of the upload.
+     */
+    public void discard(Path uploadDir) {
+        PendingUpload upload = pending.remove(key(uploadDir));
+        if (upload != null) {
+            upload.files().values().forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Drops the files submitted for all uploads.
+     */
+    public void discardAll() {
+        pending.keySet().forEach(this::discard);
+    }
+
+    /**
+     * Returns all Java source files of a directory, parsed and preprocessed.
+     * Files submitted during the upload of the directory are taken from the
+     * workers, all others are parsed in parallel by the {@link ParallelParser}.
+     * <p>
+     * The compilation units are ordered by their path, so a project parsed
+     * again yields the same order and thereby the same trace ids.
+     *
+     * @param dir the directory of the project.
+     * @return the parsed and preprocessed compilation units.
+     */
+    public List<CompilationUnit> parse(Path dir) {
+        return parse(dir, file -> true);
+    }
+
+    /**
+     * Returns some Java source files of a directory, parsed and preprocessed
+     * like {@link #parse(Path)}. Results submitted for the other files are dropped.
+     *
+     * @param dir     the directory of the project.
+     * @param include selects the files to parse, by their path as returned by {@link #sourceFiles(Path)}.
+     * @return the parsed and preprocessed compilation units, ordered by their path.
+     */
+    public List<CompilationUnit> parse(Path dir, Predicate<Path> include) {
+        removeExpired();
+        PendingUpload upload = pending.remove(key(dir));
+        Map<Path, Future<Optional<CompilationUnit>>> submitted = upload != null ? upload.files() : new HashMap<>();
+
+        List<Path> files = sourceFiles(dir).stream().filter(include).toList();
+        // the files not submitted during the upload are parsed on all cores
+        List<Path> missing = files.stream().filter(file -> !submitted.containsKey(file)).toList();
+        Iterator<ParseResult<CompilationUnit>> parsed;
+        try {
+            parsed = ParallelParser.parse(missing, ParserConfiguration::new, Preprocessor::run).iterator();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot parse the source files in: " + dir, e);
+        }
+        List<CompilationUnit> cus = new ArrayList<>(files.size());
+        for (Path file : files) {
+            Future<Optional<CompilationUnit>> future = submitted.remove(file);
+            Optional<CompilationUnit> cu;
+            try {
+                cu = future != null ? future.get() : parsed.next().getResult();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Parsing was interrupted.", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Cannot parse " + file, e.getCause());
+            }
+            cu.ifPresent(cus::add);
+        }
+        // files submitted but deleted since have no result to wait for
+        submitted.values().forEach(future -> future.cancel(true));
+        return cus;
+    }
+
+    /**
+     * Lists the Java source files of a directory in the order they are parsed.
+     *
+     * @param dir the directory of the project.
+     * @return the absolute paths of the files, sorted.
+     */
+    public static List<Path> sourceFiles(Path dir) {
+        try {
+            return ParallelParser.sourceFiles(dir);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot list the source files in: " + dir, e);
+        }
+    }
+
+    /**
+     * Stops the workers when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Parses and preprocesses a single file. Files which cannot be parsed at
+     * all are skipped, like {@link ParallelParser#parse(List)} skips them.
+     */
+    private static Optional<CompilationUnit> parseFile(Path file) throws IOException {
+        // a parser is not thread-safe, so every file gets its own
+        Optional<CompilationUnit> cu = new JavaParser().parse(file).getResult();
+        cu.ifPresent(Preprocessor::run);
+        return cu;
+    }
+
+    private void removeExpired() {
+        Instant limit = Instant.now().minus(retention);
+        pending.forEach((dir, upload) -> {
+            if (upload.created().isBefore(limit)) {
+                discard(dir);
+            }
+        });
+    }
+
+    private static Path key(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * The files of an upload submitted for parsing.
+     *
+     * @param created the time the first file was submitted.
+     * @param files   the results of the submitted files, by their absolute path.
+     */
+    private record PendingUpload(Instant created, Map<Path, Future<Optional<CompilationUnit>>> files) {
+        PendingUpload(Instant created) {
+            this(created, new ConcurrentHashMap<>());
+        }
+    }
+}
@@ -1,18 +1,24 @@
 package api.service;
 
+import api.job.ProgressTracker;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Node;
-import com.github.javaparser.utils.ProjectRoot;
-import com.google.gson.Gson;
 import org.springframework.stereotype.Service;
-import prorunvis.trace.TraceNode;
+import prorunvis.instrument.Manifest;
+import prorunvis.output.SchemaVersion;
+import prorunvis.output.TraceJsonWriter;
+import prorunvis.trace.MappedTraceNodeStore;
+import prorunvis.trace.TraceNodeTable;
+import prorunvis.trace.process.LazyTraceMap;
 import prorunvis.trace.process.TraceProcessor;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 @Service
@@ -20,11 +26,36 @@ public class ProcessingService {
 
     private static final String LOCAL_STORAGE_DIR = "resources/local_storage";
 
+    private final VisualizationService visualizationService;
+
+    /**
+     * Parses the instrumented projects again, in the order used for instrumenting them.
+     */
+    private final ParsePipeline parsePipeline;
+
+    public ProcessingService(VisualizationService visualizationService, ParsePipeline parsePipeline) {
+        this.visualizationService = visualizationService;
+        this.parsePipeline = parsePipeline;
+    }
+
     /**
      * We do NOT return a path anymore. We'll just do it as `void`
      * or you can still return the path to "processedTrace.json" if you want.
+     * The JSON is written in the given schema version.
+     */
+    public void processTrace(String traceId, SchemaVersion schema) {
+        processTrace(traceId, schema, ProgressTracker.NONE);
+    }
+
+    /**
+     * Processes a trace like {@link #processTrace(String, SchemaVersion)}, reporting
+     * the number of bytes of the trace file read so far as progress.
+     *
+     * @param traceId  the local ID of the trace.
+     * @param schema   the JSON schema version to write.
+     * @param progress receives the progress of the processing.
      */
-    public void processTrace(String traceId) {
+    public void processTrace(String traceId, SchemaVersion schema, ProgressTracker progress) {
         // 1) local_storage/<traceId> folder
         File localIdFolder = new File(LOCAL_STORAGE_DIR, traceId);
         if (!localIdFolder.exists() || !localIdFolder.isDirectory()) {
@@ -37,41 +68,103 @@ public class ProcessingService {
             throw new RuntimeException("Trace file not found: " + traceFile.getAbsolutePath());
         }
 
-        // 3) re-parse code from resources/out/instrumented
-        // (or wherever your instrumented code remains)
-        Path codeRoot = Paths.get("resources/in");
-        ProjectRoot projectRoot = Util.parseProject(codeRoot.toFile());
-        List<CompilationUnit> cus = Util.getCUs(projectRoot);
-
-        // 4) build the map
-        Map<Integer, Node> map = new HashMap<>();
-        for (CompilationUnit cu : cus) {
-            prorunvis.preprocess.Preprocessor.run(cu);
-            prorunvis.instrument.Instrumenter.run(cu, map);
+        // 3) find the code that was instrumented for this ID, as recorded by the
+        // InstrumentationService (IDs instrumented before it was recorded used resources/in)
+        File inputDirFile = new File(localIdFolder, InstrumentationService.INPUT_DIR_FILE);
+        Path codeRoot;
+        try {
+            codeRoot = inputDirFile.exists()
+                    ? Paths.get(Files.readString(inputDirFile.toPath()).trim())
+                    : Paths.get("resources/in");
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read input folder of ID: " + traceId, e);
+        }
+
+        // 4) build the map: with a manifest, only the files the trace passes through are parsed
+        // while processing, older IDs without one parse and instrument the whole project again
+        Path manifestFile = localIdFolder.toPath().resolve(InstrumentationService.MANIFEST_FILE);
+        Map<Integer, Node> map;
+        if (Files.exists(manifestFile)) {
+            try {
+                map = new LazyTraceMap(Manifest.read(manifestFile), codeRoot);
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot read the manifest, instrument the code again: " + e.getMessage(), e);
+            }
+        } else {
+            map = new HashMap<>();
+            for (CompilationUnit cu : parsePipeline.parse(codeRoot)) {
+                prorunvis.instrument.Instrumenter.run(cu, map);
+            }
         }
 
         // 5) run the TraceProcessor
         prorunvis.trace.process.TraceProcessor processor =
                 new prorunvis.trace.process.TraceProcessor(map, traceFile.getAbsolutePath(), codeRoot);
 
+        progress.track(processor::getBytesRead, processor::getTraceSize);
         try {
             processor.start();
         } catch (Exception e) {
             throw new RuntimeException("Processing failed: " + e.getMessage(), e);
         }
 
-        // 6) convert the final node list to JSON
-        List<TraceNode> nodeList = processor.getNodeList();
-        String json = new Gson().toJson(nodeList);
-
-        // 7) store processedTrace.json in local_storage/<traceId>/processedTrace.json
-        File outputJson = new File(localIdFolder, "processedTrace.json");
-        try (FileOutputStream fos = new FileOutputStream(outputJson)) {
-            fos.write(json.getBytes());
+        // 6) compact the nodes into a table, which releases the processor's node list,
+        // and stream them as JSON into local_storage/<traceId>/processedTrace.json
+        TraceNodeTable table = processor.getNodeTable();
+        File outputJson = new File(localIdFolder, VisualizationService.TRACE_FILE);
+        try {
+            TraceJsonWriter writer = new TraceJsonWriter(false, schema, processor.getRangeDictionary());
+            writeAtomically(outputJson.toPath(), temp -> writer.write(table.asList(), temp, false));
         } catch (IOException e) {
             throw new RuntimeException("Failed to write processedTrace.json at: " + outputJson.getAbsolutePath(), e);
         }
 
+        // 7) store a gzip compressed copy, served to clients accepting gzip without compressing per request
+        File outputGzip = new File(localIdFolder, VisualizationService.TRACE_GZIP_FILE);
+        try {
+            writeAtomically(outputGzip.toPath(), temp -> {
+                try (OutputStream out = TraceJsonWriter.open(temp, true)) {
+                    Files.copy(outputJson.toPath(), out);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write compressed trace at: " + outputGzip.getAbsolutePath(), e);
+        }
+
+        // 8) store the binary node store next to it, so nodes can be served without parsing the JSON
+        File outputStore = new File(localIdFolder, VisualizationService.NODE_STORE_FILE);
+        try {
+            MappedTraceNodeStore.write(table, outputStore.toPath());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write node store at: " + outputStore.getAbsolutePath(), e);
+        }
+
+        // 9) drop the previous result of this ID from the visualization cache
+        visualizationService.invalidate(traceId);
+
         System.out.println("Processing complete. JSON stored at: " + outputJson.getAbsolutePath());
     }
+
+    /**
+     * Writes the content of a file.
+     */
+    @FunctionalInterface
+    private interface FileContent {
+        void writeTo(Path file) throws IOException;
+    }
+
+    /**
+     * Writes a file next to its target and then moves it into place, like
+     * {@link MappedTraceNodeStore#write}, so a trace being served while the ID
+     * is processed again is never read half written.
+     */
+    private static void writeAtomically(Path file, FileContent content) throws IOException {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            content.writeTo(temp);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,242 @@
+package api.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An in-memory cache of processed trace files, bounded by the total size of
+ * the cached files. The least recently used files are evicted once the bound
+ * is exceeded, and files are dropped when they were not used for the configured
+ * time to live. Expired files are dropped on every read and write of the
+ * cache, so they do not hold memory until their own key is read again.
+ * <p>
+ * Hits, misses, evictions and the cached size are published as the standard
+ * Micrometer cache meters (tagged with cache=processedTraces), and can be read
+ * from the actuator metrics endpoint.
+ */
+@Component
+public class TraceCache implements MeterBinder {
+
+    /**
+     * The name used to tag the meters of this cache.
+     */
+    private static final String CACHE_NAME = "processedTraces";
+
+    /**
+     * The maximum total size of all cached files in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * The time after which an unused file is dropped, in nanoseconds.
+     */
+    private final long ttlNanos;
+
+    /**
+     * The cached files in access order, the least recently used one first.
+     */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The total size of all cached files in bytes.
+     */
+    private long bytes;
+
+    /**
+     * Incremented on every invalidation, so files read before an invalidation
+     * are not added afterwards.
+     */
+    private long generation;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * The key of a cached file.
+     *
+     * @param localId the local ID of the processed trace.
+     * @param gzip    whether the file was requested by a client accepting gzip.
+     */
+    private record Key(String localId, boolean gzip) {
+    }
+
+    /**
+     * A cached file and the time it was last used.
+     */
+    private static final class Entry {
+        private final VisualizationService.TraceFile file;
+        private final long size;
+        private long lastUsed;
+
+        Entry(VisualizationService.TraceFile file, long size, long lastUsed) {
+            this.file = file;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    public TraceCache(@Value("${prorunvis.trace-cache.max-bytes:268435456}") long maxBytes,
+                      @Value("${prorunvis.trace-cache.ttl:10m}") Duration ttl) {
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Checks whether a file of the given size may be cached. Files larger than
+     * a quarter of the cache would evict most other entries and are served from disk.
+     *
+     * @param size the size of the file in bytes.
+     * @return true if the file may be added to the cache.
+     */
+    public boolean accepts(long size) {
+        return size <= maxBytes / 4;
+    }
+
+    /**
+     * @return the current generation, to be passed to {@link #put} for files read after this call.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Returns a cached file, if present and not expired.
+     *
+     * @param localId the local ID of the processed trace.
+     * @param gzip    whether the client accepts gzip.
+     * @return the cached file, or null if it is not cached.
+     */
+    public synchronized VisualizationService.TraceFile get(String localId, boolean gzip) {
+        long now = System.nanoTime();
+        expire(now);
+        Entry entry = entries.get(new Key(localId, gzip));
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.lastUsed = now;
+        return entry.file;
+    }
+
+    /**
+     * Adds a file to the cache and evicts the least recently used files until
+     * the cache fits into its bound again.
+     *
+     * @param localId    the local ID of the processed trace.
+     * @param gzip       whether the client accepts gzip.
+     * @param file       the file to cache.
+     * @param size       the size of the file's content in bytes.
+     * @param generation the generation returned by {@link #generation()} before the file was read.
+     */
+    public synchronized void put(String localId, boolean gzip, VisualizationService.TraceFile file,
+                                 long size, long generation) {
+        if (generation != this.generation || !accepts(size)) {
+            return;
+        }
+        long now = System.nanoTime();
+        expire(now);
+        Key key = new Key(localId, gzip);
+        remove(key);
+        entries.put(key, new Entry(file, size, now));
+        bytes += size;
+
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().size;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes all files of a processed trace, e.g. because processing rewrote them.
+     *
+     * @param localId the local ID of the processed trace.
+     */
+    public synchronized void invalidate(String localId) {
+        generation++;
+        remove(new Key(localId, false));
+        remove(new Key(localId, true));
+    }
+
+    /**
+     * Drops the files not used for the time to live. The entries are in access
+     * order, and every access updates the time of last use, so the expired
+     * files are the first ones.
+     */
+    private void expire(long now) {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (eldest.hasNext()) {
+            Entry entry = eldest.next();
+            if (now - entry.lastUsed <= ttlNanos) {
+                return;
+            }
+            bytes -= entry.size;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.size;
+        }
+    }
+
+    private synchronized long hitCount() {
+        return hits;
+    }
+
+    private synchronized long missCount() {
+        return misses;
+    }
+
+    private synchronized long evictionCount() {
+        return evictions;
+    }
+
+    private synchronized long weight() {
+        return bytes;
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", this, TraceCache::hitCount)
+                .tags("cache", CACHE_NAME, "result", "hit")
+                .description("The number of times a processed trace was served from memory")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", this, TraceCache::missCount)
+                .tags("cache", CACHE_NAME, "result", "miss")
+                .description("The number of times a processed trace was read from disk")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", this, TraceCache::evictionCount)
+                .tags("cache", CACHE_NAME)
+                .description("The number of processed traces evicted because of size or age")
+                .register(registry);
+        Gauge.builder("cache.weight", this, TraceCache::weight)
+                .tags("cache", CACHE_NAME)
+                .baseUnit("bytes")
+                .description("The total size of the cached processed traces")
+                .register(registry);
+        Gauge.builder("cache.size", this, TraceCache::size)
+                .tags("cache", CACHE_NAME)
+                .description("The number of cached processed traces")
+                .register(registry);
+    }
+}
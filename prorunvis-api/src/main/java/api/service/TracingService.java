@@ -1,51 +1,100 @@
 package api.service;
 
-import com.github.javaparser.ast.CompilationUnit;
+import api.job.JobThreads;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import prorunvis.CompileAndRun;
+import prorunvis.LaunchOptions;
+import prorunvis.RunLimits;
+import prorunvis.RunLogs;
+import prorunvis.RunOutcome;
+import prorunvis.RunnerPool;
+import prorunvis.instrument.Manifest;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.List;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This service:
- *  1) Reads base64-encoded instrumented code from
- *     resources/local_storage/<instrumentId>/instrumented_base64.txt
- *  2) Decodes/unzips into resources/out/downloaded_instrumented
- *  3) Compiles and runs the code => Trace.tr
- *  4) Copies Trace.tr into local_storage/<instrumentId>/Trace.tr
+ *  1) Reads the main class from the manifest of the instrumented code in
+ *     resources/local_storage/<instrumentId>/instrumented, which is only read;
+ *     code instrumented without a manifest is parsed to find it
+ *  2) Compiles it, unless the {@link BuildCache} holds the classes of the
+ *     same code already
+ *  3) Runs the classes in a warm JVM of the {@link RunnerPool}, or a JVM of its own
+ *     started from the AppCDS archive of the build, within the configured limits => Trace.tr in a private workspace,
+ *     which is marked as truncated if the program was stopped, logging the
+ *     output of the compiler and the program to local_storage/<instrumentId>/logs
+ *  4) Moves Trace.tr into local_storage/<instrumentId>/Trace.tr
+ *  5) Deletes the workspace
  */
 @Service
 public class TracingService {
 
     private static final String LOCAL_STORAGE_DIR = "resources/local_storage";
 
-    public TracingService() {
-        // no DB repos needed
-    }
+    /**
+     * The folder within local_storage/<instrumentId> holding the logs of a run.
+     */
+    private static final String LOGS_DIR = "logs";
 
     /**
-     * Clears out resources/out to ensure a fresh decode/unzip + compile/run.
+     * Provides the private directories every trace run compiles and runs in.
      */
-    private void cleanOutputDirectories() {
-        File outDir = new File("resources/out");
-        if (outDir.exists()) {
-            try {
-                org.springframework.util.FileSystemUtils.deleteRecursively(outDir.toPath());
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to clean output directories", e);
-            }
-        }
-        if (!outDir.mkdirs()) {
-            throw new RuntimeException("Failed to create output directory after cleaning.");
-        }
+    private final WorkspaceService workspaces;
+
+    /**
+     * Holds the compiled classes of the instrumented code of every ID.
+     */
+    private final BuildCache builds;
+
+    /**
+     * The warm JVMs running the traced programs.
+     */
+    private final RunnerPool runners;
+
+    /**
+     * Creates the threads draining the output of the compiler and the traced program.
+     */
+    private final ThreadFactory outputThreads;
+
+    /**
+     * The limits of the traced programs.
+     */
+    private final RunLimits limits;
+
+    /**
+     * How the JVM of a traced program is started when the pool cannot run it.
+     */
+    private final LaunchOptions launchOptions;
+
+    /**
+     * The maximum size of a log file and the number of files kept per log.
+     */
+    private final long maxLogFileBytes;
+    private final int maxLogFiles;
+
+    public TracingService(WorkspaceService workspaces, BuildCache builds, RunnerPool runners,
+                          JobThreads jobThreads, RunLimits limits, LaunchOptions launchOptions,
+                          @Value("${prorunvis.logs.max-file-bytes:1048576}") long maxLogFileBytes,
+                          @Value("${prorunvis.logs.max-files:3}") int maxLogFiles) {
+        // no DB repos needed
+        this.workspaces = workspaces;
+        this.builds = builds;
+        this.runners = runners;
+        this.outputThreads = jobThreads.factory("prorunvis-output-");
+        this.limits = limits;
+        this.launchOptions = launchOptions;
+        this.maxLogFileBytes = maxLogFileBytes;
+        this.maxLogFiles = maxLogFiles;
     }
 
     /**
-     * Decode, compile, run, produce Trace.tr inside local_storage/<instrumentId>.
+     * Compile, run, produce Trace.tr inside local_storage/<instrumentId>.
      *
      * We do NOT return an absolute path here. We'll just do it as a void
      * or you could still do a `return instrumentId;` if you want.
@@ -57,33 +106,56 @@ public class TracingService {
             throw new RuntimeException("Local ID folder does not exist: " + localIdFolder.getAbsolutePath());
         }
 
-        // local_storage/<instrumentId>/instrumented_base64.txt
-        File base64File = new File(localIdFolder, "instrumented_base64.txt");
-        if (!base64File.exists()) {
-            throw new RuntimeException("No instrumented_base64.txt found for ID: " + instrumentId);
+        // local_storage/<instrumentId>/instrumented
+        File instrumentedDir = new File(localIdFolder, InstrumentationService.INSTRUMENTED_DIR);
+        if (!instrumentedDir.isDirectory()) {
+            throw new RuntimeException("No instrumented code found for ID: " + instrumentId);
         }
 
-        // 1) Read the base64 content
-        String base64 = Util.readFileAsString(base64File);
+        try (Workspace workspace = workspaces.open(instrumentId)) {
+            runTrace(instrumentedDir, workspace, localIdFolder);
+        }
+    }
 
-        // 2) decode/unzip into resources/out/downloaded_instrumented
-        cleanOutputDirectories();
-        File instrumentedDir = Util.unzipAndDecode(base64);
+    private void runTrace(File instrumentedDir, Workspace workspace, File localIdFolder) {
+        // 1) take the main class from the manifest, only older IDs without one are parsed
+        Path manifestFile = localIdFolder.toPath().resolve(InstrumentationService.MANIFEST_FILE);
+        String mainClass;
+        if (Files.exists(manifestFile)) {
+            try {
+                mainClass = Manifest.read(manifestFile).mainClass();
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot read the manifest, instrument the code again: " + e.getMessage(), e);
+            }
+            if (mainClass == null) {
+                throw new RuntimeException("No main method found in the instrumented code. Cannot run.");
+            }
+        } else {
+            mainClass = CompileAndRun.mainClass(Util.loadCUs(instrumentedDir), instrumentedDir.getAbsolutePath());
+        }
 
-        // 3) compile + run
-        List<CompilationUnit> cus = Util.loadCUs(instrumentedDir);
-        try {
-            CompileAndRun.run(
-                    cus,
-                    instrumentedDir.getAbsolutePath(),
-                    instrumentedDir.getAbsolutePath() + "/compiled"
-            );
+        // 2) + 3) compile into local_storage/<instrumentId>/build unless compiled before,
+        // and run with <workspace>/compiled receiving the trace
+        File compiledFolder = workspace.resolve("compiled");
+        RunLogs logs = logs(localIdFolder);
+        RunOutcome outcome;
+        // the lease keeps the build from being removed as stale until the program has ended
+        try (BuildCache.Lease build = builds.open(localIdFolder.toPath(), instrumentedDir.toPath(),
+                classesDir -> CompileAndRun.compile(instrumentedDir.getAbsolutePath(),
+                        classesDir.toAbsolutePath().toString(), outputThreads, logs))) {
+            Path classes = build.getClasses();
+            outcome = runners.canRun(classes, limits)
+                    ? runners.run(mainClass, classes, compiledFolder.toPath(), limits, logs)
+                    : CompileAndRun.runCompiled(mainClass, classes.toAbsolutePath().toString(),
+                            compiledFolder.getAbsolutePath(), outputThreads, limits, logs, launchOptions);
         } catch (Exception e) {
             throw new RuntimeException("Trace run failed.", e);
         }
+        if (outcome.isTruncated()) {
+            System.out.println("Trace of " + localIdFolder.getName() + " was truncated: " + outcome);
+        }
 
         // 4) check for Trace.tr INSIDE THE "compiled" SUBFOLDER
-        File compiledFolder = new File(instrumentedDir, "compiled");
         File traceFile = new File(compiledFolder, "Trace.tr");
 
         if (!traceFile.exists()) {
@@ -92,19 +164,44 @@ public class TracingService {
         }
         System.out.println("Trace file generated at: " + traceFile.getAbsolutePath());
 
-        // 5) copy Trace.tr → local_storage/<instrumentId>/Trace.tr
+        // 5) move Trace.tr → local_storage/<instrumentId>/Trace.tr
         File localTrace = new File(localIdFolder, "Trace.tr");
         try {
-            Files.copy(
+            Files.move(
                     traceFile.toPath(),
                     localTrace.toPath(),
                     StandardCopyOption.REPLACE_EXISTING
             );
         } catch (IOException e) {
             throw new RuntimeException(
-                    "Failed copying Trace.tr to: " + localTrace.getAbsolutePath(),
+                    "Failed moving Trace.tr to: " + localTrace.getAbsolutePath(),
                     e
             );
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the end of a log of the last trace run of an ID, which grows
+     * while the program is running.
+     *
+     * @param instrumentId the ID of the trace run.
+     * @param log          the name of the log, {@link RunLogs#STDOUT} or {@link RunLogs#STDERR}.
+     * @param maxBytes     the maximum number of bytes returned.
+     * @return the end of the log, empty if nothing was logged yet.
+     */
+    public String tailLog(String instrumentId, String log, int maxBytes) {
+        File localIdFolder = new File(LOCAL_STORAGE_DIR, instrumentId);
+        if (!localIdFolder.isDirectory()) {
+            throw new RuntimeException("Local ID folder does not exist: " + localIdFolder.getAbsolutePath());
+        }
+        try {
+            return logs(localIdFolder).tail(log, maxBytes);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read " + log + " for ID: " + instrumentId, e);
+        }
+    }
+
+    private RunLogs logs(File localIdFolder) {
+        return new RunLogs(new File(localIdFolder, LOGS_DIR).toPath(), maxLogFileBytes, maxLogFiles);
+    }
+}
@@ -1,41 +1,191 @@
 package api.service;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
+import prorunvis.trace.MappedTraceNodeStore;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * Reworked VisualizationService to read from local processedTrace.json
- * in resources/local_storage/<localId>/processedTrace.json.
+ * Reworked VisualizationService to serve the processed trace files
+ * in resources/local_storage/<localId>/.
+ * Single nodes are read from the memory-mapped processedTrace.bin.
  */
 @Service
 public class VisualizationService {
 
     private static final String LOCAL_STORAGE_DIR = "resources/local_storage";
 
-    public VisualizationService() {
+    /**
+     * The name of the processed trace file.
+     */
+    public static final String TRACE_FILE = "processedTrace.json";
+
+    /**
+     * The name of the gzip compressed copy of the processed trace file.
+     */
+    public static final String TRACE_GZIP_FILE = TRACE_FILE + ".gz";
+
+    /**
+     * The name of the binary node store written next to processedTrace.json.
+     */
+    public static final String NODE_STORE_FILE = "processedTrace.bin";
+
+    /**
+     * The most recently used node stores, keyed by local ID, in access order.
+     * Mapped stores use almost no heap, but every store holds its mappings and
+     * string tables, so only the configured number is kept open; the least
+     * recently used store is dropped and unmapped once it is unreachable.
+     */
+    private final LinkedHashMap<String, OpenStore> stores;
+
+    /**
+     * The in-memory cache of recently served trace files.
+     */
+    private final TraceCache cache;
+
+    /**
+     * An opened node store and the modification time of its file when it was opened.
+     */
+    private record OpenStore(MappedTraceNodeStore store, FileTime modified) {
+    }
+
+    /**
+     * A processed trace file ready to be sent to a client.
+     *
+     * @param resource     the content of the file, either in memory or on disk.
+     * @param compressed   whether the content is gzip compressed.
+     * @param eTag         the entity tag of the content, changing whenever the file is rewritten.
+     * @param lastModified the modification time of the file in milliseconds.
+     */
+    public record TraceFile(Resource resource, boolean compressed, String eTag, long lastModified) {
+    }
+
+    public VisualizationService(TraceCache cache,
+                                @Value("${prorunvis.node-stores.max-open:64}") int maxOpenStores) {
         // no repos needed
+        this.cache = cache;
+        this.stores = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, OpenStore> eldest) {
+                return size() > maxOpenStores;
+            }
+        };
     }
 
-    public String getTraceJson(String localId) {
-        // find resources/local_storage/<localId>/processedTrace.json
-        File localFolder = new File(LOCAL_STORAGE_DIR, localId);
-        if (!localFolder.exists() || !localFolder.isDirectory()) {
-            throw new RuntimeException("Local ID folder not found: " + localFolder.getAbsolutePath());
+    /**
+     * Returns the processed trace of a local ID. Recently used traces are served
+     * from memory, others are read from disk and added to the cache if they are
+     * small enough, larger ones are streamed from disk.
+     *
+     * @param localId the ID of the processed trace.
+     * @param gzip    whether the client accepts a gzip compressed file.
+     * @return the trace file to send to the client.
+     */
+    public TraceFile getTrace(String localId, boolean gzip) {
+        TraceFile cached = cache.get(localId, gzip);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = cache.generation();
+        File file = getTraceFile(localId, gzip);
+        boolean compressed = file.getName().equals(TRACE_GZIP_FILE);
+        long lastModified = file.lastModified();
+        long length = file.length();
+        String eTag = (compressed ? "gz-" : "") + Long.toHexString(length) + "-" + Long.toHexString(lastModified);
+        if (!cache.accepts(length)) {
+            return new TraceFile(new FileSystemResource(file), compressed, eTag, lastModified);
         }
-        File processedFile = new File(localFolder, "processedTrace.json");
+
+        try {
+            byte[] content = Files.readAllBytes(file.toPath());
+            TraceFile trace = new TraceFile(new ByteArrayResource(content), compressed, eTag, lastModified);
+            cache.put(localId, gzip, trace, content.length, generation);
+            return trace;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read " + file.getName() + " for ID: " + localId, e);
+        }
+    }
+
+    /**
+     * Drops the cached files and the open node store of a processed trace,
+     * called after processing rewrote them.
+     *
+     * @param localId the ID of the processed trace.
+     */
+    public void invalidate(String localId) {
+        cache.invalidate(localId);
+        synchronized (stores) {
+            stores.remove(localId);
+        }
+    }
+
+    /**
+     * Returns the processed trace file of a local ID on disk, preferring the gzip compressed
+     * copy if the client accepts it and processing produced one.
+     *
+     * @param localId the ID of the processed trace.
+     * @param gzip    whether the client accepts a gzip compressed file.
+     * @return the file to send to the client.
+     */
+    public File getTraceFile(String localId, boolean gzip) {
+        File localFolder = getLocalFolder(localId);
+        File compressedFile = new File(localFolder, TRACE_GZIP_FILE);
+        if (gzip && compressedFile.exists()) {
+            return compressedFile;
+        }
+        File processedFile = new File(localFolder, TRACE_FILE);
         if (!processedFile.exists()) {
-            throw new RuntimeException("No processedTrace.json found for ID: " + localId);
+            throw new RuntimeException("No " + TRACE_FILE + " found for ID: " + localId);
+        }
+        return processedFile;
+    }
+
+    /**
+     * Returns the memory-mapped node store of a processed trace. The store is
+     * opened on first use and reopened if processing rewrote its file.
+     *
+     * @param localId the ID of the processed trace.
+     * @return the node store of the trace.
+     */
+    public MappedTraceNodeStore getNodeStore(String localId) {
+        File storeFile = new File(getLocalFolder(localId), NODE_STORE_FILE);
+        if (!storeFile.exists()) {
+            throw new RuntimeException("No " + NODE_STORE_FILE + " found for ID: " + localId);
         }
 
         try {
-            byte[] content = Files.readAllBytes(processedFile.toPath());
-            return new String(content, StandardCharsets.UTF_8);
+            FileTime modified = Files.getLastModifiedTime(storeFile.toPath());
+            OpenStore open;
+            synchronized (stores) {
+                open = stores.get(localId);
+            }
+            if (open == null || !open.modified().equals(modified)) {
+                open = new OpenStore(MappedTraceNodeStore.open(storeFile.toPath()), modified);
+                synchronized (stores) {
+                    stores.put(localId, open);
+                }
+            }
+            return open.store();
         } catch (IOException e) {
-            throw new RuntimeException("Failed to read processedTrace.json", e);
+            throw new RuntimeException("Failed to open " + NODE_STORE_FILE + " for ID: " + localId, e);
+        }
+    }
+
+    private File getLocalFolder(String localId) {
+        File localFolder = new File(LOCAL_STORAGE_DIR, localId);
+        if (!localFolder.exists() || !localFolder.isDirectory()) {
+            throw new RuntimeException("Local ID folder not found: " + localFolder.getAbsolutePath());
         }
+        return localFolder;
     }
-}
\ No newline at end of file
+}
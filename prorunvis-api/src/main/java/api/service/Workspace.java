@@ -0,0 +1,51 @@
+package api.service;
+
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A private working directory of a single instrumentation, trace run or
+ * processing. Closing the workspace deletes the directory with all its content.
+ */
+public final class Workspace implements AutoCloseable {
+
+    /**
+     * The directory of this workspace.
+     */
+    private final Path root;
+
+    Workspace(final Path root) {
+        this.root = root;
+    }
+
+    /**
+     * @return the directory of this workspace.
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @param name a path relative to the workspace.
+     * @return the file with the given path in this workspace.
+     */
+    public File resolve(final String name) {
+        return root.resolve(name).toFile();
+    }
+
+    /**
+     * Deletes the workspace. Failing to delete it is only reported, as the
+     * results of the work have already been stored elsewhere.
+     */
+    @Override
+    public void close() {
+        try {
+            FileSystemUtils.deleteRecursively(root);
+        } catch (IOException e) {
+            System.out.println("Could not delete workspace " + root + ": " + e.getMessage());
+        }
+    }
+}
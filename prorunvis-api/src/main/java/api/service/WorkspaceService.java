@@ -0,0 +1,43 @@
+package api.service;
+
+import api.upload.storage.StorageProperties;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Creates a separate {@link Workspace} below the configured out location for
+ * every piece of work, so concurrent jobs never share or clean each other's
+ * output directories.
+ */
+@Service
+public class WorkspaceService {
+
+    /**
+     * The directory containing all workspaces.
+     */
+    private final Path root;
+
+    public WorkspaceService(final StorageProperties properties) {
+        this.root = Paths.get(properties.getOutLocation());
+    }
+
+    /**
+     * Creates a new, empty workspace.
+     *
+     * @param owner the ID of the job or upload the workspace is used for, which
+     *              prefixes the name of its directory.
+     * @return the created workspace, which has to be closed once the work is done.
+     */
+    public Workspace open(final String owner) {
+        try {
+            Files.createDirectories(root);
+            return new Workspace(Files.createTempDirectory(root, owner + "-"));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create workspace for: " + owner, e);
+        }
+    }
+}
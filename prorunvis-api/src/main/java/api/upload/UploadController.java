@@ -1,5 +1,6 @@
 package api.upload;
 
+import api.upload.storage.ArchiveFormat;
 import api.upload.storage.StorageException;
 import api.upload.storage.StorageService;
 import jakarta.servlet.ServletException;
@@ -13,6 +14,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * A {@link Controller} used for handling files, that are uploaded
@@ -53,26 +55,48 @@ public class UploadController {
      * Handles file uploads to the server. The files will be stored as
      * provided by the used {@link StorageService} of this controller.
      *
+     * Every upload is stored in a directory of its own, so uploads of
+     * different users do not overwrite each other.
+     *
      * @param request The Http request containing the uploaded files
      *                as {@link Part}, which will be stored using the
      *                provided {@link #storageService}.
+     * @return The ID of the upload, which selects the uploaded files
+     *         in later requests.
      */
     @PostMapping("/api/upload")
     @ResponseBody
-    public void handleUpload(final HttpServletRequest request) {
-
-        //ensure that no other files are contained within in/out
-        storageService.deleteAll();
-
+    public String handleUpload(final HttpServletRequest request) {
         try {
-            for (Part part : request.getParts()) {
-                storageService.store(part);
-            }
+            return storageService.store(request.getParts());
         } catch (IOException | ServletException e) {
             throw new StorageException("No files for upload selected.");
         }
     }
 
+    /**
+     * Handles the upload of a whole project as a single zip or gzip compressed
+     * tar archive, sent as the request body. The archive is extracted while it
+     * is received, so no part of it is buffered by the server and the upload
+     * costs the same for many small files as for a few large ones.
+     *
+     * @param request The Http request containing the archive as body.
+     * @return The ID of the upload, which selects the uploaded files
+     *         in later requests.
+     */
+    @PostMapping(value = "/api/upload", consumes = {"application/zip", "application/x-zip-compressed",
+            "application/gzip", "application/x-gzip", "application/x-gtar"})
+    @ResponseBody
+    public String handleArchiveUpload(final HttpServletRequest request) {
+        ArchiveFormat format = ArchiveFormat.of(request.getContentType())
+                .orElseThrow(() -> new StorageException("Unsupported archive type: " + request.getContentType()));
+        try (InputStream archive = request.getInputStream()) {
+            return storageService.storeArchive(archive, format);
+        } catch (IOException e) {
+            throw new StorageException("Could not read the uploaded archive.", e);
+        }
+    }
+
     /**
      * An ExceptionHandler for handling {@link StorageException}s.
      * If an exceptions occurs, this handler returns a string representation of
@@ -0,0 +1,65 @@
+package api.upload.storage;
+
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The formats of project archives accepted as a single upload, see
+ * {@link StorageService#storeArchive(InputStream, ArchiveFormat)}. Both are
+ * read entry by entry as the bytes arrive, so the archive is never buffered.
+ */
+public enum ArchiveFormat {
+
+    /**
+     * A zip archive.
+     */
+    ZIP,
+
+    /**
+     * A gzip compressed tar archive.
+     */
+    TAR_GZ;
+
+    /**
+     * The size of the buffer of the gzip decompression.
+     */
+    private static final int GZIP_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Gets the format of an archive from the content type of its request.
+     *
+     * @param contentType The content type, possibly with parameters.
+     * @return The format, if the content type denotes a supported archive.
+     */
+    public static Optional<ArchiveFormat> of(final String contentType) {
+        if (contentType == null) {
+            return Optional.empty();
+        }
+        return switch (contentType.split(";")[0].trim().toLowerCase(Locale.ROOT)) {
+            case "application/zip", "application/x-zip-compressed" -> Optional.of(ZIP);
+            case "application/gzip", "application/x-gzip", "application/x-gtar" -> Optional.of(TAR_GZ);
+            default -> Optional.empty();
+        };
+    }
+
+    /**
+     * Opens an archive of this format for reading its entries.
+     *
+     * @param in The stream of the archive.
+     * @return The stream of the entries of the archive.
+     * @throws IOException If the archive could not be opened.
+     */
+    ArchiveInputStream<?> open(final InputStream in) throws IOException {
+        return switch (this) {
+            case ZIP -> new ZipArchiveInputStream(in);
+            case TAR_GZ -> new TarArchiveInputStream(new GZIPInputStream(in, GZIP_BUFFER_SIZE));
+        };
+    }
+}
@@ -1,16 +1,25 @@
 package api.upload.storage;
 
+import api.service.ParsePipeline;
 import jakarta.servlet.http.Part;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.springframework.stereotype.Service;
 import org.springframework.util.FileSystemUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.regex.Pattern;
 
 /**
  * A Storage service used to store given data in a directory specified
@@ -29,10 +38,31 @@ public class FileSystemStorageService implements StorageService {
      */
     private final Path outLocation;
 
+    /**
+     * The maximum number of bytes extracted from an uploaded archive.
+     */
+    private final long maxArchiveBytes;
+
+    /**
+     * The maximum number of entries of an uploaded archive.
+     */
+    private final int maxArchiveEntries;
+
+    /**
+     * Parses the stored source files while the rest of an upload is received.
+     */
+    private final ParsePipeline parsePipeline;
+
+    /**
+     * The pattern of the upload IDs handed out by {@link #store(Collection)}.
+     */
+    private static final Pattern UPLOAD_ID = Pattern.compile("[0-9a-f]{8}(-[0-9a-f]{4}){3}-[0-9a-f]{12}");
+
     /**
      * @param properties The storage properties for the storage service
+     * @param parsePipeline The pipeline receiving every stored file for parsing
      */
-    public FileSystemStorageService(final StorageProperties properties) {
+    public FileSystemStorageService(final StorageProperties properties, final ParsePipeline parsePipeline) {
         if (properties.getLocation().trim().isEmpty()) {
             throw new StorageException("File storage directory cannot be empty.");
         }
@@ -43,6 +73,9 @@ public class FileSystemStorageService implements StorageService {
         } else {
             this.outLocation = Paths.get(properties.getOutLocation());
         }
+        this.maxArchiveBytes = properties.getMaxArchiveBytes();
+        this.maxArchiveEntries = properties.getMaxArchiveEntries();
+        this.parsePipeline = parsePipeline;
     }
 
     /**
@@ -60,28 +93,165 @@ public class FileSystemStorageService implements StorageService {
     }
 
     /**
-     * Stores the contents of a file to a new {@link java.io.File}
-     * in the directory specified by <code>rootLocation</code>.
-     * @param part a part of a http-request representing a file
-     *             to be stored. If the file does not exist it is
-     *             created inside the rootLocation.
+     * Stores the contents of the files of one upload to a new directory
+     * named after the upload ID inside the directory specified by
+     * <code>rootLocation</code>, keeping their relative paths.
+     * @param parts the parts of a http-request representing the files
+     *              to be stored.
+     * @return the ID of the upload.
      */
     @Override
-    public void store(final Part part) {
+    public String store(final Collection<Part> parts) {
+        String uploadId = UUID.randomUUID().toString();
+        Path uploadDir = rootLocation.resolve(uploadId).toAbsolutePath().normalize();
+        boolean stored = false;
         try {
-            String fileName = FilenameUtils.separatorsToSystem(part.getSubmittedFileName());
-            Path file = rootLocation.resolve(fileName);
+            Files.createDirectories(uploadDir);
+            for (Part part : parts) {
+                Path file = resolve(uploadDir, part.getSubmittedFileName());
+                if (Files.notExists(file.getParent())) {
+                    Files.createDirectories(file.getParent());
+                }
 
-            if (Files.notExists(file.getParent())) {
-                Files.createDirectories(file.getParent());
+                try (InputStream inputStream = part.getInputStream()) {
+                    Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+                parsePipeline.submit(uploadDir, file);
+            }
+            stored = true;
+        } catch (IOException e) {
+            throw new StorageException("Could not store file.", e);
+        } finally {
+            if (!stored) {
+                // do not leave a partial upload behind
+                parsePipeline.discard(uploadDir);
+                FileSystemUtils.deleteRecursively(uploadDir.toFile());
             }
+        }
+        return uploadId;
+    }
 
-            try (InputStream inputStream = part.getInputStream()) {
-                Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * Extracts the files of an archive to a new directory named after the
+     * upload ID inside the directory specified by <code>rootLocation</code>,
+     * keeping their relative paths. Each entry is written to disk as it is
+     * read from the stream, so the archive is never held in memory.
+     * @param archive the stream of the archive, which is not closed.
+     * @param format the format of the archive.
+     * @return the ID of the upload.
+     */
+    @Override
+    public String storeArchive(final InputStream archive, final ArchiveFormat format) {
+        String uploadId = UUID.randomUUID().toString();
+        Path uploadDir = rootLocation.resolve(uploadId).toAbsolutePath().normalize();
+        boolean stored = false;
+        // the archive is read through a shield, as the caller owns the stream
+        try (ArchiveInputStream<?> entries = format.open(CloseShieldInputStream.wrap(archive))) {
+            Files.createDirectories(uploadDir);
+            long extracted = 0;
+            int count = 0;
+            ArchiveEntry entry;
+            while ((entry = entries.getNextEntry()) != null) {
+                if (++count > maxArchiveEntries) {
+                    throw new StorageException("The archive has more than " + maxArchiveEntries + " entries.");
+                }
+                Path file = resolve(uploadDir, entry.getName());
+                if (entry.isDirectory()) {
+                    Files.createDirectories(file);
+                    continue;
+                }
+                if (entry instanceof TarArchiveEntry tarEntry
+                        && (tarEntry.isSymbolicLink() || tarEntry.isLink() || !tarEntry.isFile())) {
+                    // links could point outside of the upload, devices and fifos are of no use
+                    continue;
+                }
+                if (!entries.canReadEntryData(entry)) {
+                    throw new StorageException("Cannot read archive entry: " + entry.getName());
+                }
+                Files.createDirectories(file.getParent());
+                extracted += extract(entries, file, maxArchiveBytes - extracted);
+                parsePipeline.submit(uploadDir, file);
             }
+            stored = true;
         } catch (IOException e) {
-            throw new StorageException("Could not store file.", e);
+            throw new StorageException("Could not store archive.", e);
+        } finally {
+            if (!stored) {
+                // do not leave a partial upload behind
+                parsePipeline.discard(uploadDir);
+                FileSystemUtils.deleteRecursively(uploadDir.toFile());
+            }
         }
+        return uploadId;
+    }
+
+    /**
+     * Resolves the name of an uploaded file inside the directory of its upload.
+     * @param uploadDir the normalized directory of the upload.
+     * @param fileName the relative path of the file, as sent by the client.
+     * @return the path of the file.
+     * @throws StorageException if the file would be stored outside of the upload.
+     */
+    private static Path resolve(final Path uploadDir, final String fileName) {
+        Path file = uploadDir.resolve(FilenameUtils.separatorsToSystem(fileName)).normalize();
+        if (!file.startsWith(uploadDir)) {
+            throw new StorageException("Cannot store file outside of the upload: " + fileName);
+        }
+        return file;
+    }
+
+    /**
+     * Writes the data of the current archive entry to a file, counting the
+     * bytes actually read instead of trusting the size in the entry header.
+     * @param entries the archive, positioned at the entry.
+     * @param file the file to write.
+     * @param remaining the number of bytes that may still be extracted.
+     * @return the number of bytes written.
+     * @throws StorageException if the entry exceeds the remaining bytes.
+     */
+    private long extract(final InputStream entries, final Path file, final long remaining) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        long written = 0;
+        try (OutputStream out = Files.newOutputStream(file)) {
+            int n;
+            while ((n = entries.read(buffer)) >= 0) {
+                written += n;
+                if (written > remaining) {
+                    throw new StorageException("The extracted archive exceeds " + maxArchiveBytes + " bytes.");
+                }
+                out.write(buffer, 0, n);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Gets the directory of an upload inside the directory specified by
+     * <code>rootLocation</code>.
+     * @param uploadId the ID of the upload.
+     * @return the directory holding the files of the upload.
+     */
+    @Override
+    public Path load(final String uploadId) {
+        if (uploadId == null || !UPLOAD_ID.matcher(uploadId).matches()) {
+            throw new StorageException("Invalid upload ID: " + uploadId);
+        }
+        Path uploadDir = rootLocation.resolve(uploadId);
+        if (!Files.isDirectory(uploadDir)) {
+            throw new StorageException("No upload found for ID: " + uploadId);
+        }
+        return uploadDir;
+    }
+
+    /**
+     * Recursively deletes the directory of an upload.
+     * @param uploadId the ID of the upload.
+     */
+    @Override
+    public void delete(final String uploadId) {
+        Path uploadDir = load(uploadId);
+        parsePipeline.discard(uploadDir);
+        FileSystemUtils.deleteRecursively(uploadDir.toFile());
     }
 
     /**
@@ -91,6 +261,7 @@ public class FileSystemStorageService implements StorageService {
      */
     @Override
     public void deleteAll() {
+        parsePipeline.discardAll();
         FileSystemUtils.deleteRecursively(rootLocation.toFile());
         FileSystemUtils.deleteRecursively(outLocation.toFile());
     }
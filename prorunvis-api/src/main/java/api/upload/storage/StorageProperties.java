@@ -18,6 +18,16 @@ public class StorageProperties {
      */
     private String outLocation = "resources/out";
 
+    /**
+     * The maximum number of bytes extracted from an uploaded archive.
+     */
+    private long maxArchiveBytes = 1L << 30;
+
+    /**
+     * The maximum number of entries of an uploaded archive.
+     */
+    private int maxArchiveEntries = 100_000;
+
     /**
      * Gets the {@code inLocation} field of this property object.
      *
@@ -55,4 +65,40 @@ public class StorageProperties {
     public void setOutLocation(final String location) {
         this.outLocation = location;
     }
+
+    /**
+     * Gets the maximum number of bytes extracted from an uploaded archive.
+     *
+     * @return The maximum number of bytes.
+     */
+    public long getMaxArchiveBytes() {
+        return this.maxArchiveBytes;
+    }
+
+    /**
+     * Sets the maximum number of bytes extracted from an uploaded archive.
+     *
+     * @param maxBytes The maximum number of bytes.
+     */
+    public void setMaxArchiveBytes(final long maxBytes) {
+        this.maxArchiveBytes = maxBytes;
+    }
+
+    /**
+     * Gets the maximum number of entries of an uploaded archive.
+     *
+     * @return The maximum number of entries.
+     */
+    public int getMaxArchiveEntries() {
+        return this.maxArchiveEntries;
+    }
+
+    /**
+     * Sets the maximum number of entries of an uploaded archive.
+     *
+     * @param maxEntries The maximum number of entries.
+     */
+    public void setMaxArchiveEntries(final int maxEntries) {
+        this.maxArchiveEntries = maxEntries;
+    }
 }
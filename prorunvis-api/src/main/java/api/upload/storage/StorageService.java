@@ -2,11 +2,16 @@ package api.upload.storage;
 
 import jakarta.servlet.http.Part;
 
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+
 /**
  * A Service for storing data provided from a http request.
  * The user of this interface can create and delete all
  * necessary directories and has control of the way each {@link Part}
- * of the request is stored.
+ * of the request is stored. Every upload is stored in a directory
+ * of its own, identified by an upload ID.
  */
 public interface StorageService {
 
@@ -17,12 +22,37 @@ public interface StorageService {
     void init();
 
     /**
-     * Stores data to the given storage location. This method should not be
+     * Stores the files of one upload in a new directory. This method should not be
      * called without {@link #init()} having been called before.
-     * @param part The data to store. The data is provided in form of a
-     *             {@link Part} from a http request.
+     * @param parts The files to store. The files are provided in form of
+     *              {@link Part}s from a http request.
+     * @return The ID of the upload.
+     */
+    String store(Collection<Part> parts);
+
+    /**
+     * Stores the files of a project archive, sent as a single stream, in a new
+     * directory. The entries are extracted while the stream is read. Entries
+     * outside of the directory, links and archives exceeding the configured
+     * size limits are rejected.
+     * @param archive The stream of the archive, which is not closed.
+     * @param format The format of the archive.
+     * @return The ID of the upload.
+     */
+    String storeArchive(InputStream archive, ArchiveFormat format);
+
+    /**
+     * Gets the directory holding the files of an upload.
+     * @param uploadId The ID returned by {@link #store(Collection)}.
+     * @return The directory of the upload.
+     */
+    Path load(String uploadId);
+
+    /**
+     * Deletes the files of an upload.
+     * @param uploadId The ID of the upload.
      */
-    void store(Part part);
+    void delete(String uploadId);
 
     /**
      * Deletes all data stored by this storage service or storage services
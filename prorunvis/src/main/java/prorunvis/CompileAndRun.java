@@ -3,19 +3,61 @@ package prorunvis;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.MethodDeclaration;
 
+import prorunvis.trace.process.Scanner;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
 
 /**
  * This utility class compiles and runs the instrumented code.
  */
 public final class CompileAndRun {
 
+    /**
+     * The default factory for the threads draining the output of the child processes.
+     */
+    private static final ThreadFactory DAEMON_THREADS = runnable -> {
+        Thread thread = new Thread(runnable, "prorunvis-output");
+        thread.setDaemon(true);
+        return thread;
+    };
+
+    /**
+     * The launcher of the running JVM, which runs the traced programs, so they
+     * run on the Java version the {@link InMemoryCompiler} compiled them for.
+     */
+    static final String JAVA = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+
+    /**
+     * How often the limits of a running program are checked, in milliseconds.
+     */
+    private static final long LIMIT_CHECK_INTERVAL = 100;
+
+    /**
+     * How much of the end of the error output is included in messages, in bytes.
+     */
+    private static final int ERROR_TAIL_BYTES = 1 << 16;
+
+    /**
+     * The exit value of a JVM terminated by -XX:+ExitOnOutOfMemoryError.
+     */
+    private static final int OUT_OF_MEMORY_EXIT = 3;
+
     private CompileAndRun() {
         throw new IllegalStateException();
     }
@@ -25,17 +67,76 @@ public final class CompileAndRun {
      * @param cus a List of CompilationUnit with possibly one having a main method
      * @param instrumentedInPath path to instrumented source
      * @param compiledOutPath where compiled classes go
+     * @return how the program ended
      * @throws IOException if compilation fails due to I/O
      * @throws InterruptedException if process is interrupted
      */
-    public static void run(final List<CompilationUnit> cus,
-                           final String instrumentedInPath, final String compiledOutPath)
+    public static RunOutcome run(final List<CompilationUnit> cus,
+                                 final String instrumentedInPath, final String compiledOutPath)
             throws IOException, InterruptedException {
-        File compiled = new File(compiledOutPath);
-        if (!compiled.exists() && !compiled.mkdirs()) {
-            throw new IOException("Failed to create compiled output directory: " + compiledOutPath);
-        }
+        return run(cus, instrumentedInPath, compiledOutPath, DAEMON_THREADS, RunLimits.NONE);
+    }
+
+    /**
+     * Compile and run the main class found in the provided compilation units,
+     * logging the output of the compiler and the program to the folder "logs"
+     * in the compiled output, see {@link #run(List, String, String, ThreadFactory, RunLimits, RunLogs)}.
+     * @param cus a List of CompilationUnit with possibly one having a main method
+     * @param instrumentedInPath path to instrumented source
+     * @param compiledOutPath where compiled classes go
+     * @param outputThreads creates the threads reading the output of the child processes
+     * @param limits the limits of the program run
+     * @return how the program ended
+     * @throws IOException if compilation fails due to I/O
+     * @throws InterruptedException if process is interrupted
+     */
+    public static RunOutcome run(final List<CompilationUnit> cus,
+                                 final String instrumentedInPath, final String compiledOutPath,
+                                 final ThreadFactory outputThreads, final RunLimits limits)
+            throws IOException, InterruptedException {
+        return run(cus, instrumentedInPath, compiledOutPath, outputThreads, limits,
+                RunLogs.in(Paths.get(compiledOutPath, "logs")));
+    }
 
+    /**
+     * Compile and run the main class found in the provided compilation units.
+     * <p>
+     * The standard and error output of the compiler and the program are pumped
+     * into the given logs while the processes run, so neither process blocks on
+     * a full pipe and the output is never held in memory. The pumping threads
+     * are created by the given factory; callers handling many runs at once can
+     * pass a factory creating virtual threads, as these threads spend their time
+     * blocked.
+     * <p>
+     * The program is run within the given limits. A program exceeding them is
+     * killed, or terminates itself when it runs out of heap, and its trace is
+     * cut after the last complete id and marked with {@link Scanner#TRUNCATED_MARKER}.
+     * @param cus a List of CompilationUnit with possibly one having a main method
+     * @param instrumentedInPath path to instrumented source
+     * @param compiledOutPath where compiled classes go
+     * @param outputThreads creates the threads reading the output of the child processes
+     * @param limits the limits of the program run
+     * @param logs the logs receiving the output of the compiler and the program
+     * @return how the program ended
+     * @throws IOException if compilation fails due to I/O
+     * @throws InterruptedException if process is interrupted
+     */
+    public static RunOutcome run(final List<CompilationUnit> cus,
+                                 final String instrumentedInPath, final String compiledOutPath,
+                                 final ThreadFactory outputThreads, final RunLimits limits, final RunLogs logs)
+            throws IOException, InterruptedException {
+        String mainClass = mainClass(cus, instrumentedInPath);
+        return run(mainClass, instrumentedInPath, compiledOutPath, outputThreads, limits, logs);
+    }
+
+    /**
+     * Finds the class to run in the compilation units of an instrumented project.
+     * @param cus a List of CompilationUnit with possibly one having a main method
+     * @param instrumentedInPath path to instrumented source
+     * @return the fully qualified name of the class with the main method
+     * @throws RuntimeException if no compilation unit has a main method
+     */
+    public static String mainClass(final List<CompilationUnit> cus, final String instrumentedInPath) {
         // Find main class
         List<CompilationUnit> mains = cus.stream()
                 .filter(cu -> cu.findFirst(MethodDeclaration.class,
@@ -49,31 +150,6 @@ public final class CompileAndRun {
         String fileName = mainUnit.getStorage().get().getFileName();
         Path sourcePath = mainUnit.getStorage().get().getDirectory();
 
-        // Compile
-        File instrDir = new File(instrumentedInPath);
-        List<String> allJavaFiles = new ArrayList<>();
-
-        Files.walk(instrDir.toPath())
-                .filter(p -> p.toString().endsWith(".java"))
-                .forEach(p -> allJavaFiles.add(p.toAbsolutePath().toString()));
-
-        List<String> command = new ArrayList<>();
-        command.add("javac");
-        command.add("-sourcepath");
-        command.add(instrumentedInPath);
-        command.add("-d");
-        command.add(compiledOutPath);
-        command.addAll(allJavaFiles);
-        ProcessBuilder compilePb = new ProcessBuilder(command);
-        Process compileProc = compilePb.start();
-        int compileExit = compileProc.waitFor();
-        if (compileExit != 0) {
-            String compileError = new BufferedReader(new InputStreamReader(compileProc.getErrorStream()))
-                    .lines().collect(Collectors.joining("\n"));
-            throw new InterruptedException("An error occurred during compilation.\n" + compileError);
-        }
-
-        System.out.println("Compilation succeeded with all .java files!");
         // Derive the main class name
         // Convert the path difference to a package name
         String prefix = Paths.get(instrumentedInPath).toAbsolutePath().toString();
@@ -86,20 +162,429 @@ public final class CompileAndRun {
                 packageName = packageName.substring(1);
             }
         }
-        String mainClass = packageName.isEmpty() ? fileName.replace(".java", "") : packageName + "." + fileName.replace(".java", "");
+        return packageName.isEmpty() ? fileName.replace(".java", "")
+                : packageName + "." + fileName.replace(".java", "");
+    }
 
+    /**
+     * Compile all sources of the instrumented project and run the given main
+     * class, like {@link #run(List, String, String, ThreadFactory, RunLimits, RunLogs)}
+     * does with the main class found in the compilation units. Callers knowing
+     * the main class already do not need to parse the code.
+     * @param mainClass the fully qualified name of the class to run
+     * @param instrumentedInPath path to instrumented source
+     * @param compiledOutPath where compiled classes go
+     * @param outputThreads creates the threads reading the output of the child processes
+     * @param limits the limits of the program run
+     * @param logs the logs receiving the output of the compiler and the program
+     * @return how the program ended
+     * @throws IOException if compilation fails due to I/O
+     * @throws InterruptedException if process is interrupted
+     */
+    public static RunOutcome run(final String mainClass,
+                                 final String instrumentedInPath, final String compiledOutPath,
+                                 final ThreadFactory outputThreads, final RunLimits limits, final RunLogs logs)
+            throws IOException, InterruptedException {
+        try (RotatingLog out = logs.open(RunLogs.STDOUT); RotatingLog err = logs.open(RunLogs.STDERR)) {
+            compile(instrumentedInPath, compiledOutPath, outputThreads, logs, out, err);
+            return execute(mainClass, compiledOutPath, compiledOutPath, outputThreads, limits, LaunchOptions.DEFAULT,
+                    logs, out, err);
+        }
+    }
+
+    /**
+     * Compile all sources of the instrumented project, without running it.
+     * Together with {@link #runCompiled(String, String, String, ThreadFactory, RunLimits, RunLogs)}
+     * this lets callers compile a project once and run it many times.
+     * <p>
+     * The sources are compiled inside this JVM by the {@link InMemoryCompiler}
+     * and its diagnostics are written to the error log; only JVMs without a
+     * compiler start an external javac.
+     * @param instrumentedInPath path to instrumented source
+     * @param compiledOutPath where compiled classes go
+     * @param outputThreads creates the threads reading the output of the compiler
+     * @param logs the logs receiving the output of the compiler
+     * @throws IOException if compilation fails due to I/O
+     * @throws InterruptedException if the compilation fails or the process is interrupted
+     */
+    public static void compile(final String instrumentedInPath, final String compiledOutPath,
+                               final ThreadFactory outputThreads, final RunLogs logs)
+            throws IOException, InterruptedException {
+        try (RotatingLog out = logs.open(RunLogs.STDOUT); RotatingLog err = logs.open(RunLogs.STDERR)) {
+            compile(instrumentedInPath, compiledOutPath, outputThreads, logs, out, err);
+        }
+    }
+
+    /**
+     * Run the given main class of a project compiled before by
+     * {@link #compile(String, String, ThreadFactory, RunLogs)}, within the given
+     * limits like {@link #run(List, String, String, ThreadFactory, RunLimits, RunLogs)}.
+     * The compiled classes are only read, the trace is written to the working
+     * directory, so several runs may share the same classes.
+     * @param mainClass the fully qualified name of the class to run
+     * @param classesPath the folder of the compiled classes
+     * @param workPath the working directory of the program, receiving "Trace.tr"
+     * @param outputThreads creates the threads reading the output of the program
+     * @param limits the limits of the program run
+     * @param logs the logs receiving the output of the program
+     * @return how the program ended
+     * @throws IOException if the program cannot be started
+     * @throws InterruptedException if process is interrupted
+     */
+    public static RunOutcome runCompiled(final String mainClass, final String classesPath, final String workPath,
+                                         final ThreadFactory outputThreads, final RunLimits limits,
+                                         final RunLogs logs)
+            throws IOException, InterruptedException {
+        return runCompiled(mainClass, classesPath, workPath, outputThreads, limits, logs, LaunchOptions.DEFAULT);
+    }
+
+    /**
+     * Run the given main class of a project compiled before, like
+     * {@link #runCompiled(String, String, String, ThreadFactory, RunLimits, RunLogs)},
+     * in a JVM started with the given options.
+     * <p>
+     * With {@link LaunchOptions#classDataSharing()} the classes are run from an
+     * AppCDS archive of the trace runtime and the user classes, which the first
+     * run of a build dumps into the folder next to the classes, named after it
+     * with the suffix ".cds", and all later runs of it load, so repeated runs of
+     * the same build start faster. The classes folder is only read. JDKs without a default
+     * CDS archive, and "-Xshare:off" in the options, run without an archive.
+     * @param mainClass the fully qualified name of the class to run
+     * @param classesPath the folder of the compiled classes
+     * @param workPath the working directory of the program, receiving "Trace.tr"
+     * @param outputThreads creates the threads reading the output of the program
+     * @param limits the limits of the program run
+     * @param logs the logs receiving the output of the program
+     * @param options how the JVM of the program is started
+     * @return how the program ended
+     * @throws IOException if the program cannot be started
+     * @throws InterruptedException if process is interrupted
+     */
+    public static RunOutcome runCompiled(final String mainClass, final String classesPath, final String workPath,
+                                         final ThreadFactory outputThreads, final RunLimits limits,
+                                         final RunLogs logs, final LaunchOptions options)
+            throws IOException, InterruptedException {
+        File work = new File(workPath);
+        if (!work.exists() && !work.mkdirs()) {
+            throw new IOException("Failed to create working directory: " + workPath);
+        }
+        try (RotatingLog out = logs.open(RunLogs.STDOUT); RotatingLog err = logs.open(RunLogs.STDERR)) {
+            return execute(mainClass, classesPath, workPath, outputThreads, limits, options, logs, out, err);
+        }
+    }
+
+    private static void compile(final String instrumentedInPath, final String compiledOutPath,
+                                final ThreadFactory outputThreads, final RunLogs logs,
+                                final RotatingLog out, final RotatingLog err)
+            throws IOException, InterruptedException {
+        File compiled = new File(compiledOutPath);
+        if (!compiled.exists() && !compiled.mkdirs()) {
+            throw new IOException("Failed to create compiled output directory: " + compiledOutPath);
+        }
+
+        // Compile
+        List<Path> allJavaFiles;
+        try (Stream<Path> walk = Files.walk(Paths.get(instrumentedInPath))) {
+            allJavaFiles = walk.filter(p -> p.toString().endsWith(".java"))
+                    .map(Path::toAbsolutePath)
+                    .toList();
+        }
+        if (InMemoryCompiler.isAvailable()) {
+            InMemoryCompiler.Result result = InMemoryCompiler.compile(Paths.get(instrumentedInPath), allJavaFiles);
+            for (CompileDiagnostic diagnostic : result.diagnostics()) {
+                err.write((diagnostic + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            }
+            if (!result.succeeded()) {
+                throw new InterruptedException("An error occurred during compilation.\n"
+                        + logs.tail(RunLogs.STDERR, ERROR_TAIL_BYTES).strip());
+            }
+            result.write(compiled.toPath());
+        } else {
+            compileExternally(instrumentedInPath, compiledOutPath, allJavaFiles, outputThreads, logs, out, err);
+        }
+
+        System.out.println("Compilation succeeded with all .java files!");
+    }
+
+    /**
+     * Compiles with an external javac, for JVMs which provide no compiler
+     * themselves. The source files are passed in an argument file, so their
+     * number is not limited by the length of a command line.
+     */
+    private static void compileExternally(final String instrumentedInPath, final String compiledOutPath,
+                                          final List<Path> sources, final ThreadFactory outputThreads,
+                                          final RunLogs logs, final RotatingLog out, final RotatingLog err)
+            throws IOException, InterruptedException {
+        Path argFile = Files.createTempFile("prorunvis-sources", ".txt");
+        try {
+            // quoted, as paths may contain spaces
+            Files.write(argFile, sources.stream()
+                    .map(p -> "\"" + p.toString().replace("\\", "\\\\") + "\"")
+                    .toList(), StandardCharsets.UTF_8);
+            List<String> command = List.of("javac", "-encoding", "UTF-8", "-sourcepath", instrumentedInPath,
+                    "-d", compiledOutPath, "@" + argFile);
+            Process compileProc = new ProcessBuilder(command).start();
+            List<FutureTask<Void>> compileOutput = drain(compileProc, outputThreads, out, err);
+            int compileExit = waitFor(compileProc);
+            join(compileOutput);
+            if (compileExit != 0) {
+                throw new InterruptedException("An error occurred during compilation.\n"
+                        + logs.tail(RunLogs.STDERR, ERROR_TAIL_BYTES).strip());
+            }
+        } finally {
+            Files.deleteIfExists(argFile);
+        }
+    }
+
+    /**
+     * Runs a compiled program within its limits, see
+     * {@link #run(List, String, String, ThreadFactory, RunLimits, RunLogs)}.
+     *
+     * @param mainClass   the fully qualified name of the class to run
+     * @param classesPath the folder of the compiled classes
+     * @param workPath    the working directory of the program, receiving "Trace.tr"
+     * @return how the program ended
+     */
+    private static RunOutcome execute(final String mainClass, final String classesPath, final String workPath,
+                                      final ThreadFactory outputThreads, final RunLimits limits,
+                                      final LaunchOptions options,
+                                      final RunLogs logs, final RotatingLog out, final RotatingLog err)
+            throws IOException, InterruptedException {
         // Run
-        ProcessBuilder runPb = new ProcessBuilder("java", "-cp", compiledOutPath, mainClass);
-        runPb.directory(new File(compiledOutPath));// Run from the instrumented directory
+        List<String> runCommand = new ArrayList<>(List.of(JAVA));
+        runCommand.addAll(options.jvmOptions());
+        if (limits.maxHeapMegabytes() > 0) {
+            runCommand.add("-Xmx" + limits.maxHeapMegabytes() + "m");
+            // terminate right away instead of running on with a broken program,
+            // and report it on stderr to tell it apart from other failures
+            runCommand.add("-XX:+ExitOnOutOfMemoryError");
+            runCommand.add("-XX:+DisplayVMOutputToStderr");
+        }
+        SharedArchive archive = options.usesArchive() && SharedArchive.isSupported()
+                ? SharedArchive.of(Paths.get(classesPath)) : null;
+        String classPath = classesPath;
+        if (archive != null) {
+            runCommand.addAll(archive.jvmOptions());
+            classPath = archive.classPath();
+        }
+        runCommand.addAll(List.of("-cp", classPath, mainClass));
+        ProcessBuilder runPb = new ProcessBuilder(runCommand);
+        runPb.directory(new File(workPath)); // the trace is written to the working directory
         Process runProc = runPb.start();
-        System.out.println("Running: java -cp " + compiledOutPath + " " + mainClass);
-        int runExit = runProc.waitFor();
-        if (runExit != 0) {
-            String runError = new BufferedReader(new InputStreamReader(runProc.getErrorStream()))
-                    .lines().collect(Collectors.joining("\n"));
-            if (!runError.isEmpty()) {
-                System.out.println("There was an error running the input code.\n" + runError);
+        List<FutureTask<Void>> runOutput = drain(runProc, outputThreads, out, err);
+        System.out.println("Running: java -cp " + classPath + " " + mainClass);
+        Path traceFile = Paths.get(workPath, "Trace.tr");
+        RunOutcome outcome = waitFor(runProc, limits, traceFile);
+        join(runOutput);
+        if (archive != null) {
+            archive.finish(outcome);
+        }
+        return finish(outcome, runProc.exitValue(), limits, logs, traceFile);
+    }
+
+    /**
+     * Completes the run of a program once it terminated or was killed: tells
+     * a program that ran out of heap apart from other failures, marks the
+     * trace of a stopped program as truncated, and reports errors.
+     *
+     * @param outcome   how the program ended, as far as known while waiting for it
+     * @param exitValue the exit value of the program
+     * @param limits    the limits of the program
+     * @param logs      the logs holding the output of the program
+     * @param traceFile the trace file written by the program
+     * @return how the program ended
+     * @throws IOException if the logs or the trace file cannot be accessed
+     */
+    static RunOutcome finish(final RunOutcome outcome, final int exitValue, final RunLimits limits,
+                             final RunLogs logs, final Path traceFile) throws IOException {
+        RunOutcome result = outcome;
+        String runError = result == RunOutcome.COMPLETED && exitValue == 0
+                ? "" : logs.tail(RunLogs.STDERR, ERROR_TAIL_BYTES).strip();
+        if (result == RunOutcome.COMPLETED && limits.maxHeapMegabytes() > 0
+                && exitValue == OUT_OF_MEMORY_EXIT
+                && runError.contains("Terminating due to java.lang.OutOfMemoryError")) {
+            result = RunOutcome.HEAP_LIMIT_EXCEEDED;
+        }
+        if (result.isTruncated()) {
+            markTruncated(traceFile, limits.maxTraceBytes());
+            System.out.println("The input code exceeded its limits and was stopped: " + result);
+        } else if (!runError.isEmpty()) {
+            System.out.println("There was an error running the input code.\n" + runError);
+        }
+        return result;
+    }
+
+    /**
+     * Starts pumping the standard and error output of a process into logs,
+     * concurrently, so the process does not block on either full pipe.
+     *
+     * @param process the process to drain
+     * @param threads creates the threads reading the output
+     * @param out     the log receiving the standard output
+     * @param err     the log receiving the error output
+     * @return the tasks pumping the output, done once the process closed its output
+     */
+    private static List<FutureTask<Void>> drain(final Process process, final ThreadFactory threads,
+                                                final OutputStream out, final OutputStream err) {
+        List<FutureTask<Void>> tasks = List.of(pump(process.getInputStream(), out),
+                pump(process.getErrorStream(), err));
+        tasks.forEach(task -> threads.newThread(task).start());
+        return tasks;
+    }
+
+    private static FutureTask<Void> pump(final InputStream in, final OutputStream log) {
+        return new FutureTask<>(() -> {
+            try (in) {
+                in.transferTo(log);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Waits until the output pumped by {@link #drain(Process, ThreadFactory, OutputStream, OutputStream)}
+     * is written to the logs. Output that could not be logged is reported, but does not fail the run.
+     *
+     * @param tasks the tasks pumping the output
+     * @throws InterruptedException if the waiting thread was interrupted
+     */
+    private static void join(final List<FutureTask<Void>> tasks) throws InterruptedException {
+        for (FutureTask<Void> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                System.out.println("Could not log the output: " + e.getCause());
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Waits for the traced program to terminate, killing it once it exceeds
+     * its wall-clock time or its trace file exceeds the maximum size.
+     *
+     * @param process   the traced program
+     * @param limits    the limits of the program
+     * @param traceFile the trace file written by the program
+     * @return how the program ended
+     * @throws InterruptedException if the waiting thread was interrupted, the program is killed then
+     */
+    private static RunOutcome waitFor(final Process process, final RunLimits limits, final Path traceFile)
+            throws InterruptedException {
+        if (limits.timeout() == null && limits.maxTraceBytes() <= 0) {
+            waitFor(process);
+            return RunOutcome.COMPLETED;
+        }
+        return waitFor(process.onExit(), () -> kill(process), limits, traceFile);
+    }
+
+    /**
+     * Waits for a traced program to end, killing it once it exceeds its
+     * wall-clock time or its trace file exceeds the maximum size.
+     *
+     * @param end       completes once the program ended
+     * @param kill      kills the program and waits until it no longer writes its trace
+     * @param limits    the limits of the program
+     * @param traceFile the trace file written by the program
+     * @return how the program ended
+     * @throws InterruptedException if the waiting thread was interrupted, the program is killed then
+     */
+    static RunOutcome waitFor(final CompletableFuture<?> end, final Runnable kill, final RunLimits limits,
+                              final Path traceFile) throws InterruptedException {
+        long deadline = limits.timeout() == null ? Long.MAX_VALUE : System.nanoTime() + limits.timeout().toNanos();
+        while (true) {
+            try {
+                end.get(LIMIT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                return RunOutcome.COMPLETED;
+            } catch (TimeoutException e) {
+                // still running, check the limits
+            } catch (InterruptedException e) {
+                kill.run();
+                throw e;
+            } catch (ExecutionException e) {
+                return RunOutcome.COMPLETED;
+            }
+            if (limits.maxTraceBytes() > 0 && traceFile.toFile().length() > limits.maxTraceBytes()) {
+                kill.run();
+                return RunOutcome.TRACE_LIMIT_EXCEEDED;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                kill.run();
+                return RunOutcome.TIMED_OUT;
+            }
+        }
+    }
+
+    /**
+     * Kills a process and its descendants and waits until it is gone, so it
+     * no longer writes to its trace file.
+     *
+     * @param process the process to kill
+     */
+    static void kill(final Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+        process.onExit().join();
+    }
+
+    /**
+     * Cuts a trace file after its last complete id within the given size and
+     * appends the {@link Scanner#TRUNCATED_MARKER}, so the trace can still be
+     * processed. A missing trace file is created holding only the marker.
+     *
+     * @param traceFile the trace file of a killed program
+     * @param maxBytes  the maximum size of the kept trace, or 0 to keep all of it
+     * @throws IOException if the trace file could not be modified
+     */
+    private static void markTruncated(final Path traceFile, final long maxBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(traceFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = maxBytes > 0 ? Math.min(channel.size(), maxBytes) : channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+            long keep = 0;
+            // search backwards for the end of the last complete line
+            for (long block = end; block > 0 && keep == 0;) {
+                long start = Math.max(0, block - buffer.capacity());
+                buffer.clear().limit((int) (block - start));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, start + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        keep = start + i + 1;
+                        break;
+                    }
+                }
+                block = start;
+            }
+            channel.truncate(keep);
+            channel.write(ByteBuffer.wrap((Scanner.TRUNCATED_MARKER + "\n").getBytes(StandardCharsets.US_ASCII)),
+                    keep);
+        }
+    }
+
+    /**
+     * Waits for a process to terminate. If the waiting thread is interrupted,
+     * e.g. because the job running the program was cancelled, the process is
+     * killed instead of being left running.
+     * <p>
+     * The wait parks on {@link Process#onExit()} rather than blocking in
+     * {@link Process#waitFor()}, which holds a monitor and would pin the
+     * carrier of a virtual thread for the whole run of the program.
+     *
+     * @param process the process to wait for
+     * @return the exit value of the process
+     * @throws InterruptedException if the waiting thread was interrupted
+     */
+    private static int waitFor(final Process process) throws InterruptedException {
+        try {
+            return process.onExit().get().exitValue();
+        } catch (InterruptedException e) {
+            kill(process);
+            throw e;
+        } catch (ExecutionException e) {
+            return process.waitFor();
+        }
+    }
+}
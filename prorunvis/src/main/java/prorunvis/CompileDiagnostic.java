@@ -0,0 +1,47 @@
+package prorunvis;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.util.Locale;
+
+/**
+ * An error, warning or note reported while compiling the instrumented code
+ * with the {@link InMemoryCompiler}.
+ *
+ * @param kind    the kind of the diagnostic, e.g. {@link Diagnostic.Kind#ERROR}
+ * @param source  the path of the source file, or null if the diagnostic concerns no file
+ * @param line    the line of the diagnostic, or {@link Diagnostic#NOPOS}
+ * @param column  the column of the diagnostic, or {@link Diagnostic#NOPOS}
+ * @param message the message of the compiler
+ */
+public record CompileDiagnostic(Diagnostic.Kind kind, String source, long line, long column, String message) {
+
+    /**
+     * @param diagnostic a diagnostic reported by the compiler
+     * @return the diagnostic, independent of the compiler and its file objects
+     */
+    public static CompileDiagnostic of(final Diagnostic<? extends JavaFileObject> diagnostic) {
+        JavaFileObject source = diagnostic.getSource();
+        return new CompileDiagnostic(diagnostic.getKind(), source == null ? null : source.getName(),
+                diagnostic.getLineNumber(), diagnostic.getColumnNumber(), diagnostic.getMessage(Locale.ROOT));
+    }
+
+    /**
+     * @return true if the diagnostic fails the compilation
+     */
+    public boolean isError() {
+        return kind == Diagnostic.Kind.ERROR;
+    }
+
+    /**
+     * @return the diagnostic in the format of javac, e.g. "Main.java:3: error: ';' expected"
+     */
+    @Override
+    public String toString() {
+        String label = kind.name().toLowerCase(Locale.ROOT).replace('_', ' ');
+        if (source == null) {
+            return label + ": " + message;
+        }
+        return source + (line == Diagnostic.NOPOS ? "" : ":" + line) + ": " + label + ": " + message;
+    }
+}
@@ -0,0 +1,149 @@
+package prorunvis;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiles the instrumented code inside the running JVM with the system Java
+ * compiler, instead of starting an external javac for every project. The
+ * compiler is loaded once and shared by all compilations, so it stays warm,
+ * no file paths are passed on a command line, and the class files are kept
+ * in memory until they are written out together.
+ * <p>
+ * Compilations may run concurrently, each one uses its own file manager.
+ */
+public final class InMemoryCompiler {
+
+    /**
+     * The system Java compiler, or null if the JVM is a runtime without one.
+     */
+    private static final JavaCompiler COMPILER = ToolProvider.getSystemJavaCompiler();
+
+    private InMemoryCompiler() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * The outcome of a compilation.
+     *
+     * @param classes     the class files by the binary name of their class, empty if the compilation failed
+     * @param diagnostics the errors, warnings and notes of the compiler
+     */
+    public record Result(Map<String, byte[]> classes, List<CompileDiagnostic> diagnostics) {
+
+        /**
+         * @return true if the sources compiled without errors
+         */
+        public boolean succeeded() {
+            return diagnostics.stream().noneMatch(CompileDiagnostic::isError);
+        }
+
+        /**
+         * Writes all class files into a folder, in the layout of their packages.
+         *
+         * @param classesDir the folder receiving the class files
+         * @throws IOException if a class file cannot be written
+         */
+        public void write(final Path classesDir) throws IOException {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                Path file = classesDir.resolve(entry.getKey().replace('.', '/') + ".class");
+                Files.createDirectories(file.getParent());
+                Files.write(file, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return true if this JVM provides a Java compiler
+     */
+    public static boolean isAvailable() {
+        return COMPILER != null;
+    }
+
+    /**
+     * Compiles source files. Other sources they refer to are looked up in the
+     * source folder, like with "javac -sourcepath"; classes of the running JVM
+     * are not visible to them, only those of the Java platform.
+     *
+     * @param sourceDir the folder of the sources
+     * @param sources   the source files to compile
+     * @return the compiled classes and the diagnostics of the compiler
+     * @throws IOException if the sources cannot be read
+     * @throws IllegalStateException if this JVM provides no Java compiler, see {@link #isAvailable()}
+     */
+    public static Result compile(final Path sourceDir, final List<Path> sources) throws IOException {
+        if (COMPILER == null) {
+            throw new IllegalStateException("This JVM provides no Java compiler.");
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Map<String, byte[]> classes = new TreeMap<>();
+        try (StandardJavaFileManager standard =
+                     COMPILER.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            standard.setLocationFromPaths(StandardLocation.SOURCE_PATH, List.of(sourceDir));
+            standard.setLocationFromPaths(StandardLocation.CLASS_PATH, List.of());
+            ClassCollector fileManager = new ClassCollector(standard, classes);
+            boolean success = COMPILER.getTask(null, fileManager, diagnostics, List.of("-encoding", "UTF-8"),
+                    null, standard.getJavaFileObjectsFromPaths(sources)).call();
+            List<CompileDiagnostic> reported = diagnostics.getDiagnostics().stream()
+                    .map(CompileDiagnostic::of)
+                    .toList();
+            return new Result(success ? classes : Map.of(), reported);
+        }
+    }
+
+    /**
+     * Keeps the class files written by the compiler in a map instead of on disk.
+     */
+    private static final class ClassCollector extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        /**
+         * The class files written so far, by the binary name of their class.
+         */
+        private final Map<String, byte[]> classes;
+
+        ClassCollector(final StandardJavaFileManager fileManager, final Map<String, byte[]> classes) {
+            super(fileManager);
+            this.classes = classes;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(final Location location, final String className,
+                                                   final JavaFileObject.Kind kind, final FileObject sibling)
+                throws IOException {
+            if (kind != JavaFileObject.Kind.CLASS) {
+                return super.getJavaFileForOutput(location, className, kind, sibling);
+            }
+            URI uri = URI.create("memory:///" + className.replace('.', '/') + kind.extension);
+            return new SimpleJavaFileObject(uri, kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return new ByteArrayOutputStream() {
+                        @Override
+                        public void close() {
+                            synchronized (classes) {
+                                classes.put(className, toByteArray());
+                            }
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
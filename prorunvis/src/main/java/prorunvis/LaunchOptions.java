@@ -0,0 +1,40 @@
+package prorunvis;
+
+import java.util.List;
+
+/**
+ * How {@link CompileAndRun} starts the JVM of a traced program which runs in
+ * a process of its own. Traced programs are mostly short, so their runtime is
+ * dominated by the start of the JVM; both options trade peak performance for
+ * a faster start.
+ *
+ * @param classDataSharing true to run the program from an AppCDS archive of its build, see
+ *                         {@link CompileAndRun#runCompiled(String, String, String, java.util.concurrent.ThreadFactory,
+ *                         RunLimits, RunLogs, LaunchOptions)}
+ * @param jvmOptions       further options of the JVM, e.g. "-XX:TieredStopAtLevel=1" or "-Xshare:auto"
+ */
+public record LaunchOptions(boolean classDataSharing, List<String> jvmOptions) {
+
+    /**
+     * The options of the java launcher, without an archive and further options.
+     */
+    public static final LaunchOptions DEFAULT = new LaunchOptions(false, List.of());
+
+    /**
+     * @param classDataSharing true to run the program from an AppCDS archive of its build
+     * @param jvmOptions       further options of the JVM, blank ones are left out
+     */
+    public LaunchOptions {
+        jvmOptions = jvmOptions.stream()
+                .map(String::strip)
+                .filter(option -> !option.isEmpty())
+                .toList();
+    }
+
+    /**
+     * @return true if the program is to run from an archive, and the JVM options allow it
+     */
+    public boolean usesArchive() {
+        return classDataSharing && !jvmOptions.contains("-Xshare:off");
+    }
+}
@@ -0,0 +1,189 @@
+package prorunvis;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Parses the source files of a project on all cores, instead of one after
+ * the other like {@link com.github.javaparser.utils.SourceRoot#tryToParse()}.
+ * <p>
+ * The files are split among the threads of the common {@link ForkJoinPool},
+ * and the calling thread takes part in the parsing. A {@link JavaParser} is not
+ * thread-safe, so every thread parses with a parser of its own, created once
+ * per call. The results are returned in the order of the given files, however
+ * the work was split, so a project parsed again yields the same order and
+ * thereby the same trace ids.
+ * <p>
+ * Nothing of the instrumentation resolves symbols, so by default the files
+ * are parsed without a symbol resolver, which spares setting up a type solver
+ * and attaching it to every compilation unit. Callers which do resolve symbols
+ * pass a configuration with a resolver.
+ */
+public final class ParallelParser {
+
+    private ParallelParser() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Lists the Java source files of a directory in the order they are parsed.
+     *
+     * @param dir the directory of the project
+     * @return the absolute paths of the files, sorted
+     * @throws IOException if the directory cannot be listed
+     */
+    public static List<Path> sourceFiles(final Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir.toAbsolutePath().normalize())) {
+            return walk.filter(file -> file.toString().endsWith(".java") && Files.isRegularFile(file))
+                    .sorted()
+                    .toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Parses all Java source files of a directory without a symbol resolver.
+     * Files which cannot be parsed at all are skipped.
+     *
+     * @param dir the directory of the project
+     * @return the compilation units, ordered by the path of their file
+     * @throws IOException if a file cannot be read
+     */
+    public static List<CompilationUnit> parse(final Path dir) throws IOException {
+        return parse(sourceFiles(dir));
+    }
+
+    /**
+     * Parses files without a symbol resolver. Files which cannot be parsed at
+     * all are skipped.
+     *
+     * @param files the files to parse
+     * @return the compilation units, in the order of their files
+     * @throws IOException if a file cannot be read
+     */
+    public static List<CompilationUnit> parse(final List<Path> files) throws IOException {
+        return parse(files, ParserConfiguration::new, cu -> { }).stream()
+                .map(ParseResult::getResult)
+                .flatMap(Optional::stream)
+                .toList();
+    }
+
+    /**
+     * Parses files in parallel and passes every compilation unit to an action
+     * on the thread which parsed it, so work on a single unit, such as
+     * preprocessing, is done in parallel as well.
+     *
+     * @param files          the files to parse
+     * @param configurations creates the configuration of the parser of every thread
+     * @param action         the action run on every compilation unit after it was parsed
+     * @return the result of every file, in the order of the files
+     * @throws IOException if a file cannot be read
+     */
+    public static List<ParseResult<CompilationUnit>> parse(final List<Path> files,
+                                                           final Supplier<ParserConfiguration> configurations,
+                                                           final Consumer<CompilationUnit> action)
+            throws IOException {
+        AtomicReferenceArray<ParseResult<CompilationUnit>> results = new AtomicReferenceArray<>(files.size());
+        ThreadLocal<JavaParser> parsers = ThreadLocal.withInitial(() -> new JavaParser(configurations.get()));
+        try {
+            ForkJoinPool.commonPool().invoke(new ParseTask(files, results, parsers, action, 0, files.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        List<ParseResult<CompilationUnit>> ordered = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            ordered.add(results.get(i));
+        }
+        return ordered;
+    }
+
+    /**
+     * Parses a range of the files, splitting it until a single file is left.
+     * Fork-join tasks are serializable, but a task is never serialized, so
+     * its state is transient.
+     */
+    private static final class ParseTask extends RecursiveAction {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * All files to parse.
+         */
+        private final transient List<Path> files;
+
+        /**
+         * Receives the result of every file at the index of the file.
+         */
+        private final transient AtomicReferenceArray<ParseResult<CompilationUnit>> results;
+
+        /**
+         * The parser of every thread.
+         */
+        private final transient ThreadLocal<JavaParser> parsers;
+
+        /**
+         * Run on every compilation unit after it was parsed.
+         */
+        private final transient Consumer<CompilationUnit> action;
+
+        /**
+         * The first file of the range.
+         */
+        private final int from;
+
+        /**
+         * The end of the range, exclusive.
+         */
+        private final int to;
+
+        ParseTask(final List<Path> files, final AtomicReferenceArray<ParseResult<CompilationUnit>> results,
+                  final ThreadLocal<JavaParser> parsers, final Consumer<CompilationUnit> action,
+                  final int from, final int to) {
+            this.files = files;
+            this.results = results;
+            this.parsers = parsers;
+            this.action = action;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseTask(files, results, parsers, action, from, middle),
+                        new ParseTask(files, results, parsers, action, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                ParseResult<CompilationUnit> result;
+                try {
+                    result = parsers.get().parse(files.get(i));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot read " + files.get(i), e);
+                }
+                result.getResult().ifPresent(action);
+                results.set(i, result);
+            }
+        }
+    }
+}
@@ -1,24 +1,22 @@
 package prorunvis;
 
-import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Node;
-import com.github.javaparser.symbolsolver.JavaSymbolSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
-import com.github.javaparser.symbolsolver.utils.SymbolSolverCollectionStrategy;
-import com.github.javaparser.utils.ProjectRoot;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import org.apache.commons.cli.*;
 import prorunvis.instrument.Instrumenter;
+import prorunvis.output.SchemaVersion;
+import prorunvis.output.TraceJsonWriter;
 import prorunvis.preprocess.Preprocessor;
+import prorunvis.trace.TraceNodeTable;
 import prorunvis.trace.process.TraceProcessor;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
 
 public final class ProRunVis {
@@ -34,6 +32,12 @@ public final class ProRunVis {
     public static void main(final String[] args) {
 
         boolean instrumentOnly = false;
+        boolean prettyPrint = true;
+        boolean gzip = false;
+        SchemaVersion schema = SchemaVersion.V1;
+        Duration timeout = null;
+        int maxHeap = 0;
+        long maxTraceSize = 0;
         String inputPath;
         String outputPath = "resources/out";
 
@@ -52,6 +56,40 @@ public final class ProRunVis {
                 .argName("output_directory")
                 .desc("Output file path")
                 .build());
+        options.addOption(Option.builder("f")
+                .longOpt("format")
+                .hasArg()
+                .argName("pretty|compact")
+                .desc("Format of the JSON trace, defaults to pretty")
+                .build());
+        options.addOption(Option.builder("s")
+                .longOpt("schema")
+                .hasArg()
+                .argName("1|2|3")
+                .desc("Schema version of the JSON trace, defaults to 1")
+                .build());
+        options.addOption(Option.builder("z")
+                .longOpt("gzip")
+                .desc("If the JSON trace should be gzip compressed")
+                .build());
+        options.addOption(Option.builder("t")
+                .longOpt("timeout")
+                .hasArg()
+                .argName("seconds")
+                .desc("Stops the traced program after the given time, by default it runs until it terminates")
+                .build());
+        options.addOption(Option.builder("m")
+                .longOpt("max-heap")
+                .hasArg()
+                .argName("megabytes")
+                .desc("Maximum heap of the traced program, defaults to the JVM default")
+                .build());
+        options.addOption(Option.builder("l")
+                .longOpt("max-trace-size")
+                .hasArg()
+                .argName("bytes")
+                .desc("Stops the traced program once its trace exceeds the given size")
+                .build());
 
         CommandLineParser commandLineParser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
@@ -74,6 +112,37 @@ public final class ProRunVis {
             if (cmd.hasOption("i")) {
                 instrumentOnly = true;
             }
+            if (cmd.hasOption("f")) {
+                String format = cmd.getOptionValue("f");
+                if (format.equals("compact")) {
+                    prettyPrint = false;
+                } else if (!format.equals("pretty")) {
+                    throw new ParseException(format + " is not a valid output format.");
+                }
+            }
+            if (cmd.hasOption("s")) {
+                try {
+                    schema = SchemaVersion.of(Integer.parseInt(cmd.getOptionValue("s")));
+                } catch (IllegalArgumentException e) {
+                    throw new ParseException(cmd.getOptionValue("s") + " is not a valid schema version.");
+                }
+            }
+            if (cmd.hasOption("z")) {
+                gzip = true;
+            }
+            try {
+                if (cmd.hasOption("t")) {
+                    timeout = Duration.ofSeconds(Long.parseLong(cmd.getOptionValue("t")));
+                }
+                if (cmd.hasOption("m")) {
+                    maxHeap = Integer.parseInt(cmd.getOptionValue("m"));
+                }
+                if (cmd.hasOption("l")) {
+                    maxTraceSize = Long.parseLong(cmd.getOptionValue("l"));
+                }
+            } catch (NumberFormatException e) {
+                throw new ParseException(e.getMessage() + " is not a valid limit.");
+            }
             if (!Paths.get(inputPath).toFile().exists()
                     || !Paths.get(inputPath).toFile().isDirectory()) {
                 throw new ParseException(inputPath + " is not an existing directory.");
@@ -90,42 +159,38 @@ public final class ProRunVis {
             return;
         }
 
-        StaticJavaParser.getParserConfiguration().setSymbolResolver(new JavaSymbolSolver(new CombinedTypeSolver()));
-        ProjectRoot projectRoot = new SymbolSolverCollectionStrategy()
-                .collect(Paths.get(inputPath).toAbsolutePath());
-
         File traceFile = new File(outputPath + "/Trace.tr");
 
+        // parse and preprocess on all cores, in the order of the file paths
         List<CompilationUnit> cus = new ArrayList<>();
-        projectRoot.getSourceRoots().forEach(sr -> {
-            try {
-                sr.tryToParse().forEach(cu -> cus.add(cu.getResult().orElseThrow()));
-            } catch (IOException | NoSuchElementException e) {
-                throw new RuntimeException("Error parsing compilation units: " + e.getMessage(), e);
+        try {
+            for (ParseResult<CompilationUnit> result : ParallelParser.parse(
+                    ParallelParser.sourceFiles(Paths.get(inputPath)), ParserConfiguration::new, Preprocessor::run)) {
+                cus.add(result.getResult().orElseThrow());
             }
-        });
+        } catch (IOException | NoSuchElementException e) {
+            throw new RuntimeException("Error parsing compilation units: " + e.getMessage(), e);
+        }
 
         Map<Integer, Node> map = new HashMap<>();
         Instrumenter.setupTrace(traceFile);
-        cus.forEach(cu -> {
-            Preprocessor.run(cu);
-            Instrumenter.run(cu, map);
-        });
-        Instrumenter.saveInstrumented(projectRoot, outputPath + "/instrumented");
+        cus.forEach(cu -> Instrumenter.run(cu, map));
+        Instrumenter.saveInstrumented(cus, outputPath + "/instrumented");
 
         // If not instrument-only, compile, run and process trace
         if (!instrumentOnly) {
             try {
-                CompileAndRun.run(cus, outputPath + "/instrumented", outputPath + "/compiled");
+                CompileAndRun.run(cus, outputPath + "/instrumented", outputPath + "/compiled",
+                        Thread::new, new RunLimits(timeout, maxHeap, maxTraceSize),
+                        RunLogs.in(Paths.get(outputPath, "logs")));
                 TraceProcessor processor = new TraceProcessor(map, traceFile.getPath(), Paths.get(inputPath));
                 processor.start();
 
-                //save json trace to file
-                File jsonTrace = new File(outputPath + "/Trace.json");
-                try (BufferedWriter writer = new BufferedWriter(new FileWriter(jsonTrace))) {
-                    Gson gson = new GsonBuilder().setPrettyPrinting().create();
-                    writer.write(gson.toJson(processor.getNodeList()));
-                }
+                //compact the nodes and stream json trace to file
+                TraceNodeTable table = processor.getNodeTable();
+                Path jsonTrace = Paths.get(outputPath, gzip ? "Trace.json.gz" : "Trace.json");
+                new TraceJsonWriter(prettyPrint, schema, processor.getRangeDictionary())
+                        .write(table.asList(), jsonTrace, gzip);
             } catch (IOException | InterruptedException e) {
                 System.err.println("Error during run or process: " + e.getMessage());
             }
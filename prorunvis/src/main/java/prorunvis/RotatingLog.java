@@ -0,0 +1,158 @@
+package prorunvis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A log file of limited size. Once the file reaches its maximum size, it is
+ * renamed to "&lt;name&gt;.1", older files are shifted to "&lt;name&gt;.2" and so on,
+ * and the oldest one is deleted, so the output of a chatty program never takes
+ * more than the maximum size times the number of files on disk.
+ * <p>
+ * Writes go to the file without buffering, so {@link #tail(Path, int)} sees
+ * all output written so far while the log is still open.
+ */
+public final class RotatingLog extends OutputStream {
+
+    /**
+     * The current log file.
+     */
+    private final Path file;
+
+    /**
+     * The maximum size of a single file in bytes.
+     */
+    private final long maxFileBytes;
+
+    /**
+     * The number of files kept, including the current one.
+     */
+    private final int maxFiles;
+
+    /**
+     * The stream writing to the current file.
+     */
+    private OutputStream out;
+
+    /**
+     * The number of bytes written to the current file.
+     */
+    private long size;
+
+    /**
+     * Creates a new, empty log, replacing the files of an earlier log of the same name.
+     *
+     * @param file         the log file
+     * @param maxFileBytes the maximum size of a single file in bytes
+     * @param maxFiles     the number of files kept, including the current one
+     * @throws IOException if the log file could not be created
+     */
+    public RotatingLog(final Path file, final long maxFileBytes, final int maxFiles) throws IOException {
+        if (maxFileBytes <= 0 || maxFiles <= 0) {
+            throw new IllegalArgumentException("A log needs a positive size and number of files.");
+        }
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        for (int i = 1; Files.deleteIfExists(rotated(file, i)); i++) {
+            // drop all files of the earlier log
+        }
+        this.out = Files.newOutputStream(file);
+    }
+
+    @Override
+    public synchronized void write(final int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(final byte[] b, final int off, final int len) throws IOException {
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            if (size >= maxFileBytes) {
+                rotate();
+            }
+            int n = (int) Math.min(remaining, maxFileBytes - size);
+            out.write(b, offset, n);
+            size += n;
+            offset += n;
+            remaining -= n;
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Starts a new current file, shifting the older ones.
+     */
+    private void rotate() throws IOException {
+        out.close();
+        Files.deleteIfExists(rotated(file, maxFiles - 1));
+        for (int i = maxFiles - 2; i >= 0; i--) {
+            Path source = rotated(file, i);
+            if (Files.exists(source)) {
+                Files.move(source, rotated(file, i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        out = Files.newOutputStream(file);
+        size = 0;
+    }
+
+    /**
+     * Reads the end of a log, continuing into the rotated files if the current
+     * one is shorter than requested. A missing log reads as empty.
+     *
+     * @param file     the log file
+     * @param maxBytes the maximum number of bytes to read
+     * @return the last bytes of the log, decoded as UTF-8
+     * @throws IOException if the log could not be read
+     */
+    public static String tail(final Path file, final int maxBytes) throws IOException {
+        Deque<byte[]> parts = new ArrayDeque<>();
+        int remaining = maxBytes;
+        for (int i = 0; remaining > 0; i++) {
+            byte[] part;
+            try (RandomAccessFile in = new RandomAccessFile(rotated(file, i).toFile(), "r")) {
+                long length = in.length();
+                part = new byte[(int) Math.min(remaining, length)];
+                in.seek(length - part.length);
+                in.readFully(part);
+            } catch (FileNotFoundException e) {
+                // no older output, or the file was rotated away while reading
+                break;
+            }
+            parts.addFirst(part);
+            remaining -= part.length;
+        }
+        ByteArrayOutputStream tail = new ByteArrayOutputStream(maxBytes - remaining);
+        parts.forEach(tail::writeBytes);
+        return tail.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param file  the current log file
+     * @param index the age of a file, 0 for the current one
+     * @return the path of the file of the given age
+     */
+    private static Path rotated(final Path file, final int index) {
+        return index == 0 ? file : file.resolveSibling(file.getFileName() + "." + index);
+    }
+}
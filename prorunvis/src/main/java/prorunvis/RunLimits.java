@@ -0,0 +1,28 @@
+package prorunvis;
+
+import java.time.Duration;
+
+/**
+ * The limits enforced on a traced program by {@link CompileAndRun}.
+ * A program exceeding its wall-clock time or trace size is killed, one
+ * exceeding its heap terminates itself; in all cases the trace written so far
+ * is kept and marked as truncated, see {@link prorunvis.trace.process.Scanner#TRUNCATED_MARKER}.
+ *
+ * @param timeout          the maximum wall-clock time of the program, or null for no limit
+ * @param maxHeapMegabytes the maximum heap of the program's JVM (-Xmx) in megabytes, or 0 for the JVM default
+ * @param maxTraceBytes    the maximum size of the trace file in bytes, or 0 for no limit
+ */
+public record RunLimits(Duration timeout, int maxHeapMegabytes, long maxTraceBytes) {
+
+    /**
+     * No limits, the program runs until it terminates.
+     */
+    public static final RunLimits NONE = new RunLimits(null, 0, 0);
+
+    /**
+     * @return true if any limit is set.
+     */
+    public boolean isLimited() {
+        return timeout != null || maxHeapMegabytes > 0 || maxTraceBytes > 0;
+    }
+}
@@ -0,0 +1,67 @@
+package prorunvis;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Where {@link CompileAndRun} writes the output of the compiler and the traced
+ * program. Standard output and error output go to separate {@link RotatingLog}s,
+ * so their size on disk is bounded however much a program prints.
+ *
+ * @param directory    the folder holding the log files
+ * @param maxFileBytes the maximum size of a single log file in bytes
+ * @param maxFiles     the number of files kept per log, including the current one
+ */
+public record RunLogs(Path directory, long maxFileBytes, int maxFiles) {
+
+    /**
+     * The name of the log holding the standard output.
+     */
+    public static final String STDOUT = "stdout.log";
+
+    /**
+     * The name of the log holding the error output.
+     */
+    public static final String STDERR = "stderr.log";
+
+    /**
+     * The default maximum size of a single log file, 1 MiB.
+     */
+    public static final long DEFAULT_MAX_FILE_BYTES = 1L << 20;
+
+    /**
+     * The default number of files kept per log.
+     */
+    public static final int DEFAULT_MAX_FILES = 3;
+
+    /**
+     * @param directory the folder holding the log files
+     * @return logs in the given folder with the default size limits
+     */
+    public static RunLogs in(final Path directory) {
+        return new RunLogs(directory, DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_FILES);
+    }
+
+    /**
+     * Creates a new, empty log in the log folder.
+     *
+     * @param name the name of the log, {@link #STDOUT} or {@link #STDERR}
+     * @return the log, to be closed by the caller
+     * @throws IOException if the log could not be created
+     */
+    public RotatingLog open(final String name) throws IOException {
+        Files.createDirectories(directory);
+        return new RotatingLog(directory.resolve(name), maxFileBytes, maxFiles);
+    }
+
+    /**
+     * @param name     the name of the log, {@link #STDOUT} or {@link #STDERR}
+     * @param maxBytes the maximum number of bytes to read
+     * @return the end of the log, empty if nothing was logged
+     * @throws IOException if the log could not be read
+     */
+    public String tail(final String name, final int maxBytes) throws IOException {
+        return RotatingLog.tail(directory.resolve(name), maxBytes);
+    }
+}
@@ -0,0 +1,34 @@
+package prorunvis;
+
+/**
+ * How a program run by {@link CompileAndRun} ended.
+ */
+public enum RunOutcome {
+
+    /**
+     * The program terminated by itself, successfully or not.
+     */
+    COMPLETED,
+
+    /**
+     * The program was killed after exceeding {@link RunLimits#timeout()}.
+     */
+    TIMED_OUT,
+
+    /**
+     * The program ran out of the heap allowed by {@link RunLimits#maxHeapMegabytes()}.
+     */
+    HEAP_LIMIT_EXCEEDED,
+
+    /**
+     * The program was killed after its trace exceeded {@link RunLimits#maxTraceBytes()}.
+     */
+    TRACE_LIMIT_EXCEEDED;
+
+    /**
+     * @return true if the trace of the run was cut off.
+     */
+    public boolean isTruncated() {
+        return this != COMPLETED;
+    }
+}
@@ -0,0 +1,485 @@
+package prorunvis;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.stream.Stream;
+
+/**
+ * A pool of running worker JVMs which run compiled programs, instead of
+ * starting a new JVM for every program like
+ * {@link CompileAndRun#runCompiled(String, String, String, ThreadFactory, RunLimits, RunLogs)}.
+ * Short programs spend most of their time starting the JVM, so running them
+ * in a warm worker multiplies the number of programs run in a given time.
+ * <p>
+ * Every program is loaded by a class loader of its own and gets its own
+ * output and trace file, see {@link RunnerWorker}. The limits are enforced
+ * like for a program in its own JVM: a worker running a program that exceeds
+ * them is killed. A worker is also replaced after a number of programs, or
+ * once a program leaves threads running, changes the standard streams, the
+ * default locale or time zone, or leaves files in the working directory of the
+ * worker, so no program sees what an earlier one left behind. Every worker has
+ * an empty working directory of its own, which is deleted with the worker.
+ * The pool keeps its idle workers started ahead of time.
+ * <p>
+ * All workers run with the same heap, so only programs limited to this heap
+ * are run by the pool.
+ */
+public final class RunnerPool implements AutoCloseable {
+
+    /**
+     * The number of idle workers kept, or 0 if the pool is disabled.
+     */
+    private final int size;
+
+    /**
+     * The number of programs a worker runs before it is replaced.
+     */
+    private final int maxJobsPerWorker;
+
+    /**
+     * The heap of every worker (-Xmx) in megabytes, or 0 for the JVM default.
+     */
+    private final int maxHeapMegabytes;
+
+    /**
+     * Creates the threads reading the output of the workers.
+     */
+    private final ThreadFactory threads;
+
+    /**
+     * The folder holding the class files of the {@link RunnerWorker}, and the working directories of the workers.
+     */
+    private final Path dir;
+
+    /**
+     * The workers waiting for a program.
+     */
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+
+    /**
+     * Whether the pool was closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates a pool and starts its workers.
+     *
+     * @param size             the number of idle workers kept, or 0 to disable the pool
+     * @param maxJobsPerWorker the number of programs a worker runs before it is replaced
+     * @param maxHeapMegabytes the heap of every worker (-Xmx) in megabytes, or 0 for the JVM default
+     * @param threads          creates the threads reading the output of the workers, one per stream
+     * @throws IOException if the class files of the worker cannot be provided
+     */
+    public RunnerPool(final int size, final int maxJobsPerWorker, final int maxHeapMegabytes,
+                      final ThreadFactory threads) throws IOException {
+        if (maxJobsPerWorker <= 0) {
+            throw new IllegalArgumentException("A worker has to run at least one program.");
+        }
+        this.size = Math.max(size, 0);
+        this.maxJobsPerWorker = maxJobsPerWorker;
+        this.maxHeapMegabytes = maxHeapMegabytes;
+        this.threads = threads;
+        if (this.size == 0) {
+            this.dir = null;
+            return;
+        }
+        this.dir = Files.createTempDirectory("prorunvis-runner");
+        copyWorkerClasses(dir.resolve("classes"));
+        for (int i = 0; i < this.size; i++) {
+            idle.add(new Worker());
+        }
+    }
+
+    /**
+     * Tells whether a compiled program can be run by this pool. Programs
+     * instrumented before the trace file could be chosen always write it to
+     * the working directory of their JVM, so they are run in a JVM of their own.
+     *
+     * @param classesDir the folder of the compiled classes of the program
+     * @param limits     the limits of the program
+     * @return true if the pool is enabled, the program is limited to the heap
+     *         of the workers and its trace class writes to the given trace file
+     */
+    public boolean canRun(final Path classesDir, final RunLimits limits) {
+        if (size == 0 || closed || limits.maxHeapMegabytes() != maxHeapMegabytes) {
+            return false;
+        }
+        try {
+            byte[] trace = Files.readAllBytes(classesDir.resolve("prorunvis").resolve("Trace.class"));
+            // the property name is a constant in the class file
+            return new String(trace, StandardCharsets.ISO_8859_1).contains(RunnerWorker.TRACE_FILE_PROPERTY);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs the main class of a compiled program in a worker, within the given
+     * limits, like {@link CompileAndRun#runCompiled(String, String, String, ThreadFactory, RunLimits, RunLogs)}.
+     * The program reads no input.
+     *
+     * @param mainClass  the fully qualified name of the class to run
+     * @param classesDir the folder of the compiled classes, which is only read
+     * @param workDir    the folder receiving "Trace.tr"
+     * @param limits     the limits of the program run, see {@link #canRun(Path, RunLimits)}
+     * @param logs       the logs receiving the output of the program
+     * @return how the program ended
+     * @throws IOException          if the program cannot be passed to a worker
+     * @throws InterruptedException if the waiting thread was interrupted, the worker is killed then
+     */
+    public RunOutcome run(final String mainClass, final Path classesDir, final Path workDir,
+                          final RunLimits limits, final RunLogs logs) throws IOException, InterruptedException {
+        if (!canRun(classesDir, limits)) {
+            throw new IllegalArgumentException("The program cannot be run by this pool.");
+        }
+        Files.createDirectories(workDir);
+        Path traceFile = workDir.resolve("Trace.tr").toAbsolutePath();
+        String job = String.join("\t", classesDir.toAbsolutePath().toString(), mainClass, traceFile.toString());
+        if (job.contains("\n") || job.chars().filter(c -> c == '\t').count() != 2) {
+            throw new IllegalArgumentException("Paths and class names must not contain tabs or line breaks.");
+        }
+
+        Worker worker = acquire();
+        boolean reusable = false;
+        try (RotatingLog out = logs.open(RunLogs.STDOUT); RotatingLog err = logs.open(RunLogs.STDERR)) {
+            CompletableFuture<JobEnd> end = worker.start(job, out, err);
+            System.out.println("Running in a pooled JVM: " + mainClass);
+            RunOutcome outcome = CompileAndRun.waitFor(end, worker::kill, limits, traceFile);
+            JobEnd result = end.join();
+            worker.detach();
+            reusable = outcome == RunOutcome.COMPLETED && !result.leaked() && !result.changedState()
+                    && worker.isAlive() && worker.hasCleanWorkDir() && worker.jobs < maxJobsPerWorker;
+            return CompileAndRun.finish(outcome, result.exitValue(), limits, logs, traceFile);
+        } finally {
+            release(worker, reusable);
+        }
+    }
+
+    /**
+     * Stops all idle workers and deletes the class files of the worker.
+     * Workers still running a program are stopped once it ended.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Worker worker = idle.poll(); worker != null; worker = idle.poll()) {
+            worker.kill();
+        }
+        if (dir != null) {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Deletes a folder, which the pool and a worker being killed may do at the same time.
+     */
+    private static void delete(final Path folder) {
+        try (Stream<Path> walk = Files.walk(folder)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (NoSuchFileException e) {
+            // deleted already
+        } catch (UncheckedIOException e) {
+            if (!(e.getCause() instanceof NoSuchFileException)) {
+                System.out.println("Could not delete " + folder + ": " + e.getMessage());
+            }
+        } catch (IOException e) {
+            System.out.println("Could not delete " + folder + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Takes an idle worker, or starts a new one if all are busy.
+     */
+    private Worker acquire() throws IOException {
+        for (Worker worker = idle.poll(); worker != null; worker = idle.poll()) {
+            if (worker.isAlive()) {
+                return worker;
+            }
+            worker.kill();
+        }
+        return new Worker();
+    }
+
+    /**
+     * Returns a worker to the pool, or replaces it with a new one.
+     */
+    private void release(final Worker worker, final boolean reusable) {
+        if (reusable && !closed && idle.size() < size) {
+            idle.add(worker);
+            return;
+        }
+        worker.kill();
+        if (!closed && idle.size() < size) {
+            // start the replacement now, so the next program finds it warm
+            threads.newThread(this::addWorker).start();
+        }
+    }
+
+    private void addWorker() {
+        try {
+            Worker worker = new Worker();
+            idle.add(worker);
+            if (closed && idle.remove(worker)) {
+                worker.kill();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.out.println("Could not start a runner JVM: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Provides the class files of the worker in a folder, as the classes of
+     * this library may be packed in a way the java launcher cannot read.
+     */
+    private static void copyWorkerClasses(final Path classesDir) throws IOException {
+        List<Class<?>> classes = new ArrayList<>(List.of(RunnerWorker.class.getDeclaredClasses()));
+        classes.add(RunnerWorker.class);
+        for (Class<?> type : classes) {
+            String name = type.getName().replace('.', '/') + ".class";
+            Path file = classesDir.resolve(name);
+            Files.createDirectories(file.getParent());
+            try (InputStream in = RunnerWorker.class.getClassLoader().getResourceAsStream(name)) {
+                if (in == null) {
+                    throw new IOException("Missing class file " + name);
+                }
+                Files.copy(in, file);
+            }
+        }
+    }
+
+    /**
+     * How a program run by a worker ended.
+     *
+     * @param exitValue    the exit value of the program
+     * @param leaked       true if the program left threads running, or the worker ended with it
+     * @param changedState true if the program changed the global state of the worker, or the worker ended with it
+     */
+    private record JobEnd(int exitValue, boolean leaked, boolean changedState) {
+    }
+
+    /**
+     * A running worker JVM and the threads reading its output.
+     */
+    private final class Worker {
+
+        /**
+         * The worker JVM.
+         */
+        private final Process process;
+
+        /**
+         * The working directory of the worker, empty until a program writes to a relative path.
+         */
+        private final Path workDir;
+
+        /**
+         * Receives the jobs of the worker.
+         */
+        private final Writer commands;
+
+        /**
+         * Forwards the standard output of the current program.
+         */
+        private final Sink out = new Sink();
+
+        /**
+         * Forwards the error output of the current program and of the JVM.
+         */
+        private final Sink err = new Sink();
+
+        /**
+         * Pumps the output the JVM writes to its error stream itself, e.g. when it runs out of heap.
+         */
+        private final FutureTask<Void> errorPump;
+
+        /**
+         * Completes once the current program ended.
+         */
+        private volatile CompletableFuture<JobEnd> end;
+
+        /**
+         * The number of programs the worker started.
+         */
+        private int jobs;
+
+        /**
+         * How the worker ended, or null while it is running.
+         */
+        private volatile JobEnd exit;
+
+        Worker() throws IOException {
+            List<String> command = new ArrayList<>(List.of(CompileAndRun.JAVA));
+            if (maxHeapMegabytes > 0) {
+                command.add("-Xmx" + maxHeapMegabytes + "m");
+                command.add("-XX:+ExitOnOutOfMemoryError");
+                command.add("-XX:+DisplayVMOutputToStderr");
+            }
+            command.addAll(List.of("-cp", dir.resolve("classes").toString(), RunnerWorker.class.getName()));
+            ProcessBuilder builder = new ProcessBuilder(command);
+            // programs writing to relative paths write here instead of the working directory of the server
+            this.workDir = Files.createTempDirectory(dir, "work-");
+            builder.directory(workDir.toFile());
+            try {
+                this.process = builder.start();
+            } catch (IOException e) {
+                delete(workDir);
+                throw e;
+            }
+            this.commands = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            this.errorPump = new FutureTask<>(() -> {
+                try (InputStream in = process.getErrorStream()) {
+                    in.transferTo(err);
+                }
+                return null;
+            });
+            threads.newThread(errorPump).start();
+            threads.newThread(this::readFrames).start();
+        }
+
+        /**
+         * Passes a program to the worker, forwarding its output to the given logs.
+         *
+         * @return completes once the program ended
+         */
+        CompletableFuture<JobEnd> start(final String job, final OutputStream programOut,
+                                        final OutputStream programErr) throws IOException {
+            CompletableFuture<JobEnd> programEnd = new CompletableFuture<>();
+            out.target = programOut;
+            err.target = programErr;
+            end = programEnd;
+            jobs++;
+            if (exit != null) {
+                // the worker ended while it was idle
+                programEnd.complete(exit);
+                return programEnd;
+            }
+            commands.write(job + "\n");
+            commands.flush();
+            return programEnd;
+        }
+
+        /**
+         * Stops forwarding output to the logs of the last program.
+         */
+        void detach() {
+            out.target = null;
+            err.target = null;
+        }
+
+        boolean isAlive() {
+            return process.isAlive();
+        }
+
+        /**
+         * @return true if no program left files in the working directory of the worker
+         */
+        boolean hasCleanWorkDir() {
+            try (Stream<Path> files = Files.list(workDir)) {
+                return files.findAny().isEmpty();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Kills the worker and deletes its working directory.
+         */
+        void kill() {
+            CompileAndRun.kill(process);
+            delete(workDir);
+        }
+
+        /**
+         * Forwards the frames of the worker until its output is closed, then
+         * ends the current program with the exit value of the worker.
+         */
+        private void readFrames() {
+            try (DataInputStream in = new DataInputStream(process.getInputStream())) {
+                while (true) {
+                    int type = in.read();
+                    if (type == RunnerWorker.OUT || type == RunnerWorker.ERR) {
+                        byte[] bytes = in.readNBytes(in.readInt());
+                        (type == RunnerWorker.OUT ? out : err).write(bytes, 0, bytes.length);
+                    } else if (type == RunnerWorker.EXIT) {
+                        int exitValue = in.readInt();
+                        boolean leaked = in.readBoolean();
+                        boolean changedState = in.readBoolean();
+                        complete(new JobEnd(exitValue, leaked, changedState));
+                    } else if (type != RunnerWorker.READY) {
+                        break;
+                    }
+                }
+            } catch (EOFException e) {
+                // the worker ended within a frame
+            } catch (IOException e) {
+                System.out.println("Lost the output of a runner JVM: " + e.getMessage());
+            }
+            // a program calling System.exit ends the worker, its exit value is the one of the program
+            int exitValue = process.onExit().join().exitValue();
+            try {
+                errorPump.get();
+            } catch (Exception e) {
+                // the output of the JVM is incomplete, which only affects the logs
+            }
+            exit = new JobEnd(exitValue, true, true);
+            complete(exit);
+        }
+
+        private void complete(final JobEnd jobEnd) {
+            CompletableFuture<JobEnd> current = end;
+            if (current != null) {
+                current.complete(jobEnd);
+            }
+        }
+    }
+
+    /**
+     * Forwards output to the log of the current program, dropping output
+     * written while no program runs or after its log was closed.
+     */
+    private static final class Sink extends OutputStream {
+
+        /**
+         * The log of the current program, or null.
+         */
+        private volatile OutputStream target;
+
+        @Override
+        public void write(final int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            OutputStream current = target;
+            if (current == null) {
+                return;
+            }
+            try {
+                current.write(b, off, len);
+            } catch (IOException e) {
+                // the log was closed, the program is over
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package prorunvis;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TimeZone;
+
+/**
+ * The main class of the worker JVMs of a {@link RunnerPool}. A worker runs
+ * one traced program after the other, each in a class loader of its own, so
+ * the programs do not pay for starting a JVM.
+ * <p>
+ * The worker reads one job per line from its standard input: the folder of
+ * the compiled classes, the main class and the trace file, separated by tabs.
+ * Its standard output carries frames: a type byte, followed by the length
+ * and bytes of output of the program for {@link #OUT} and {@link #ERR}, by
+ * the exit value, whether the program left threads running and whether it
+ * changed the global state of the JVM for {@link #EXIT}, and by nothing for
+ * {@link #READY}.
+ * <p>
+ * Besides system properties, the global state comprises the standard streams,
+ * the default locale and the default time zone. They are restored after every
+ * program, and a program changing them is reported, so the pool retires the
+ * worker rather than trust the restored state.
+ * <p>
+ * The worker runs on a class path holding nothing but its own class files,
+ * so it only uses classes of the Java platform.
+ */
+public final class RunnerWorker {
+
+    /**
+     * The system property naming the trace file of the traced program, see
+     * {@link prorunvis.instrument.Instrumenter#saveTraceClass(java.io.File)}.
+     */
+    public static final String TRACE_FILE_PROPERTY = "prorunvis.trace.file";
+
+    /**
+     * The frame sent once the worker is ready to run programs.
+     */
+    static final int READY = 'R';
+
+    /**
+     * The frame carrying standard output of a program.
+     */
+    static final int OUT = 'O';
+
+    /**
+     * The frame carrying error output of a program.
+     */
+    static final int ERR = 'E';
+
+    /**
+     * The frame sent once a program ended.
+     */
+    static final int EXIT = 'X';
+
+    /**
+     * The exit value of a program whose main method threw, as with the java launcher.
+     */
+    private static final int UNCAUGHT_EXIT = 1;
+
+    private RunnerWorker() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Runs the programs read from the standard input until it is closed.
+     *
+     * @param args unused
+     * @throws IOException if the frames cannot be written
+     */
+    public static void main(final String[] args) throws IOException {
+        DataOutputStream frames = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        BufferedReader jobs = new BufferedReader(
+                new InputStreamReader(new FileInputStream(FileDescriptor.in), StandardCharsets.UTF_8));
+        // the programs get no input, and their output is framed
+        System.setIn(InputStream.nullInputStream());
+        System.setOut(new PrintStream(new FrameStream(frames, OUT), true));
+        System.setErr(new PrintStream(new FrameStream(frames, ERR), true));
+        synchronized (frames) {
+            frames.write(READY);
+            frames.flush();
+        }
+
+        for (String job = jobs.readLine(); job != null; job = jobs.readLine()) {
+            String[] fields = job.split("\t", -1);
+            GlobalState state = GlobalState.capture();
+            JobEnd end = run(fields[0], fields[1], fields[2]);
+            boolean changed = state.restore();
+            System.out.flush();
+            System.err.flush();
+            synchronized (frames) {
+                frames.write(EXIT);
+                frames.writeInt(end.exitValue());
+                frames.writeBoolean(end.leaked());
+                frames.writeBoolean(changed);
+                frames.flush();
+            }
+        }
+    }
+
+    /**
+     * Runs the main method of a program in a new class loader and waits, like
+     * the JVM, until all its non-daemon threads ended. System properties
+     * changed by the program are restored.
+     */
+    private static JobEnd run(final String classesDir, final String mainClass, final String traceFile) {
+        Properties properties = (Properties) System.getProperties().clone();
+        System.setProperty(TRACE_FILE_PROPERTY, traceFile);
+        ThreadGroup group = new ThreadGroup("program");
+        int[] exitValue = {0};
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {Paths.get(classesDir).toUri().toURL()},
+                ClassLoader.getPlatformClassLoader())) {
+            Thread main = new Thread(group, () -> exitValue[0] = invokeMain(loader, mainClass), "main");
+            main.setContextClassLoader(loader);
+            main.start();
+            main.join();
+            joinNonDaemonThreads(group);
+            return new JobEnd(exitValue[0], group.activeCount() > 0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new JobEnd(UNCAUGHT_EXIT, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new JobEnd(UNCAUGHT_EXIT, true);
+        } finally {
+            System.setProperties(properties);
+        }
+    }
+
+    private static int invokeMain(final ClassLoader loader, final String mainClass) {
+        Method main;
+        try {
+            main = Class.forName(mainClass, true, loader).getMethod("main", String[].class);
+            main.setAccessible(true);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.err.println("Error: Could not find or load main class " + mainClass);
+            System.err.println("Caused by: " + e);
+            return UNCAUGHT_EXIT;
+        }
+        try {
+            main.invoke(null, (Object) new String[0]);
+            return 0;
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            // like the java launcher, show the frames of the program only
+            StackTraceElement[] frames = cause.getStackTrace();
+            int length = frames.length;
+            while (length > 0 && isLauncherFrame(frames[length - 1])) {
+                length--;
+            }
+            cause.setStackTrace(Arrays.copyOf(frames, length));
+            System.err.print("Exception in thread \"main\" ");
+            cause.printStackTrace();
+            return UNCAUGHT_EXIT;
+        } catch (IllegalAccessException e) {
+            System.err.println("Error: Main method not accessible in class " + mainClass);
+            return UNCAUGHT_EXIT;
+        }
+    }
+
+    private static boolean isLauncherFrame(final StackTraceElement frame) {
+        String type = frame.getClassName();
+        return type.startsWith("java.lang.reflect.") || type.startsWith("jdk.internal.reflect.")
+                || type.equals(RunnerWorker.class.getName()) || type.equals(Thread.class.getName());
+    }
+
+    private static void joinNonDaemonThreads(final ThreadGroup group) throws InterruptedException {
+        boolean joined = true;
+        while (joined) {
+            joined = false;
+            Thread[] threads = new Thread[group.activeCount() + 1];
+            int count = group.enumerate(threads);
+            for (int i = 0; i < count; i++) {
+                if (!threads[i].isDaemon()) {
+                    threads[i].join();
+                    joined = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * How a program ended.
+     *
+     * @param exitValue the exit value of the program
+     * @param leaked    true if threads of the program are still running
+     */
+    private record JobEnd(int exitValue, boolean leaked) {
+    }
+
+    /**
+     * The global state of the JVM a program may change besides system properties.
+     *
+     * @param in       the standard input
+     * @param out      the standard output
+     * @param err      the error output
+     * @param locale   the default locale
+     * @param display  the default locale for displaying
+     * @param format   the default locale for formatting
+     * @param timeZone the default time zone
+     */
+    private record GlobalState(InputStream in, PrintStream out, PrintStream err, Locale locale,
+                               Locale display, Locale format, TimeZone timeZone) {
+
+        static GlobalState capture() {
+            return new GlobalState(System.in, System.out, System.err, Locale.getDefault(),
+                    Locale.getDefault(Locale.Category.DISPLAY), Locale.getDefault(Locale.Category.FORMAT),
+                    TimeZone.getDefault());
+        }
+
+        /**
+         * Restores this state.
+         *
+         * @return true if the state was changed, or a standard stream was closed
+         */
+        boolean restore() {
+            // a closed stream reports an error when it is flushed
+            boolean changed = !equals(capture()) || out.checkError() || err.checkError();
+            System.setIn(in);
+            System.setOut(out);
+            System.setErr(err);
+            Locale.setDefault(locale);
+            Locale.setDefault(Locale.Category.DISPLAY, display);
+            Locale.setDefault(Locale.Category.FORMAT, format);
+            TimeZone.setDefault(timeZone);
+            return changed;
+        }
+    }
+
+    /**
+     * Sends everything written to it as frames of one type.
+     */
+    private static final class FrameStream extends OutputStream {
+
+        /**
+         * The stream of frames, shared by all frame streams.
+         */
+        private final DataOutputStream frames;
+
+        /**
+         * The type of the frames.
+         */
+        private final int type;
+
+        FrameStream(final DataOutputStream frames, final int type) {
+            this.frames = frames;
+            this.type = type;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            synchronized (frames) {
+                frames.write(type);
+                frames.writeInt(len);
+                frames.write(b, off, len);
+                // a program may exit at any time, so nothing is kept back
+                frames.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package prorunvis;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * The AppCDS archive of a compiled build, holding the parsed and verified
+ * classes of the trace runtime and the user code, so later JVMs running the
+ * build map them instead of loading them again.
+ * <p>
+ * The JVM only archives classes loaded from jar files, so the classes are
+ * packed into a jar once. The first run dumps a dynamic archive when it exits
+ * (-XX:ArchiveClassesAtExit), the following runs load it (-XX:SharedArchiveFile).
+ * Both files are kept next to the classes folder, in a folder named after it
+ * with the suffix {@link #SUFFIX}, as they are only valid for exactly these
+ * classes; the classes folder itself is only read. The archive is named after
+ * the Java version, as it is only valid for the JVM which dumped it.
+ * <p>
+ * Several runs of a build may start at once: every file is written under a
+ * name of its own and moved into place when complete. An archive the JVM
+ * cannot use is ignored, so a run never fails because of its archive.
+ */
+final class SharedArchive {
+
+    /**
+     * The suffix of the folder next to the classes folder holding the jar and the archive.
+     */
+    static final String SUFFIX = ".cds";
+
+    /**
+     * The name of the jar holding the classes.
+     */
+    static final String JAR = "classes.jar";
+
+    /**
+     * The default CDS archive of the JDK; dynamic archives extend it, so the
+     * JVM refuses to start dumping one without it.
+     */
+    private static final boolean BASE_ARCHIVE_PRESENT = Stream.of("server", "client")
+            .anyMatch(vm -> Files.isRegularFile(Paths.get(System.getProperty("java.home"), "lib", vm, "classes.jsa")));
+
+    /**
+     * The jar holding the classes.
+     */
+    private final Path jar;
+
+    /**
+     * The archive of the classes, once it was dumped.
+     */
+    private final Path archive;
+
+    /**
+     * Where this run dumps the archive, or null if the archive exists already.
+     */
+    private final Path pending;
+
+    private SharedArchive(final Path jar, final Path archive, final Path pending) {
+        this.jar = jar;
+        this.archive = archive;
+        this.pending = pending;
+    }
+
+    /**
+     * @return true if the JVMs started by {@link CompileAndRun} can dump archives
+     */
+    static boolean isSupported() {
+        return BASE_ARCHIVE_PRESENT;
+    }
+
+    /**
+     * Prepares a run from the archive of a classes folder, packing the classes
+     * into a jar if no run did before.
+     *
+     * @param classesDir the folder of the compiled classes
+     * @return the archive of the classes
+     * @throws IOException if the jar cannot be written
+     */
+    static SharedArchive of(final Path classesDir) throws IOException {
+        Path classes = classesDir.toAbsolutePath();
+        Path dir = classes.resolveSibling(classes.getFileName() + SUFFIX);
+        Path jar = dir.resolve(JAR);
+        if (!Files.exists(jar)) {
+            Files.createDirectories(dir);
+            pack(classes, jar);
+        }
+        Path archive = dir.resolve("classes-" + Runtime.version() + ".jsa");
+        Path pending = Files.exists(archive) ? null : dir.resolve(archive.getFileName() + "." + UUID.randomUUID());
+        return new SharedArchive(jar, archive, pending);
+    }
+
+    /**
+     * @return the class path of the program, the jar of the classes
+     */
+    String classPath() {
+        return jar.toString();
+    }
+
+    /**
+     * @return the JVM options dumping or loading the archive
+     */
+    List<String> jvmOptions() {
+        String archiveOption = pending == null
+                ? "-XX:SharedArchiveFile=" + archive
+                : "-XX:ArchiveClassesAtExit=" + pending;
+        // the JVM reports an unusable archive on the output of the program otherwise
+        return List.of(archiveOption, "-Xlog:cds*=off");
+    }
+
+    /**
+     * Keeps the archive dumped by a run, or discards it if the run did not
+     * end by itself, as its archive may be incomplete then.
+     *
+     * @param outcome how the run ended
+     * @throws IOException if the archive cannot be discarded
+     */
+    void finish(final RunOutcome outcome) throws IOException {
+        if (pending == null) {
+            return;
+        }
+        try {
+            if (outcome == RunOutcome.COMPLETED && Files.exists(pending)) {
+                Files.move(pending, archive, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            // another run moved its archive into place first
+        } finally {
+            Files.deleteIfExists(pending);
+        }
+    }
+
+    /**
+     * Packs all files of a classes folder into a jar.
+     */
+    private static void pack(final Path classesDir, final Path jar) throws IOException {
+        Path partial = Files.createTempFile(jar.getParent(), JAR, ".partial");
+        try {
+            try (OutputStream file = Files.newOutputStream(partial);
+                 JarOutputStream out = new JarOutputStream(file);
+                 Stream<Path> walk = Files.walk(classesDir)) {
+                for (Path path : (Iterable<Path>) walk.filter(Files::isRegularFile).sorted()::iterator) {
+                    out.putNextEntry(new JarEntry(classesDir.relativize(path).toString().replace('\\', '/')));
+                    Files.copy(path, out);
+                    out.closeEntry();
+                }
+            }
+            // never replaced, as archives are only valid for the jar they were dumped with
+            Files.move(partial, jar);
+        } catch (FileAlreadyExistsException e) {
+            // another run packed the classes first
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package prorunvis.instrument;
+
+import com.github.javaparser.Position;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.printer.DefaultPrettyPrinter;
+import com.github.javaparser.printer.DefaultPrettyPrinterVisitor;
+import com.github.javaparser.printer.configuration.DefaultConfigurationOption;
+import com.github.javaparser.printer.configuration.DefaultPrinterConfiguration;
+import com.github.javaparser.printer.configuration.DefaultPrinterConfiguration.ConfigOption;
+import com.github.javaparser.printer.configuration.PrinterConfiguration;
+import com.github.javaparser.utils.LineSeparator;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A single instrumented source file whose trace ids start at 0, so it does not
+ * depend on the other files of its project. Trace ids are handed out in the
+ * order the files are instrumented, so the file gets its place in a project by
+ * offsetting its ids with the number of ids of all files before it. This makes
+ * an instrumented file reusable for every project containing the same source.
+ *
+ * @param source      the instrumented source, using the ids 0 to traceIds - 1
+ * @param idOffsets   the positions of the trace ids in the source, in ascending order
+ * @param packagePath the folder of the file given by its package, separated by '/'
+ * @param mainMethod  whether the file declares a method called "main"
+ * @param nodes       the nodes of the trace ids of the file, by their id
+ */
+public record InstrumentedFile(String source, List<Integer> idOffsets, String packagePath, boolean mainMethod,
+                               List<TracedNode> nodes) {
+
+    /**
+     * The version of the instrumentation output, to be increased whenever
+     * instrumenting the same source yields a different result, so stored
+     * files and manifests of an older version are not reused.
+     */
+    public static final int FORMAT_VERSION = 3;
+
+    /**
+     * Instruments a parsed and preprocessed compilation unit on its own.
+     *
+     * @param cu the compilation unit, which is modified by the instrumentation
+     * @return the instrumented file
+     */
+    public static InstrumentedFile of(final CompilationUnit cu) {
+        // calls the source contained before are no trace calls of the instrumentation
+        Set<MethodCallExpr> existing = Collections.newSetFromMap(new IdentityHashMap<>());
+        existing.addAll(traceCalls(cu));
+        Map<Integer, Node> map = new HashMap<>();
+        Instrumenter.run(cu, map);
+        Set<IntegerLiteralExpr> ids = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (MethodCallExpr call : traceCalls(cu)) {
+            if (!existing.contains(call)) {
+                ids.add(call.getArgument(0).asIntegerLiteralExpr());
+            }
+        }
+
+        List<TracedNode> nodes = new ArrayList<>(map.size());
+        for (int id = 0; id < map.size(); id++) {
+            nodes.add(TracedNode.of(map.get(id)));
+        }
+        String packagePath = cu.getPackageDeclaration()
+                .map(declaration -> declaration.getNameAsString().replace('.', '/'))
+                .orElse("");
+        boolean mainMethod = cu.findFirst(MethodDeclaration.class,
+                method -> method.getNameAsString().equals("main")).isPresent();
+        IdRecorder recorder = new IdRecorder(ids);
+        String source = recorder.print(cu);
+        return new InstrumentedFile(source, recorder.offsets(source), packagePath, mainMethod, List.copyOf(nodes));
+    }
+
+    private static List<MethodCallExpr> traceCalls(final CompilationUnit cu) {
+        return cu.findAll(MethodCallExpr.class, call -> call.getNameAsString().equals("next_elem")
+                && call.getArguments().size() == 1 && call.getArgument(0).isIntegerLiteralExpr()
+                && call.getScope().map(scope -> scope.toString().equals("prorunvis.Trace")).orElse(false));
+    }
+
+    /**
+     * Reads a file written by {@link #toJson()}.
+     *
+     * @param json the file as JSON
+     * @return the file
+     * @throws com.google.gson.JsonParseException if the JSON is not a valid file
+     */
+    public static InstrumentedFile fromJson(final String json) {
+        InstrumentedFile file = Manifest.GSON.fromJson(json, InstrumentedFile.class);
+        if (file == null || file.source() == null || file.idOffsets() == null || file.nodes() == null) {
+            throw new JsonParseException("Incomplete instrumented file");
+        }
+        return file;
+    }
+
+    /**
+     * @return this file as JSON, including its source
+     */
+    public String toJson() {
+        return Manifest.GSON.toJson(this);
+    }
+
+    /**
+     * @return the number of trace ids used by the file
+     */
+    public int traceIds() {
+        return nodes.size();
+    }
+
+    /**
+     * @param fileName the name of the source file
+     * @return the fully qualified name of the class the file is named after
+     */
+    public String className(final String fileName) {
+        String name = fileName.endsWith(".java") ? fileName.substring(0, fileName.length() - ".java".length())
+                : fileName;
+        return packagePath.isEmpty() ? name : packagePath.replace('/', '.') + "." + name;
+    }
+
+    /**
+     * @param firstId the first trace id of this file within its project
+     * @return the instrumented source using the ids firstId to firstId + traceIds - 1
+     */
+    public String source(final int firstId) {
+        if (firstId == 0) {
+            return source;
+        }
+        StringBuilder result = new StringBuilder(source.length() + idOffsets.size() * 2);
+        int copied = 0;
+        for (int offset : idOffsets) {
+            int end = offset;
+            while (end < source.length() && Character.isDigit(source.charAt(end))) {
+                end++;
+            }
+            result.append(source, copied, offset).append(Integer.parseInt(source.substring(offset, end)) + firstId);
+            copied = end;
+        }
+        return result.append(source, copied, source.length()).toString();
+    }
+
+    /**
+     * Prints a compilation unit like {@link CompilationUnit#toString()}, and
+     * records where the trace ids added by the instrumentation are printed,
+     * so the trace calls are told apart from equal text in literals and comments.
+     */
+    private static final class IdRecorder {
+
+        /**
+         * The literals of the trace ids added by the instrumentation.
+         */
+        private final Set<IntegerLiteralExpr> ids;
+
+        /**
+         * The positions of the trace ids, in the order they were printed.
+         */
+        private final List<Position> positions = new ArrayList<>();
+
+        IdRecorder(final Set<IntegerLiteralExpr> ids) {
+            this.ids = ids;
+        }
+
+        String print(final CompilationUnit cu) {
+            PrinterConfiguration configuration = new DefaultPrinterConfiguration();
+            if (cu.containsData(Node.LINE_SEPARATOR_KEY)) {
+                configuration.addOption(new DefaultConfigurationOption(ConfigOption.END_OF_LINE_CHARACTER,
+                        cu.getLineEndingStyleOrDefault(LineSeparator.SYSTEM).asRawString()));
+            }
+            return new DefaultPrettyPrinter(config -> new DefaultPrettyPrinterVisitor(config) {
+                @Override
+                public void visit(final IntegerLiteralExpr n, final Void arg) {
+                    if (ids.contains(n)) {
+                        positions.add(printer.getCursor());
+                    }
+                    super.visit(n, arg);
+                }
+            }, configuration).print(cu);
+        }
+
+        /**
+         * @param source the printed source
+         * @return the positions of the trace ids as offsets into the source
+         */
+        List<Integer> offsets(final String source) {
+            List<Integer> lineStarts = new ArrayList<>(List.of(0));
+            for (int i = 0; i < source.length(); i++) {
+                if (source.charAt(i) == '\n') {
+                    lineStarts.add(i + 1);
+                }
+            }
+            return positions.stream()
+                    .map(position -> lineStarts.get(position.line - 1) + position.column)
+                    .toList();
+        }
+    }
+
+    /**
+     * Saves the file at the path given by its package, like
+     * {@link Instrumenter#saveInstrumented(java.util.List, String)}.
+     *
+     * @param outDir   the folder of the instrumented project
+     * @param fileName the name of the source file
+     * @param firstId  the first trace id of this file within its project
+     * @return the path of the saved file
+     * @throws IOException if the file could not be written
+     */
+    public Path save(final Path outDir, final String fileName, final int firstId) throws IOException {
+        Path file = outDir.resolve(packagePath).resolve(fileName);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, source(firstId), StandardCharsets.UTF_8);
+        return file;
+    }
+}
@@ -3,10 +3,15 @@ package prorunvis.instrument;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Node;
 import com.github.javaparser.utils.ProjectRoot;
+import prorunvis.RunnerWorker;
 import prorunvis.trace.TraceVisitor;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
 
 public final class Instrumenter {
@@ -48,6 +53,56 @@ public final class Instrumenter {
         // Save all compilation units to the specified directory
         pr.getSourceRoots().forEach(sr -> sr.saveAll(Paths.get(instrumentedOutPath)));
 
+        saveTraceClass(instrumented);
+    }
+
+    /**
+     * Saves compilation units parsed one by one, rather than collected in a
+     * {@link ProjectRoot}, to the specified directory. Like the source roots of
+     * a project, each unit is saved at the path given by its package, which
+     * becomes its new storage.
+     *
+     * @param cus                 the instrumented compilation units
+     * @param instrumentedOutPath the directory to save them in
+     */
+    public static void saveInstrumented(final List<CompilationUnit> cus, final String instrumentedOutPath) {
+        File instrumented = new File(instrumentedOutPath);
+        if (!instrumented.exists() && !instrumented.mkdirs()) {
+            throw new RuntimeException("Could not create instrumented output directory: " + instrumentedOutPath);
+        }
+
+        Path out = instrumented.toPath();
+        for (CompilationUnit cu : cus) {
+            CompilationUnit.Storage storage = cu.getStorage()
+                    .orElseThrow(() -> new RuntimeException("Compilation unit was not parsed from a file"));
+            Path file = out.resolve(packagePath(cu)).resolve(storage.getFileName());
+            try {
+                Files.createDirectories(file.getParent());
+                Files.writeString(file, cu.toString(), StandardCharsets.UTF_8);
+                cu.setStorage(file, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new RuntimeException("Error saving " + file + ": " + e.getMessage(), e);
+            }
+        }
+
+        saveTraceClass(instrumented);
+    }
+
+    private static Path packagePath(final CompilationUnit cu) {
+        return Paths.get(cu.getPackageDeclaration()
+                .map(declaration -> declaration.getNameAsString().replace('.', File.separatorChar))
+                .orElse(""));
+    }
+
+    /**
+     * Saves the class recording the trace, which every instrumented project
+     * needs, to the specified directory. The trace is written to "Trace.tr" in
+     * the working directory, unless the system property
+     * {@link RunnerWorker#TRACE_FILE_PROPERTY} names another file.
+     *
+     * @param instrumented the directory of the instrumented project
+     */
+    public static void saveTraceClass(final File instrumented) {
         File proRunVisDir = new File(instrumented, "prorunvis");
         if (!proRunVisDir.exists() && !proRunVisDir.mkdirs()) {
             throw new RuntimeException("Could not create prorunvis directory: " + proRunVisDir);
@@ -72,7 +127,9 @@ public final class Instrumenter {
                 "import java.io.IOException;\n" +
                 "public final class Trace {\n" +
                 "    public static void next_elem(int num) {\n" +
-                "        try (BufferedWriter writer = new BufferedWriter(new FileWriter(\"Trace.tr\", true))) {\n" +
+                "        String file = System.getProperty(\"" + RunnerWorker.TRACE_FILE_PROPERTY + "\",\n" +
+                "                \"Trace.tr\");\n" +
+                "        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {\n" +
                 "            writer.write(\"\" + num + System.lineSeparator());\n" +
                 "        } catch (IOException e) {\n" +
                 "            throw new RuntimeException(e.getMessage());\n" +
@@ -90,4 +147,15 @@ public final class Instrumenter {
     public static void run(final CompilationUnit cu, final Map<Integer, Node> map) {
         new TraceVisitor().visit(cu, map);
     }
+
+    /**
+     * Maps the trace ids of a compilation unit to its nodes like {@link #run}
+     * does, without instrumenting it.
+     *
+     * @param cu  the parsed and preprocessed compilation unit
+     * @param map receives the nodes, by the ids continuing after its size
+     */
+    public static void collect(final CompilationUnit cu, final Map<Integer, Node> map) {
+        new TraceVisitor(false).visit(cu, map);
+    }
 }
\ No newline at end of file
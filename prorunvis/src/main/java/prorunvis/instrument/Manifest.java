@@ -0,0 +1,143 @@
+package prorunvis.instrument;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import prorunvis.output.TracedNodeArrayAdapter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Everything the later stages need to know about an instrumented project,
+ * written when it is instrumented: the class with the main method to run,
+ * and the source files with the nodes of all their trace ids. Tracing runs
+ * the main class without parsing the code, and processing only parses the
+ * files the trace passes through, see
+ * {@link prorunvis.trace.process.LazyTraceMap}.
+ *
+ * @param version   the {@link InstrumentedFile#FORMAT_VERSION} the project was instrumented with
+ * @param mainClass the fully qualified name of the class to run, null if no file has a main method
+ * @param files     the source files, in the order of their trace ids
+ */
+public record Manifest(int version, String mainClass, List<SourceFile> files) {
+
+    /**
+     * The name the manifest of a project is stored under.
+     */
+    public static final String FILE_NAME = "manifest.json";
+
+    /**
+     * Writes and reads manifests and {@link InstrumentedFile}s, with each
+     * traced node written as a compact array.
+     */
+    static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(TracedNode.class, new TracedNodeArrayAdapter())
+            .disableHtmlEscaping()
+            .create();
+
+    /**
+     * A source file of an instrumented project. The trace ids of the file
+     * are firstId to firstId + nodes.size() - 1.
+     *
+     * @param path    the path of the file relative to the project, separated by '/'
+     * @param hash    the hash of the original source, see {@link #hash(byte[])}
+     * @param firstId the first trace id of the file
+     * @param nodes   the nodes of the trace ids of the file, by their id
+     */
+    public record SourceFile(String path, String hash, int firstId, List<TracedNode> nodes) {
+    }
+
+    /**
+     * @param files     the source files, in the order of their trace ids
+     * @param mainClass the fully qualified name of the class to run, null if there is none
+     * @return the manifest of the current instrumentation version
+     */
+    public static Manifest of(final List<SourceFile> files, final String mainClass) {
+        return new Manifest(InstrumentedFile.FORMAT_VERSION, mainClass, List.copyOf(files));
+    }
+
+    /**
+     * @param content the content of a source file
+     * @return the hex encoded SHA-256 hash of the content
+     */
+    public static String hash(final byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Reads a manifest written by {@link #write(Path)}.
+     *
+     * @param file the file of the manifest
+     * @return the manifest
+     * @throws IOException if the file cannot be read, is no manifest, or was written
+     *                     for another version of the instrumentation
+     */
+    public static Manifest read(final Path file) throws IOException {
+        Manifest manifest;
+        try {
+            manifest = GSON.fromJson(Files.readString(file, StandardCharsets.UTF_8), Manifest.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid manifest " + file + ": " + e.getMessage(), e);
+        }
+        if (manifest == null || manifest.files() == null) {
+            throw new IOException("Invalid manifest " + file);
+        }
+        if (manifest.version() != InstrumentedFile.FORMAT_VERSION) {
+            throw new IOException("The manifest " + file + " was written for version " + manifest.version()
+                    + " of the instrumentation, the current version is " + InstrumentedFile.FORMAT_VERSION);
+        }
+        return manifest;
+    }
+
+    /**
+     * @param file the file to write the manifest to
+     * @throws IOException if the file cannot be written
+     */
+    public void write(final Path file) throws IOException {
+        Files.writeString(file, GSON.toJson(this), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of trace ids of the project
+     */
+    public int traceIds() {
+        if (files.isEmpty()) {
+            return 0;
+        }
+        SourceFile last = files.get(files.size() - 1);
+        return last.firstId() + last.nodes().size();
+    }
+
+    /**
+     * @param id a trace id
+     * @return the index of the file holding the id, or -1 if the id does not exist
+     */
+    public int fileIndexOf(final int id) {
+        int low = 0;
+        int high = files.size() - 1;
+        // the last file starting at or before the id
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (files.get(mid).firstId() <= id) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (high < 0 || id >= files.get(high).firstId() + files.get(high).nodes().size()) {
+            return -1;
+        }
+        return high;
+    }
+}
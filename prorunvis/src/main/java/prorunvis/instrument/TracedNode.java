@@ -0,0 +1,22 @@
+package prorunvis.instrument;
+
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.Node;
+
+/**
+ * The node of the code a trace id stands for, as recorded when instrumenting
+ * the code, see {@link Manifest}.
+ *
+ * @param kind  the simple name of the class of the node, e.g. "MethodDeclaration"
+ * @param range the range of the node in its source file
+ */
+public record TracedNode(String kind, Range range) {
+
+    /**
+     * @param node a node mapped to a trace id
+     * @return the kind and range of the node
+     */
+    public static TracedNode of(final Node node) {
+        return new TracedNode(node.getClass().getSimpleName(), node.getRange().orElse(null));
+    }
+}
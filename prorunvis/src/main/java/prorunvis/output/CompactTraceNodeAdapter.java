@@ -0,0 +1,367 @@
+package prorunvis.output;
+
+import com.github.javaparser.Range;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import prorunvis.trace.TraceNode;
+import prorunvis.trace.process.JumpLink;
+import prorunvis.trace.process.RangeDictionary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link TypeAdapter} writing a {@link TraceNode} in the compact
+ * {@link SchemaVersion#V2} schema. Ranges are written as int arrays
+ * and all repeated strings are replaced by indices into the string tables
+ * of this adapter, which have to be filled using {@link #collect(TraceNode)}
+ * before the first node is written.
+ * If a {@link RangeDictionary} is given, the adapter writes the
+ * {@link SchemaVersion#V3} schema, leaving out ranges and links which are
+ * equal to the canonical ones of the node's trace id.
+ * <p>
+ * Nodes are read back the same way: the string tables and the dictionary
+ * are filled from the document first, see {@link TraceJsonReader}, and left
+ * out ranges and links are taken from the dictionary.
+ */
+public class CompactTraceNodeAdapter extends TypeAdapter<TraceNode> {
+
+    /**
+     * The trace id written for the root node, which has no numeric id.
+     */
+    public static final int ROOT_ID = -1;
+
+    /**
+     * The relative paths of all files referenced by links.
+     */
+    private final StringTable files;
+
+    /**
+     * The signatures of all executed methods.
+     */
+    private final StringTable methods;
+
+    /**
+     * The node types of all nodes.
+     */
+    private final StringTable types;
+
+    /**
+     * The adapter used for writing single ranges.
+     */
+    private final RangeArrayAdapter rangeAdapter;
+
+    /**
+     * The dictionary of canonical ranges and links, or null if all
+     * ranges and links are written with their nodes.
+     */
+    private final RangeDictionary dictionary;
+
+    /**
+     * Constructs an adapter with empty string tables, writing all ranges and links.
+     */
+    public CompactTraceNodeAdapter() {
+        this(null);
+    }
+
+    /**
+     * Constructs an adapter with empty string tables.
+     *
+     * @param dictionary the dictionary of canonical ranges and links,
+     *                   or null if all ranges and links should be written.
+     */
+    public CompactTraceNodeAdapter(final RangeDictionary dictionary) {
+        this.files = new StringTable();
+        this.methods = new StringTable();
+        this.types = new StringTable();
+        this.rangeAdapter = new RangeArrayAdapter();
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Adds all strings referenced by a node to the string tables.
+     *
+     * @param node the node to collect the strings of.
+     */
+    public void collect(final TraceNode node) {
+        types.intern(node.getNodeType());
+        if (node.getNodeMethodName() != null) {
+            methods.intern(node.getNodeMethodName());
+        }
+        collectFile(node.getLink());
+        node.getOutLinks().forEach(this::collectFile);
+    }
+
+    private void collectFile(final JumpLink link) {
+        if (link != null && link.getFilepath() != null) {
+            files.intern(link.getFilepath());
+        }
+    }
+
+    /**
+     * @return the table of file paths.
+     */
+    public StringTable getFiles() {
+        return files;
+    }
+
+    /**
+     * @return the table of method signatures.
+     */
+    public StringTable getMethods() {
+        return methods;
+    }
+
+    /**
+     * @return the table of node types.
+     */
+    public StringTable getTypes() {
+        return types;
+    }
+
+    @Override
+    public void write(final JsonWriter out, final TraceNode node) throws IOException {
+        boolean isRoot = node.getParentIndex() == null;
+        int id = isRoot ? ROOT_ID : Integer.parseInt(node.getTraceID());
+
+        out.beginObject();
+        out.name("id").value(id);
+        out.name("type").value(types.indexOf(node.getNodeType()));
+        if (node.getNodeMethodName() != null) {
+            out.name("method").value(methods.indexOf(node.getNodeMethodName()));
+        }
+        if (!isRoot) {
+            out.name("parent").value(node.getParentIndex());
+        }
+        if (node.getIteration() != null) {
+            out.name("iteration").value(node.getIteration());
+        }
+
+        out.name("children").beginArray();
+        for (int child : node.getChildrenIndices()) {
+            out.value(child);
+        }
+        out.endArray();
+
+        if (dictionary == null || isRoot || !dictionary.isCanonical(id, node.getRanges())) {
+            out.name("ranges");
+            writeRanges(out, node.getRanges());
+        }
+
+        if (node.getLink() != null
+                && (dictionary == null || isRoot || !dictionary.isCanonical(id, node.getLink()))) {
+            out.name("link");
+            writeLink(out, node.getLink());
+        } else if (node.getLink() == null && dictionary != null && !isRoot && dictionary.getLinks().containsKey(id)) {
+            // a left out link means the canonical one, so the missing link is written as null
+            boolean serializeNulls = out.getSerializeNulls();
+            out.setSerializeNulls(true);
+            out.name("link").nullValue();
+            out.setSerializeNulls(serializeNulls);
+        }
+        List<JumpLink> outLinks = node.getOutLinks();
+        if (!outLinks.isEmpty()) {
+            out.name("outLinks").beginArray();
+            for (JumpLink link : outLinks) {
+                writeLink(out, link);
+            }
+            out.endArray();
+        }
+        if (!outLinks.isEmpty() || node.getOutIndex() != 0) {
+            out.name("out").value(node.getOutIndex());
+        }
+        if (node.isTruncated()) {
+            out.name("truncated").value(true);
+        }
+        out.endObject();
+    }
+
+    /**
+     * Writes the canonical ranges and links of all trace ids as an array of objects
+     * with the keys <code>id</code>, <code>ranges</code> and, if present, <code>link</code>.
+     *
+     * @param out the writer to write to.
+     * @throws IOException If writing fails.
+     * @throws IllegalStateException if this adapter has no dictionary.
+     */
+    public void writeDictionary(final JsonWriter out) throws IOException {
+        if (dictionary == null) {
+            throw new IllegalStateException("No range dictionary to write.");
+        }
+        out.beginArray();
+        for (Map.Entry<Integer, List<Range>> entry : dictionary.getRanges().entrySet()) {
+            out.beginObject();
+            out.name("id").value(entry.getKey());
+            out.name("ranges");
+            writeRanges(out, entry.getValue());
+            JumpLink link = dictionary.getLinks().get(entry.getKey());
+            if (link != null) {
+                out.name("link");
+                writeLink(out, link);
+            }
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    private void writeRanges(final JsonWriter out, final List<Range> ranges) throws IOException {
+        out.beginArray();
+        for (Range range : ranges) {
+            rangeAdapter.write(out, range);
+        }
+        out.endArray();
+    }
+
+    /**
+     * Writes a link as <code>[beginLine, beginColumn, endLine, endColumn, file]</code>,
+     * where file is an index into {@link #files} or -1 for links without a file.
+     */
+    private void writeLink(final JsonWriter out, final JumpLink link) throws IOException {
+        out.beginArray();
+        RangeArrayAdapter.writePositions(out, link);
+        out.value(files.indexOf(link.getFilepath()));
+        out.endArray();
+    }
+
+    /**
+     * Reads the canonical ranges and links written by {@link #writeDictionary(JsonWriter)}
+     * into the dictionary of this adapter. The table of file paths has to be filled before.
+     *
+     * @param in the reader to read from.
+     * @throws IOException If reading fails.
+     * @throws IllegalStateException if this adapter has no dictionary.
+     */
+    public void readDictionary(final JsonReader in) throws IOException {
+        if (dictionary == null) {
+            throw new IllegalStateException("No range dictionary to read into.");
+        }
+        in.beginArray();
+        while (in.hasNext()) {
+            int id = ROOT_ID;
+            List<Range> ranges = List.of();
+            JumpLink link = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id" -> id = in.nextInt();
+                    case "ranges" -> ranges = readRanges(in);
+                    case "link" -> link = readLink(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            dictionary.intern(id, ranges);
+            dictionary.putLinkIfAbsent(id, link);
+        }
+        in.endArray();
+    }
+
+    /**
+     * Reads a node written by {@link #write(JsonWriter, TraceNode)}. The string
+     * tables and, for {@link SchemaVersion#V3}, the dictionary have to be filled
+     * before, as nodes only hold indices into the tables and leave out their
+     * canonical ranges and link.
+     *
+     * @param in the reader to read from.
+     * @return the read node.
+     * @throws IOException If reading fails.
+     */
+    @Override
+    public TraceNode read(final JsonReader in) throws IOException {
+        int id = ROOT_ID;
+        Integer parent = null;
+        Integer iteration = null;
+        String type = null;
+        String method = null;
+        List<Integer> children = new ArrayList<>();
+        List<Range> ranges = null;
+        JumpLink link = null;
+        boolean hasLink = false;
+        List<JumpLink> outLinks = new ArrayList<>();
+        int outIndex = 0;
+        boolean truncated = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id" -> id = in.nextInt();
+                case "type" -> type = types.getEntries().get(in.nextInt());
+                case "method" -> method = methods.getEntries().get(in.nextInt());
+                case "parent" -> parent = in.nextInt();
+                case "iteration" -> iteration = in.nextInt();
+                case "children" -> {
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        children.add(in.nextInt());
+                    }
+                    in.endArray();
+                }
+                case "ranges" -> ranges = readRanges(in);
+                case "link" -> {
+                    hasLink = true;
+                    link = readLink(in);
+                }
+                case "outLinks" -> {
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        outLinks.add(readLink(in));
+                    }
+                    in.endArray();
+                }
+                case "out" -> outIndex = in.nextInt();
+                case "truncated" -> truncated = in.nextBoolean();
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+
+        boolean isRoot = parent == null;
+        boolean canonical = dictionary != null && !isRoot;
+        TraceNode node = new TraceNode(parent, isRoot ? "root" : String.valueOf(id));
+        node.setNodeType(type);
+        node.setNodeMethodName(method);
+        node.setChildrenIndices(children);
+        if (ranges == null) {
+            ranges = canonical ? dictionary.getRanges().getOrDefault(id, List.of()) : new ArrayList<>();
+        }
+        node.setRanges(ranges);
+        node.setLink(hasLink || !canonical ? link : dictionary.getLinks().get(id));
+        outLinks.forEach(node::addOutLink);
+        node.setOut(outIndex);
+        node.setIteration(iteration);
+        node.setTruncated(truncated);
+        if (!isRoot) {
+            node.setUniqueTraceId(iteration != null && iteration > 0 ? id + "_iter" + iteration : String.valueOf(id));
+        }
+        return node;
+    }
+
+    private List<Range> readRanges(final JsonReader in) throws IOException {
+        List<Range> ranges = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            ranges.add(rangeAdapter.read(in));
+        }
+        in.endArray();
+        return ranges;
+    }
+
+    /**
+     * Reads a link written by {@link #writeLink(JsonWriter, JumpLink)}, or null.
+     */
+    private JumpLink readLink(final JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        in.beginArray();
+        Range range = Range.range(in.nextInt(), in.nextInt(), in.nextInt(), in.nextInt());
+        int file = in.nextInt();
+        in.endArray();
+        return new JumpLink(range, file < 0 ? null : files.getEntries().get(file));
+    }
+}
@@ -0,0 +1,54 @@
+package prorunvis.output;
+
+import com.github.javaparser.Range;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * A {@link TypeAdapter} writing a {@link Range} as the int array
+ * <code>[beginLine, beginColumn, endLine, endColumn]</code>.
+ */
+public class RangeArrayAdapter extends TypeAdapter<Range> {
+
+    /**
+     * Writes the four positions of a range without opening or closing an array,
+     * so callers can append further elements.
+     *
+     * @param out   the writer to write to.
+     * @param range the range to write.
+     * @throws IOException If writing fails.
+     */
+    static void writePositions(final JsonWriter out, final Range range) throws IOException {
+        out.value(range.begin.line);
+        out.value(range.begin.column);
+        out.value(range.end.line);
+        out.value(range.end.column);
+    }
+
+    @Override
+    public void write(final JsonWriter out, final Range range) throws IOException {
+        if (range == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        writePositions(out, range);
+        out.endArray();
+    }
+
+    @Override
+    public Range read(final JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        in.beginArray();
+        Range range = Range.range(in.nextInt(), in.nextInt(), in.nextInt(), in.nextInt());
+        in.endArray();
+        return range;
+    }
+}
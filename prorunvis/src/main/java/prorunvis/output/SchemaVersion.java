@@ -0,0 +1,71 @@
+package prorunvis.output;
+
+import java.util.Optional;
+
+/**
+ * The versions of the JSON schema a processed trace can be written in.
+ */
+public enum SchemaVersion {
+
+    /**
+     * The original schema, a plain array of reflectively serialized
+     * {@link prorunvis.trace.TraceNode} objects.
+     */
+    V1(1),
+
+    /**
+     * The compact schema, an object holding string tables and nodes
+     * with ranges encoded as int arrays.
+     */
+    V2(2),
+
+    /**
+     * The compact schema extended by a static dictionary of the ranges and links
+     * of every trace id, which are left out of nodes matching the dictionary.
+     */
+    V3(3);
+
+    /**
+     * The number of this version as written to the output.
+     */
+    private final int number;
+
+    SchemaVersion(final int number) {
+        this.number = number;
+    }
+
+    /**
+     * Returns the number of this version.
+     * @return the version number
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * Returns the schema version with the given number.
+     *
+     * @param number the version number, e.g. 2
+     * @return the matching schema version
+     * @throws IllegalArgumentException if no version with this number exists
+     */
+    public static SchemaVersion of(final int number) {
+        return find(number).orElseThrow(() -> new IllegalArgumentException("Unknown schema version: " + number));
+    }
+
+    /**
+     * Looks up the schema version with the given number, e.g. to validate
+     * a version requested by a client.
+     *
+     * @param number the version number, e.g. 2
+     * @return the matching schema version, or an empty optional if no version with this number exists
+     */
+    public static Optional<SchemaVersion> find(final int number) {
+        for (SchemaVersion version : values()) {
+            if (version.number == number) {
+                return Optional.of(version);
+            }
+        }
+        return Optional.empty();
+    }
+}
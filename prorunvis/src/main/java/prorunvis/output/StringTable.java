@@ -0,0 +1,71 @@
+package prorunvis.output;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A table of interned strings, each referenced by its index.
+ * Used by the compact output schema to write repeated strings
+ * like file paths only once.
+ */
+public class StringTable {
+
+    /**
+     * The strings of this table in order of their indices.
+     */
+    private final List<String> entries;
+
+    /**
+     * Maps every string of this table to its index.
+     */
+    private final Map<String, Integer> indices;
+
+    /**
+     * Constructs an empty string table.
+     */
+    public StringTable() {
+        this.entries = new ArrayList<>();
+        this.indices = new HashMap<>();
+    }
+
+    /**
+     * Adds a string to this table if it is not contained yet.
+     *
+     * @param value the string to intern, must not be null.
+     * @return the index of the string in this table.
+     */
+    public int intern(final String value) {
+        Integer index = indices.get(value);
+        if (index == null) {
+            index = entries.size();
+            entries.add(value);
+            indices.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of a previously interned string.
+     *
+     * @param value the string to look up.
+     * @return the index of the string, or -1 if it is null or not contained.
+     */
+    public int indexOf(final String value) {
+        if (value == null) {
+            return -1;
+        }
+        return indices.getOrDefault(value, -1);
+    }
+
+    /**
+     * Returns all strings of this table in order of their indices.
+     *
+     * @return an unmodifiable view of the entries.
+     */
+    public List<String> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+}
@@ -0,0 +1,102 @@
+package prorunvis.output;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import prorunvis.trace.TraceNode;
+import prorunvis.trace.process.RangeDictionary;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a processed trace written by {@link TraceJsonWriter} back into a list of
+ * {@link TraceNode} objects, in any of the {@link SchemaVersion}s. Nodes are read
+ * one at a time from the stream, like they were written.
+ * <p>
+ * The compact schemas are read in the order they are written: the version
+ * first, then the string tables and the dictionary, and the nodes last.
+ */
+public final class TraceJsonReader {
+
+    private TraceJsonReader() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Reads the nodes of a processed trace. The reader is not closed.
+     *
+     * @param in the reader to read the JSON from.
+     * @return the nodes in the order they were written.
+     * @throws IOException If reading fails or the JSON is no processed trace.
+     */
+    public static List<TraceNode> read(final Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+            return readPlain(reader);
+        }
+        return readCompact(reader);
+    }
+
+    /**
+     * Reads the {@link SchemaVersion#V1} schema, a plain array of nodes.
+     */
+    private static List<TraceNode> readPlain(final JsonReader reader) throws IOException {
+        Gson gson = new Gson();
+        List<TraceNode> nodes = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            nodes.add(gson.fromJson(reader, TraceNode.class));
+        }
+        reader.endArray();
+        return nodes;
+    }
+
+    /**
+     * Reads the {@link SchemaVersion#V2} or {@link SchemaVersion#V3} schema.
+     */
+    private static List<TraceNode> readCompact(final JsonReader reader) throws IOException {
+        reader.beginObject();
+        if (!reader.nextName().equals("version")) {
+            throw new IOException("The schema version has to be the first property of a trace.");
+        }
+        SchemaVersion version;
+        try {
+            version = SchemaVersion.of(reader.nextInt());
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        CompactTraceNodeAdapter adapter = new CompactTraceNodeAdapter(
+                version == SchemaVersion.V3 ? new RangeDictionary() : null);
+
+        List<TraceNode> nodes = new ArrayList<>();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "files" -> readTable(adapter.getFiles(), reader);
+                case "methods" -> readTable(adapter.getMethods(), reader);
+                case "types" -> readTable(adapter.getTypes(), reader);
+                case "static" -> adapter.readDictionary(reader);
+                case "nodes" -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        nodes.add(adapter.read(reader));
+                    }
+                    reader.endArray();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return nodes;
+    }
+
+    private static void readTable(final StringTable table, final JsonReader reader) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            table.intern(reader.nextString());
+        }
+        reader.endArray();
+    }
+}
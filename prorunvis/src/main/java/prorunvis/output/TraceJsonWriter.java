@@ -0,0 +1,192 @@
+package prorunvis.output;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import prorunvis.trace.TraceNode;
+import prorunvis.trace.process.RangeDictionary;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a list of {@link TraceNode} objects as JSON in one of the
+ * {@link SchemaVersion}s. Nodes are serialized one at a time directly to the
+ * target stream, so the JSON representation of the whole trace is never held in memory.
+ */
+public class TraceJsonWriter {
+
+    /**
+     * The Gson instance used to serialize single nodes.
+     */
+    private final Gson gson;
+
+    /**
+     * The schema version of the written JSON.
+     */
+    private final SchemaVersion version;
+
+    /**
+     * The dictionary of canonical ranges and links, only used by {@link SchemaVersion#V3}.
+     */
+    private final RangeDictionary dictionary;
+
+    /**
+     * Constructs a writer producing either indented or compact JSON
+     * in the {@link SchemaVersion#V1} schema.
+     *
+     * @param pretty true if the output should be pretty printed,
+     *               false for compact output without whitespace.
+     */
+    public TraceJsonWriter(final boolean pretty) {
+        this(pretty, SchemaVersion.V1);
+    }
+
+    /**
+     * Constructs a writer producing either indented or compact JSON
+     * in the given schema version.
+     *
+     * @param pretty  true if the output should be pretty printed,
+     *                false for compact output without whitespace.
+     * @param version the schema version to write, except {@link SchemaVersion#V3}
+     *                which requires a {@link RangeDictionary}.
+     */
+    public TraceJsonWriter(final boolean pretty, final SchemaVersion version) {
+        this(pretty, version, null);
+    }
+
+    /**
+     * Constructs a writer producing either indented or compact JSON
+     * in the given schema version.
+     *
+     * @param pretty     true if the output should be pretty printed,
+     *                   false for compact output without whitespace.
+     * @param version    the schema version to write.
+     * @param dictionary the canonical ranges and links of the written trace as provided by
+     *                   {@link prorunvis.trace.process.TraceProcessor#getRangeDictionary()}.
+     *                   Only used by, but required for {@link SchemaVersion#V3}.
+     */
+    public TraceJsonWriter(final boolean pretty, final SchemaVersion version, final RangeDictionary dictionary) {
+        if (version == SchemaVersion.V3 && dictionary == null) {
+            throw new IllegalArgumentException("Schema version 3 requires a range dictionary.");
+        }
+        GsonBuilder builder = new GsonBuilder();
+        if (pretty) {
+            builder.setPrettyPrinting();
+        }
+        this.gson = builder.create();
+        this.version = version;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Writes the nodes to the given writer. The writer is flushed but not closed.
+     *
+     * @param nodes the nodes to write.
+     * @param out   the writer to write to.
+     * @throws IOException If writing to <code>out</code> fails.
+     */
+    public void write(final List<TraceNode> nodes, final Writer out) throws IOException {
+        JsonWriter writer = gson.newJsonWriter(out);
+        if (version != SchemaVersion.V1) {
+            writeCompact(nodes, writer);
+        } else {
+            writer.beginArray();
+            for (TraceNode node : nodes) {
+                gson.toJson(node, TraceNode.class, writer);
+            }
+            writer.endArray();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the nodes in the {@link SchemaVersion#V2} or {@link SchemaVersion#V3} schema.
+     * The string tables are collected in a first pass over the nodes, so they can be
+     * written before the nodes referencing them.
+     */
+    private void writeCompact(final List<TraceNode> nodes, final JsonWriter writer) throws IOException {
+        CompactTraceNodeAdapter adapter = new CompactTraceNodeAdapter(
+                version == SchemaVersion.V3 ? dictionary : null);
+        nodes.forEach(adapter::collect);
+
+        writer.beginObject();
+        writer.name("version").value(version.getNumber());
+        writer.name("files");
+        writeTable(adapter.getFiles(), writer);
+        writer.name("methods");
+        writeTable(adapter.getMethods(), writer);
+        writer.name("types");
+        writeTable(adapter.getTypes(), writer);
+        if (version == SchemaVersion.V3) {
+            writer.name("static");
+            adapter.writeDictionary(writer);
+        }
+        writer.name("nodes").beginArray();
+        for (TraceNode node : nodes) {
+            adapter.write(writer, node);
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private void writeTable(final StringTable table, final JsonWriter writer) throws IOException {
+        writer.beginArray();
+        for (String entry : table.getEntries()) {
+            writer.value(entry);
+        }
+        writer.endArray();
+    }
+
+    /**
+     * Writes the nodes UTF-8 encoded to the given stream. The stream is flushed but not closed,
+     * which allows writing to streams owned by others, e.g. a http response.
+     *
+     * @param nodes the nodes to write.
+     * @param out   the stream to write to.
+     * @throws IOException If writing to <code>out</code> fails.
+     */
+    public void write(final List<TraceNode> nodes, final OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        write(nodes, writer);
+    }
+
+    /**
+     * Writes the nodes to a file, replacing it if it already exists.
+     *
+     * @param nodes the nodes to write.
+     * @param file  the file to write to.
+     * @param gzip  true if the file should be gzip compressed.
+     * @throws IOException If the file could not be written.
+     */
+    public void write(final List<TraceNode> nodes, final Path file, final boolean gzip) throws IOException {
+        try (OutputStream out = open(file, gzip)) {
+            write(nodes, out);
+        }
+    }
+
+    /**
+     * Opens a buffered stream to a file, optionally wrapped in gzip compression.
+     *
+     * @param file the file to open.
+     * @param gzip true if the written data should be gzip compressed.
+     * @return the opened stream, which has to be closed by the caller.
+     * @throws IOException If the file could not be opened.
+     */
+    public static OutputStream open(final Path file, final boolean gzip) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        if (gzip) {
+            return new GZIPOutputStream(out, 1 << 16);
+        }
+        return new BufferedOutputStream(out, 1 << 16);
+    }
+}
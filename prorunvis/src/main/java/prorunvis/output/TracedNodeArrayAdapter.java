@@ -0,0 +1,45 @@
+package prorunvis.output;
+
+import com.github.javaparser.Range;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import prorunvis.instrument.TracedNode;
+
+import java.io.IOException;
+
+/**
+ * A {@link TypeAdapter} writing a {@link TracedNode} as the array
+ * <code>[kind, beginLine, beginColumn, endLine, endColumn]</code>,
+ * or <code>[kind]</code> for a node without a range.
+ */
+public class TracedNodeArrayAdapter extends TypeAdapter<TracedNode> {
+
+    @Override
+    public void write(final JsonWriter out, final TracedNode node) throws IOException {
+        if (node == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        out.value(node.kind());
+        if (node.range() != null) {
+            RangeArrayAdapter.writePositions(out, node.range());
+        }
+        out.endArray();
+    }
+
+    @Override
+    public TracedNode read(final JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        in.beginArray();
+        String kind = in.nextString();
+        Range range = in.hasNext() ? Range.range(in.nextInt(), in.nextInt(), in.nextInt(), in.nextInt()) : null;
+        in.endArray();
+        return new TracedNode(kind, range);
+    }
+}
@@ -0,0 +1,454 @@
+package prorunvis.trace;
+
+import com.github.javaparser.Range;
+import prorunvis.trace.process.JumpLink;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * A read-only {@link TraceNodeSource} backed by a memory-mapped binary file.
+ * Opening a store only reads the header and the string tables, all node
+ * properties are read from the mapped file when they are accessed, so the
+ * heap used by a store does not depend on the number of nodes.
+ * <p>
+ * The file starts with a header of the magic number, the format version,
+ * the number of nodes and a reserved int, followed by the offsets of all
+ * sections. The first section holds one fixed size record per node, the
+ * following ones hold the children, range and outLink references of all nodes,
+ * the iterations of all loops, the distinct ranges and links, and the string tables. All values are
+ * big-endian ints.
+ * <p>
+ * A single mapping cannot exceed {@link Integer#MAX_VALUE} bytes, so the int
+ * sections are mapped in chunks of {@value #CHUNK_BYTES} bytes, and stores of
+ * traces with more nodes than fit into one mapping can be opened as well.
+ */
+public final class MappedTraceNodeStore implements TraceNodeSource {
+
+    /**
+     * The magic number identifying a store file ("PRVT").
+     */
+    private static final int MAGIC = 0x50525654;
+
+    /**
+     * The version of the file format.
+     */
+    private static final int FORMAT_VERSION = 3;
+
+    /**
+     * The number of sections following the header.
+     */
+    private static final int SECTIONS = 8;
+
+    /**
+     * The size of the header in bytes, including the section offsets.
+     */
+    private static final int HEADER_SIZE = 4 * Integer.BYTES + SECTIONS * Long.BYTES;
+
+    /**
+     * The size of the chunks the int sections are mapped in, in bytes.
+     */
+    private static final int CHUNK_BYTES = 1 << 30;
+
+    /**
+     * The number of ints in a node record.
+     */
+    private static final int RECORD_WIDTH = 16;
+
+    /**
+     * The positions of the fields in a node record.
+     */
+    private static final int PARENT = 0;
+    private static final int TRACE_ID = 1;
+    private static final int ITERATION = 2;
+    private static final int OUT_INDEX = 3;
+    private static final int TYPE = 4;
+    private static final int METHOD = 5;
+    private static final int LINK = 6;
+    private static final int CHILD_START = 7;
+    private static final int CHILD_COUNT = 8;
+    private static final int RANGE_START = 9;
+    private static final int RANGE_COUNT = 10;
+    private static final int OUT_LINK_START = 11;
+    private static final int OUT_LINK_COUNT = 12;
+    private static final int ITERATION_START = 13;
+    private static final int ITERATION_COUNT = 14;
+    private static final int TRUNCATED = 15;
+
+    /**
+     * The number of nodes in this store.
+     */
+    private final int size;
+
+    /**
+     * The node records.
+     */
+    private final MappedInts records;
+
+    /**
+     * The indices of the children of all nodes.
+     */
+    private final MappedInts children;
+
+    /**
+     * The indices of the ranges of all nodes in {@link #rangePool}.
+     */
+    private final MappedInts rangeRefs;
+
+    /**
+     * The indices of the outLinks of all nodes in {@link #linkPool}.
+     */
+    private final MappedInts outLinkRefs;
+
+    /**
+     * The indices of the iterations of all loops.
+     */
+    private final MappedInts iterations;
+
+    /**
+     * All distinct ranges.
+     */
+    private final MappedInts rangePool;
+
+    /**
+     * All distinct links.
+     */
+    private final MappedInts linkPool;
+
+    /**
+     * The distinct node types.
+     */
+    private final String[] types;
+
+    /**
+     * The distinct method names.
+     */
+    private final String[] methods;
+
+    /**
+     * The distinct file paths of all links.
+     */
+    private final String[] files;
+
+    private MappedTraceNodeStore(final int size, final MappedInts[] sections,
+                                 final String[][] strings) {
+        this.size = size;
+        this.records = sections[0];
+        this.children = sections[1];
+        this.rangeRefs = sections[2];
+        this.outLinkRefs = sections[3];
+        this.iterations = sections[4];
+        this.rangePool = sections[5];
+        this.linkPool = sections[6];
+        this.types = strings[0];
+        this.methods = strings[1];
+        this.files = strings[2];
+    }
+
+    /**
+     * Writes a table to a store file. The file is written next to its target and
+     * then moved into place, so stores already mapping an older version of the
+     * file stay valid.
+     *
+     * @param table the table to write.
+     * @param file  the file to write to.
+     * @throws IOException If the file could not be written.
+     */
+    public static void write(final TraceNodeTable table, final Path file) throws IOException {
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                writeTo(table, out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeTo(final TraceNodeTable table, final DataOutputStream out) throws IOException {
+        int size = table.size();
+        int[][] sections = {null, table.childValues(), table.rangeValues(), table.outLinkValues(),
+                table.iterationValues(), table.rangePool(), table.linkPool()};
+
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(size);
+        out.writeInt(0);
+
+        long offset = HEADER_SIZE;
+        out.writeLong(offset);
+        offset += (long) size * RECORD_WIDTH * Integer.BYTES;
+        for (int i = 1; i < sections.length; i++) {
+            out.writeLong(offset);
+            offset += (long) sections[i].length * Integer.BYTES;
+        }
+        out.writeLong(offset);
+
+        int[] childOffsets = table.childOffsets();
+        int[] rangeOffsets = table.rangeOffsets();
+        int[] outLinkOffsets = table.outLinkOffsets();
+        for (int i = 0; i < size; i++) {
+            out.writeInt(table.parentColumn()[i]);
+            out.writeInt(table.traceIdColumn()[i]);
+            out.writeInt(table.iterationColumn()[i]);
+            out.writeInt(table.outIndexColumn()[i]);
+            out.writeInt(table.typeColumn()[i]);
+            out.writeInt(table.methodColumn()[i]);
+            out.writeInt(table.linkColumn()[i]);
+            out.writeInt(childOffsets[i]);
+            out.writeInt(childOffsets[i + 1] - childOffsets[i]);
+            out.writeInt(rangeOffsets[i]);
+            out.writeInt(rangeOffsets[i + 1] - rangeOffsets[i]);
+            out.writeInt(outLinkOffsets[i]);
+            out.writeInt(outLinkOffsets[i + 1] - outLinkOffsets[i]);
+            out.writeInt(table.iterationStartColumn()[i]);
+            out.writeInt(table.iterationCountColumn()[i]);
+            out.writeInt(table.truncatedColumn()[i] ? 1 : 0);
+        }
+        for (int i = 1; i < sections.length; i++) {
+            for (int value : sections[i]) {
+                out.writeInt(value);
+            }
+        }
+        for (String[] strings : new String[][]{table.typeTable(), table.methodTable(), table.fileTable()}) {
+            out.writeInt(strings.length);
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Opens a store file by mapping it into memory.
+     *
+     * @param file the file to open, as written by {@link #write(TraceNodeTable, Path)}.
+     * @return the opened store.
+     * @throws IOException If the file could not be read or is no valid store file.
+     */
+    public static MappedTraceNodeStore open(final Path file) throws IOException {
+        return open(file, CHUNK_BYTES);
+    }
+
+    /**
+     * Opens a store file, mapping the int sections in chunks of the given size.
+     *
+     * @param file       the file to open.
+     * @param chunkBytes the size of the chunks in bytes, a power of two of at least {@link Integer#BYTES}.
+     * @return the opened store.
+     * @throws IOException If the file could not be read or is no valid store file.
+     */
+    static MappedTraceNodeStore open(final Path file, final int chunkBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException("Incomplete trace store header: " + file);
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a trace store: " + file);
+            }
+            int version = header.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported trace store version " + version + ": " + file);
+            }
+            int size = header.getInt();
+            header.getInt();
+
+            long[] offsets = new long[SECTIONS + 1];
+            for (int i = 0; i < SECTIONS; i++) {
+                offsets[i] = header.getLong();
+            }
+            offsets[SECTIONS] = channel.size();
+
+            MappedInts[] sections = new MappedInts[SECTIONS - 1];
+            for (int i = 0; i < sections.length; i++) {
+                sections[i] = MappedInts.map(channel, offsets[i], offsets[i + 1], chunkBytes);
+            }
+            ByteBuffer stringSection = map(channel, offsets[SECTIONS - 1], offsets[SECTIONS]);
+            String[][] strings = new String[3][];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readStrings(stringSection);
+            }
+            // the mappings stay valid after the channel is closed
+            return new MappedTraceNodeStore(size, sections, strings);
+        }
+    }
+
+    private static ByteBuffer map(final FileChannel channel, final long from, final long to) throws IOException {
+        if (from < 0 || from > to || to > channel.size() || to - from > Integer.MAX_VALUE) {
+            throw new IOException("Invalid trace store section [" + from + ", " + to + ").");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+    }
+
+    private static String[] readStrings(final ByteBuffer buffer) {
+        String[] strings = new String[buffer.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private int field(final int index, final int field) {
+        return records.get((long) Objects.checkIndex(index, size) * RECORD_WIDTH + field);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getParent(final int index) {
+        return field(index, PARENT);
+    }
+
+    @Override
+    public int getTraceId(final int index) {
+        return field(index, TRACE_ID);
+    }
+
+    @Override
+    public int getIteration(final int index) {
+        return field(index, ITERATION);
+    }
+
+    @Override
+    public int getOutIndex(final int index) {
+        return field(index, OUT_INDEX);
+    }
+
+    @Override
+    public String getNodeType(final int index) {
+        return types[field(index, TYPE)];
+    }
+
+    @Override
+    public String getNodeMethodName(final int index) {
+        int method = field(index, METHOD);
+        return method == NONE ? null : methods[method];
+    }
+
+    @Override
+    public int getChildCount(final int index) {
+        return field(index, CHILD_COUNT);
+    }
+
+    @Override
+    public int getChild(final int index, final int k) {
+        return children.get((long) field(index, CHILD_START) + Objects.checkIndex(k, getChildCount(index)));
+    }
+
+    @Override
+    public int getRangeCount(final int index) {
+        return field(index, RANGE_COUNT);
+    }
+
+    @Override
+    public Range getRange(final int index, final int k) {
+        int ref = rangeRefs.get((long) field(index, RANGE_START) + Objects.checkIndex(k, getRangeCount(index)));
+        return readRange(rangePool, (long) ref * TraceNodeTable.RANGE_WIDTH);
+    }
+
+    @Override
+    public JumpLink getLink(final int index) {
+        int link = field(index, LINK);
+        return link == NONE ? null : readLink(link);
+    }
+
+    @Override
+    public int getOutLinkCount(final int index) {
+        return field(index, OUT_LINK_COUNT);
+    }
+
+    @Override
+    public JumpLink getOutLink(final int index, final int k) {
+        return readLink(outLinkRefs.get((long) field(index, OUT_LINK_START)
+                + Objects.checkIndex(k, getOutLinkCount(index))));
+    }
+
+    @Override
+    public boolean isTruncated(final int index) {
+        return field(index, TRUNCATED) != 0;
+    }
+
+    @Override
+    public int getIterationCount(final int index) {
+        return field(index, ITERATION_COUNT);
+    }
+
+    @Override
+    public int getIterationNode(final int index, final int k) {
+        return iterations.get((long) field(index, ITERATION_START)
+                + Objects.checkIndex(k, getIterationCount(index)));
+    }
+
+    private Range readRange(final MappedInts pool, final long offset) {
+        return Range.range(pool.get(offset), pool.get(offset + 1), pool.get(offset + 2), pool.get(offset + 3));
+    }
+
+    private JumpLink readLink(final int ref) {
+        long offset = (long) ref * TraceNodeTable.LINK_WIDTH;
+        int file = linkPool.get(offset + TraceNodeTable.RANGE_WIDTH);
+        return new JumpLink(readRange(linkPool, offset), file == NONE ? null : files[file]);
+    }
+
+    /**
+     * A section of ints mapped in chunks. The chunks are a power of two of
+     * ints, so no int spans two chunks and the chunk of an index is found by a shift.
+     */
+    private static final class MappedInts {
+
+        /**
+         * The mapped chunks, all but the last one holding 1 &lt;&lt; {@link #shift} ints.
+         */
+        private final IntBuffer[] chunks;
+
+        /**
+         * The base 2 logarithm of the number of ints per chunk.
+         */
+        private final int shift;
+
+        private MappedInts(final IntBuffer[] chunks, final int shift) {
+            this.chunks = chunks;
+            this.shift = shift;
+        }
+
+        static MappedInts map(final FileChannel channel, final long from, final long to,
+                              final int chunkBytes) throws IOException {
+            if (from < 0 || from > to || to > channel.size()) {
+                throw new IOException("Invalid trace store section [" + from + ", " + to + ").");
+            }
+            long length = (to - from) / Integer.BYTES * Integer.BYTES;
+            IntBuffer[] chunks = new IntBuffer[Math.toIntExact((length + chunkBytes - 1) / chunkBytes)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = from + (long) i * chunkBytes;
+                long chunkLength = Math.min(chunkBytes, from + length - start);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, chunkLength).asIntBuffer();
+            }
+            return new MappedInts(chunks, Integer.numberOfTrailingZeros(chunkBytes / Integer.BYTES));
+        }
+
+        int get(final long index) {
+            return chunks[Math.toIntExact(index >>> shift)].get((int) (index & ((1 << shift) - 1)));
+        }
+    }
+}
@@ -66,6 +66,13 @@ public class TraceNode {
      */
     private String nodeMethodName; // NEW FIELD
 
+    /**
+     * True if the trace ended while this node was executing, e.g. because the
+     * traced program was killed for exceeding a limit. Null otherwise, so the
+     * field only appears in the JSON of cut off nodes.
+     */
+    private Boolean truncated;
+
     /**
      * Constructs a new TraceNode with a specified parent and trace ID.
      *
@@ -169,6 +176,19 @@ public class TraceNode {
     public Integer getIteration() {
         return iteration;
     }
+
+    /**
+     * @return true if the trace ended while this node was executing, so its
+     *         ranges and children only cover the part executed until then.
+     */
+    public boolean isTruncated() {
+        return truncated != null && truncated;
+    }
+
+    public void setTruncated(final boolean truncated) {
+        this.truncated = truncated ? Boolean.TRUE : null;
+    }
+
     public String getUniqueTraceId() {
         return uniqueTraceId;
     }
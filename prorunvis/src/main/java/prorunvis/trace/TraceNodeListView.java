@@ -0,0 +1,32 @@
+package prorunvis.trace;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * The list view returned by {@link TraceNodeSource#asList()}.
+ */
+final class TraceNodeListView extends AbstractList<TraceNode> implements RandomAccess {
+
+    /**
+     * The source the nodes of this view are created from.
+     */
+    private final TraceNodeSource source;
+
+    /**
+     * @param source the source the nodes of this view are created from.
+     */
+    TraceNodeListView(final TraceNodeSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public TraceNode get(final int index) {
+        return source.getNode(index);
+    }
+
+    @Override
+    public int size() {
+        return source.size();
+    }
+}
@@ -0,0 +1,183 @@
+package prorunvis.trace;
+
+import com.github.javaparser.Range;
+import prorunvis.trace.process.JumpLink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Provides random access to the properties of the nodes of a processed trace
+ * without requiring a {@link TraceNode} object per node. Nodes are addressed by
+ * their index in the node list produced by {@link prorunvis.trace.process.TraceProcessor}.
+ */
+public interface TraceNodeSource {
+
+    /**
+     * The value returned for absent indices, e.g. the parent of the root.
+     */
+    int NONE = -1;
+
+    /**
+     * @return the number of nodes.
+     */
+    int size();
+
+    /**
+     * @param index the index of a node.
+     * @return the index of the node's parent, or {@link #NONE} for the root.
+     */
+    int getParent(int index);
+
+    /**
+     * @param index the index of a node.
+     * @return the trace id of the node, or {@link #NONE} for the root.
+     */
+    int getTraceId(int index);
+
+    /**
+     * @param index the index of a node.
+     * @return the iteration of the node, or {@link #NONE} if it is no loop iteration.
+     */
+    int getIteration(int index);
+
+    /**
+     * @param index the index of a node.
+     * @return the out index of the node.
+     */
+    int getOutIndex(int index);
+
+    /**
+     * @param index the index of a node.
+     * @return the type of the node, e.g. "Function".
+     */
+    String getNodeType(int index);
+
+    /**
+     * @param index the index of a node.
+     * @return the method name of the node, or null if it is no function.
+     */
+    String getNodeMethodName(int index);
+
+    /**
+     * @param index the index of a node.
+     * @return the number of children of the node.
+     */
+    int getChildCount(int index);
+
+    /**
+     * @param index the index of a node.
+     * @param k     the position of the child, starting at 0.
+     * @return the index of the k-th child of the node.
+     */
+    int getChild(int index, int k);
+
+    /**
+     * @param index the index of a node.
+     * @return the number of ranges of the node.
+     */
+    int getRangeCount(int index);
+
+    /**
+     * @param index the index of a node.
+     * @param k     the position of the range, starting at 0.
+     * @return the k-th range of the node.
+     */
+    Range getRange(int index, int k);
+
+    /**
+     * @param index the index of a node.
+     * @return the link of the node, or null if it has none.
+     */
+    JumpLink getLink(int index);
+
+    /**
+     * @param index the index of a node.
+     * @return the number of outLinks of the node.
+     */
+    int getOutLinkCount(int index);
+
+    /**
+     * @param index the index of a node.
+     * @param k     the position of the outLink, starting at 0.
+     * @return the k-th outLink of the node.
+     */
+    JumpLink getOutLink(int index, int k);
+
+    /**
+     * @param index the index of a node.
+     * @return true if the trace ended while the node was executing.
+     */
+    boolean isTruncated(int index);
+
+    /**
+     * @param index the index of a node.
+     * @return the number of iterations of the loop the node is an iteration of,
+     *         or 0 if it is no loop iteration.
+     */
+    int getIterationCount(int index);
+
+    /**
+     * @param index the index of a loop iteration.
+     * @param k     the position of the iteration, starting at 0 for iteration 1.
+     * @return the index of the k-th iteration of the same loop.
+     */
+    int getIterationNode(int index, int k);
+
+    /**
+     * Creates a {@link TraceNode} holding the information stored for one node.
+     * The returned node is independent of this source.
+     *
+     * @param index the index of the node.
+     * @return a new node equal to the one originally produced by the processor.
+     */
+    default TraceNode getNode(final int index) {
+        Objects.checkIndex(index, size());
+        boolean isRoot = getParent(index) == NONE;
+        int traceId = getTraceId(index);
+        int iteration = getIteration(index);
+        TraceNode node = new TraceNode(isRoot ? null : getParent(index),
+                isRoot ? "root" : String.valueOf(traceId));
+
+        List<Range> ranges = new ArrayList<>(getRangeCount(index));
+        for (int k = 0; k < getRangeCount(index); k++) {
+            ranges.add(getRange(index, k));
+        }
+        node.setRanges(ranges);
+
+        List<Integer> childIndices = new ArrayList<>(getChildCount(index));
+        for (int k = 0; k < getChildCount(index); k++) {
+            childIndices.add(getChild(index, k));
+        }
+        node.setChildrenIndices(childIndices);
+
+        node.setLink(getLink(index));
+        for (int k = 0; k < getOutLinkCount(index); k++) {
+            node.addOutLink(getOutLink(index, k));
+        }
+        node.setOut(getOutIndex(index));
+        node.setNodeType(getNodeType(index));
+        node.setNodeMethodName(getNodeMethodName(index));
+        node.setTruncated(isTruncated(index));
+
+        if (iteration != NONE) {
+            node.setIteration(iteration);
+        }
+        if (!isRoot) {
+            node.setUniqueTraceId(iteration > 0 ? traceId + "_iter" + iteration : String.valueOf(traceId));
+        }
+        return node;
+    }
+
+    /**
+     * Returns an unmodifiable list view of this source. Every access to an element
+     * creates a new {@link TraceNode} using {@link #getNode(int)}, so iterating the
+     * view only ever holds a single node in memory.
+     *
+     * @return a list view of the nodes.
+     */
+    default List<TraceNode> asList() {
+        return new TraceNodeListView(this);
+    }
+}
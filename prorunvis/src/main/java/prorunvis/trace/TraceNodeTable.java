@@ -0,0 +1,576 @@
+package prorunvis.trace;
+
+import com.github.javaparser.Range;
+import prorunvis.trace.process.JumpLink;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A compact, column oriented representation of a list of {@link TraceNode} objects.
+ * Every property of a node is stored in a primitive array indexed by the node's
+ * position in the list. Variable length properties (children, ranges, outLinks)
+ * are stored in compressed sparse row format, i.e. an offset array of size
+ * <code>size() + 1</code> and one shared array of values. Ranges and links are
+ * stored once in a pool and referenced by index, as most of them are shared
+ * between nodes with the same trace id.
+ * <p>
+ * The table also indexes the iterations of every loop, i.e. the children of a
+ * node which have an iteration and the same trace id, so any iteration of a loop
+ * can be found without scanning the children of the loop's parent.
+ * <p>
+ * Code expecting {@link TraceNode} objects can use {@link #asList()}, which
+ * creates a node only when it is accessed. A table can be written to disk and
+ * mapped back into memory using {@link MappedTraceNodeStore}.
+ */
+public final class TraceNodeTable implements TraceNodeSource {
+
+    /**
+     * The number of ints used to store a range in {@link #rangePool}.
+     */
+    static final int RANGE_WIDTH = 4;
+
+    /**
+     * The number of ints used to store a link in {@link #linkPool}.
+     */
+    static final int LINK_WIDTH = 5;
+
+    /**
+     * The number of nodes in this table.
+     */
+    private final int size;
+
+    /**
+     * The index of the parent of every node, {@link #NONE} for the root.
+     */
+    private final int[] parent;
+
+    /**
+     * The trace id of every node, {@link #NONE} for the root.
+     */
+    private final int[] traceId;
+
+    /**
+     * The iteration of every node, {@link #NONE} for nodes which are no loop iteration.
+     */
+    private final int[] iteration;
+
+    /**
+     * The out index of every node.
+     */
+    private final int[] outIndex;
+
+    /**
+     * Whether the trace ended while a node was executing.
+     */
+    private final boolean[] truncated;
+
+    /**
+     * The index of every node's type in {@link #types}.
+     */
+    private final int[] type;
+
+    /**
+     * The index of every node's method name in {@link #methods}, {@link #NONE} if it has none.
+     */
+    private final int[] method;
+
+    /**
+     * The index of every node's link in the link pool, {@link #NONE} if it has none.
+     */
+    private final int[] link;
+
+    /**
+     * The children of node i are <code>children[childOffset[i]]</code>
+     * up to <code>children[childOffset[i + 1] - 1]</code>.
+     */
+    private final int[] childOffset;
+
+    /**
+     * The indices of the children of all nodes.
+     */
+    private final int[] children;
+
+    /**
+     * The ranges of node i are referenced by <code>rangeRefs[rangeOffset[i]]</code>
+     * up to <code>rangeRefs[rangeOffset[i + 1] - 1]</code>.
+     */
+    private final int[] rangeOffset;
+
+    /**
+     * The indices of the ranges of all nodes in the range pool.
+     */
+    private final int[] rangeRefs;
+
+    /**
+     * The outLinks of node i are referenced by <code>outLinkRefs[outLinkOffset[i]]</code>
+     * up to <code>outLinkRefs[outLinkOffset[i + 1] - 1]</code>.
+     */
+    private final int[] outLinkOffset;
+
+    /**
+     * The indices of the outLinks of all nodes in the link pool.
+     */
+    private final int[] outLinkRefs;
+
+    /**
+     * The position in {@link #iterations} of the first iteration of the loop
+     * a node is an iteration of.
+     */
+    private final int[] iterationStart;
+
+    /**
+     * The number of iterations of the loop a node is an iteration of, 0 for
+     * nodes which are no loop iteration.
+     */
+    private final int[] iterationCount;
+
+    /**
+     * The indices of the iterations of all loops, grouped by loop and ordered by iteration.
+     */
+    private final int[] iterations;
+
+    /**
+     * All distinct ranges as <code>beginLine, beginColumn, endLine, endColumn</code>.
+     */
+    private final int[] rangePool;
+
+    /**
+     * All distinct links as <code>beginLine, beginColumn, endLine, endColumn, file</code>,
+     * where file is an index into {@link #files} or {@link #NONE}.
+     */
+    private final int[] linkPool;
+
+    /**
+     * The distinct node types.
+     */
+    private final String[] types;
+
+    /**
+     * The distinct method names.
+     */
+    private final String[] methods;
+
+    /**
+     * The distinct file paths of all links.
+     */
+    private final String[] files;
+
+    private TraceNodeTable(final Builder builder) {
+        this.size = builder.size;
+        this.parent = builder.parent;
+        this.traceId = builder.traceId;
+        this.iteration = builder.iteration;
+        this.outIndex = builder.outIndex;
+        this.truncated = builder.truncated;
+        this.type = builder.type;
+        this.method = builder.method;
+        this.link = builder.link;
+        this.childOffset = builder.childOffset;
+        this.children = builder.children.toArray();
+        this.rangeOffset = builder.rangeOffset;
+        this.rangeRefs = builder.rangeRefs.toArray();
+        this.outLinkOffset = builder.outLinkOffset;
+        this.outLinkRefs = builder.outLinkRefs.toArray();
+        this.iterationStart = builder.iterationStart;
+        this.iterationCount = builder.iterationCount;
+        this.iterations = builder.iterations.toArray();
+        this.rangePool = builder.rangePool.toArray();
+        this.linkPool = builder.linkPool.toArray();
+        this.types = builder.types.toArray(new String[0]);
+        this.methods = builder.methods.toArray(new String[0]);
+        this.files = builder.files.toArray(new String[0]);
+    }
+
+    /**
+     * Creates a table holding the same information as a list of nodes.
+     *
+     * @param nodes the nodes to convert, as provided by
+     *              {@link prorunvis.trace.process.TraceProcessor#getNodeList()}.
+     * @return the table representing the nodes.
+     */
+    public static TraceNodeTable of(final List<TraceNode> nodes) {
+        Builder builder = new Builder(nodes.size());
+        for (TraceNode node : nodes) {
+            builder.add(node);
+        }
+        builder.indexIterations();
+        return new TraceNodeTable(builder);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getParent(final int index) {
+        return parent[index];
+    }
+
+    @Override
+    public int getTraceId(final int index) {
+        return traceId[index];
+    }
+
+    @Override
+    public int getIteration(final int index) {
+        return iteration[index];
+    }
+
+    @Override
+    public int getOutIndex(final int index) {
+        return outIndex[index];
+    }
+
+    @Override
+    public String getNodeType(final int index) {
+        return types[type[index]];
+    }
+
+    @Override
+    public String getNodeMethodName(final int index) {
+        return method[index] == NONE ? null : methods[method[index]];
+    }
+
+    @Override
+    public int getChildCount(final int index) {
+        return childOffset[index + 1] - childOffset[index];
+    }
+
+    @Override
+    public int getChild(final int index, final int k) {
+        return children[childOffset[index] + Objects.checkIndex(k, getChildCount(index))];
+    }
+
+    @Override
+    public int getRangeCount(final int index) {
+        return rangeOffset[index + 1] - rangeOffset[index];
+    }
+
+    @Override
+    public Range getRange(final int index, final int k) {
+        int ref = rangeRefs[rangeOffset[index] + Objects.checkIndex(k, getRangeCount(index))];
+        return readRange(rangePool, ref * RANGE_WIDTH);
+    }
+
+    @Override
+    public JumpLink getLink(final int index) {
+        return link[index] == NONE ? null : readLink(link[index]);
+    }
+
+    @Override
+    public int getOutLinkCount(final int index) {
+        return outLinkOffset[index + 1] - outLinkOffset[index];
+    }
+
+    @Override
+    public JumpLink getOutLink(final int index, final int k) {
+        return readLink(outLinkRefs[outLinkOffset[index] + Objects.checkIndex(k, getOutLinkCount(index))]);
+    }
+
+    @Override
+    public boolean isTruncated(final int index) {
+        return truncated[index];
+    }
+
+    @Override
+    public int getIterationCount(final int index) {
+        return iterationCount[index];
+    }
+
+    @Override
+    public int getIterationNode(final int index, final int k) {
+        return iterations[iterationStart[index] + Objects.checkIndex(k, getIterationCount(index))];
+    }
+
+    int[] parentColumn() {
+        return parent;
+    }
+
+    int[] traceIdColumn() {
+        return traceId;
+    }
+
+    int[] iterationColumn() {
+        return iteration;
+    }
+
+    int[] outIndexColumn() {
+        return outIndex;
+    }
+
+    boolean[] truncatedColumn() {
+        return truncated;
+    }
+
+    int[] typeColumn() {
+        return type;
+    }
+
+    int[] methodColumn() {
+        return method;
+    }
+
+    int[] linkColumn() {
+        return link;
+    }
+
+    int[] childOffsets() {
+        return childOffset;
+    }
+
+    int[] childValues() {
+        return children;
+    }
+
+    int[] rangeOffsets() {
+        return rangeOffset;
+    }
+
+    int[] rangeValues() {
+        return rangeRefs;
+    }
+
+    int[] outLinkOffsets() {
+        return outLinkOffset;
+    }
+
+    int[] outLinkValues() {
+        return outLinkRefs;
+    }
+
+    int[] iterationStartColumn() {
+        return iterationStart;
+    }
+
+    int[] iterationCountColumn() {
+        return iterationCount;
+    }
+
+    int[] iterationValues() {
+        return iterations;
+    }
+
+    int[] rangePool() {
+        return rangePool;
+    }
+
+    int[] linkPool() {
+        return linkPool;
+    }
+
+    String[] typeTable() {
+        return types;
+    }
+
+    String[] methodTable() {
+        return methods;
+    }
+
+    String[] fileTable() {
+        return files;
+    }
+
+    private Range readRange(final int[] pool, final int offset) {
+        return Range.range(pool[offset], pool[offset + 1], pool[offset + 2], pool[offset + 3]);
+    }
+
+    private JumpLink readLink(final int ref) {
+        int offset = ref * LINK_WIDTH;
+        int file = linkPool[offset + RANGE_WIDTH];
+        return new JumpLink(readRange(linkPool, offset), file == NONE ? null : files[file]);
+    }
+
+    /**
+     * A growable array of primitive ints.
+     */
+    private static final class IntBuffer {
+
+        /**
+         * The stored values, only valid up to {@link #length}.
+         */
+        private int[] values = new int[16];
+
+        /**
+         * The number of stored values.
+         */
+        private int length;
+
+        void add(final int value) {
+            if (length == values.length) {
+                values = Arrays.copyOf(values, length * 2);
+            }
+            values[length++] = value;
+        }
+
+        int length() {
+            return length;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, length);
+        }
+    }
+
+    /**
+     * The key identifying a link in the link pool.
+     *
+     * @param range the range of the link.
+     * @param file  the target file of the link.
+     */
+    private record LinkKey(Range range, String file) {
+    }
+
+    /**
+     * Collects the columns of a table node by node.
+     */
+    private static final class Builder {
+
+        private final int[] parent;
+        private final int[] traceId;
+        private final int[] iteration;
+        private final int[] outIndex;
+        private final boolean[] truncated;
+        private final int[] type;
+        private final int[] method;
+        private final int[] link;
+        private final int[] childOffset;
+        private final int[] rangeOffset;
+        private final int[] outLinkOffset;
+        private final int[] iterationStart;
+        private final int[] iterationCount;
+        private final IntBuffer children = new IntBuffer();
+        private final IntBuffer rangeRefs = new IntBuffer();
+        private final IntBuffer outLinkRefs = new IntBuffer();
+        private final IntBuffer iterations = new IntBuffer();
+        private final IntBuffer rangePool = new IntBuffer();
+        private final IntBuffer linkPool = new IntBuffer();
+        private final List<String> types = new ArrayList<>();
+        private final List<String> methods = new ArrayList<>();
+        private final List<String> files = new ArrayList<>();
+        private final Map<Range, Integer> rangeIndices = new HashMap<>();
+        private final Map<LinkKey, Integer> linkIndices = new HashMap<>();
+        private final Map<String, Integer> typeIndices = new HashMap<>();
+        private final Map<String, Integer> methodIndices = new HashMap<>();
+        private final Map<String, Integer> fileIndices = new HashMap<>();
+        private int size;
+
+        Builder(final int capacity) {
+            parent = new int[capacity];
+            traceId = new int[capacity];
+            iteration = new int[capacity];
+            outIndex = new int[capacity];
+            truncated = new boolean[capacity];
+            type = new int[capacity];
+            method = new int[capacity];
+            link = new int[capacity];
+            childOffset = new int[capacity + 1];
+            rangeOffset = new int[capacity + 1];
+            outLinkOffset = new int[capacity + 1];
+            iterationStart = new int[capacity];
+            iterationCount = new int[capacity];
+        }
+
+        void add(final TraceNode node) {
+            int i = size++;
+            boolean isRoot = node.getParentIndex() == null;
+            parent[i] = isRoot ? NONE : node.getParentIndex();
+            traceId[i] = isRoot ? NONE : Integer.parseInt(node.getTraceID());
+            iteration[i] = node.getIteration() == null ? NONE : node.getIteration();
+            outIndex[i] = node.getOutIndex();
+            truncated[i] = node.isTruncated();
+            type[i] = intern(node.getNodeType(), types, typeIndices);
+            method[i] = node.getNodeMethodName() == null
+                    ? NONE : intern(node.getNodeMethodName(), methods, methodIndices);
+            link[i] = node.getLink() == null ? NONE : linkIndex(node.getLink());
+
+            node.getChildrenIndices().forEach(children::add);
+            childOffset[i + 1] = children.length();
+
+            for (Range range : node.getRanges()) {
+                rangeRefs.add(rangeIndex(range));
+            }
+            rangeOffset[i + 1] = rangeRefs.length();
+
+            for (JumpLink outLink : node.getOutLinks()) {
+                outLinkRefs.add(linkIndex(outLink));
+            }
+            outLinkOffset[i + 1] = outLinkRefs.length();
+        }
+
+        /**
+         * Groups the loop iterations among the children of every node by trace id,
+         * once all nodes are added.
+         */
+        void indexIterations() {
+            int[] childValues = children.toArray();
+            Map<Integer, IntBuffer> loops = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                loops.clear();
+                for (int c = childOffset[i]; c < childOffset[i + 1]; c++) {
+                    int child = childValues[c];
+                    if (iteration[child] != NONE) {
+                        loops.computeIfAbsent(traceId[child], id -> new IntBuffer()).add(child);
+                    }
+                }
+                for (IntBuffer loop : loops.values()) {
+                    int start = iterations.length();
+                    int[] members = loop.toArray();
+                    for (int member : members) {
+                        iterations.add(member);
+                        iterationStart[member] = start;
+                        iterationCount[member] = members.length;
+                    }
+                }
+            }
+        }
+
+        private int rangeIndex(final Range range) {
+            // Range.equals compares classes, so subclasses like JumpLink are looked up as plain ranges
+            Range key = (range.getClass() == Range.class) ? range : new Range(range.begin, range.end);
+            Integer index = rangeIndices.get(key);
+            if (index == null) {
+                index = rangeIndices.size();
+                addPositions(rangePool, range);
+                rangeIndices.put(key, index);
+            }
+            return index;
+        }
+
+        private int linkIndex(final JumpLink jumpLink) {
+            LinkKey key = new LinkKey(new Range(jumpLink.begin, jumpLink.end), jumpLink.getFilepath());
+            Integer index = linkIndices.get(key);
+            if (index == null) {
+                index = linkIndices.size();
+                addPositions(linkPool, jumpLink);
+                linkPool.add(jumpLink.getFilepath() == null
+                        ? NONE : intern(jumpLink.getFilepath(), files, fileIndices));
+                linkIndices.put(key, index);
+            }
+            return index;
+        }
+
+        private static void addPositions(final IntBuffer pool, final Range range) {
+            pool.add(range.begin.line);
+            pool.add(range.begin.column);
+            pool.add(range.end.line);
+            pool.add(range.end.column);
+        }
+
+        private static int intern(final String value, final List<String> table, final Map<String, Integer> indices) {
+            Integer index = indices.get(value);
+            if (index == null) {
+                index = table.size();
+                table.add(value);
+                indices.put(value, index);
+            }
+            return index;
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package prorunvis.trace;
 
 import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.nodeTypes.NodeWithStatements;
 import com.github.javaparser.ast.stmt.*;
 import com.github.javaparser.ast.visitor.ModifierVisitor;
 
@@ -12,9 +14,38 @@ import java.util.Map;
 /**
  * This Visitor extends the standard ModifierVisitor and overwrites the visit methods for each codetype being traced
  * in order to instrument them with the needed trace call.
+ * <p>
+ * A visitor which does not instrument only maps the ids to the nodes, as they
+ * would be assigned by instrumenting the code, which leaves the code unchanged.
  */
 public class TraceVisitor extends ModifierVisitor<Map<Integer, Node>> {
 
+    /**
+     * Whether trace calls are added to the visited code.
+     */
+    private final boolean instrument;
+
+    /**
+     * The compilation unit holding the storage of the visited code, which is
+     * shared as parent by the map entries if the code is not instrumented.
+     */
+    private CompilationUnit storageUnit;
+
+    /**
+     * Creates a visitor instrumenting the visited code.
+     */
+    public TraceVisitor() {
+        this(true);
+    }
+
+    /**
+     * @param instrument whether trace calls are added to the visited code,
+     *                   otherwise the ids are only mapped to the nodes.
+     */
+    public TraceVisitor(final boolean instrument) {
+        this.instrument = instrument;
+    }
+
     /**
      * Add a trace call to every try statement. Trace call is added as the first line of the try statement body and to
      * the first line of the body of every corresponding catch statement.
@@ -27,18 +58,18 @@ public class TraceVisitor extends ModifierVisitor<Map<Integer, Node>> {
 
         int id = map.size();
         createMapEntry(id, map, stmt);
-        stmt.getTryBlock().addStatement(0, traceEntryCreator(id));
+        addTraceEntry(stmt.getTryBlock(), id);
 
         for (CatchClause clause : stmt.getCatchClauses()) {
             id = map.size();
             createMapEntry(id, map, clause);
-            clause.getBody().addStatement(0, traceEntryCreator(id));
+            addTraceEntry(clause.getBody(), id);
         }
 
         if (stmt.getFinallyBlock().isPresent()) {
             id = map.size();
             createMapEntry(id, map, stmt.getFinallyBlock().get());
-            stmt.getFinallyBlock().get().addStatement(0, traceEntryCreator(id));
+            addTraceEntry(stmt.getFinallyBlock().get(), id);
         }
 
         super.visit(stmt, map);
@@ -57,7 +88,7 @@ public class TraceVisitor extends ModifierVisitor<Map<Integer, Node>> {
 
         int id = map.size();
         createMapEntry(id, map, stmt);
-        stmt.getBody().asBlockStmt().addStatement(0, traceEntryCreator(id));
+        addTraceEntry(stmt.getBody().asBlockStmt(), id);
         super.visit(stmt, map);
         return stmt;
     }
@@ -74,7 +105,7 @@ public class TraceVisitor extends ModifierVisitor<Map<Integer, Node>> {
 
         int id = map.size();
         createMapEntry(id, map, stmt);
-        stmt.getBody().asBlockStmt().addStatement(0, traceEntryCreator(id));
+        addTraceEntry(stmt.getBody().asBlockStmt(), id);
         super.visit(stmt, map);
         return stmt;
     }
@@ -93,7 +124,7 @@ public class TraceVisitor extends ModifierVisitor<Map<Integer, Node>> {
 
         int id = map.size();
         createMapEntry(id, map, stmt.getThenStmt());
-        stmt.getThenStmt().asBlockStmt().addStatement(0, traceEntryCreator(id));
+        addTraceEntry(stmt.getThenStmt().asBlockStmt(), id);
 
         //check if stmt has an else-block
         if (stmt.getElseStmt().isPresent()) {
@@ -102,7 +133,7 @@ public class TraceVisitor extends ModifierVisitor<Map<Integer, Node>> {
             //if-stmt visitor separately
             if (!stmt.getElseStmt().get().isIfStmt()) {
                 createMapEntry(id, map, stmt.getElseStmt().get());
-                stmt.getElseStmt().get().asBlockStmt().addStatement(0, traceEntryCreator(id));
+                addTraceEntry(stmt.getElseStmt().get().asBlockStmt(), id);
             }
         }
 
@@ -124,7 +155,7 @@ public class TraceVisitor extends ModifierVisitor<Map<Integer, Node>> {
         if (decl.getBody().isPresent()) {
             int id = map.size();
             createMapEntry(id, map, decl);
-            decl.getBody().get().addStatement(0, traceEntryCreator(id));
+            addTraceEntry(decl.getBody().get(), id);
         }
 
         super.visit(decl, map);
@@ -145,7 +176,7 @@ public class TraceVisitor extends ModifierVisitor<Map<Integer, Node>> {
         for (SwitchEntry entry : stmt.getEntries()) {
             int id = map.size();
             createMapEntry(id, map, entry);
-            entry.addStatement(0, traceEntryCreator(id));
+            addTraceEntry(entry, id);
         }
 
         super.visit(stmt, map);
@@ -164,7 +195,7 @@ public class TraceVisitor extends ModifierVisitor<Map<Integer, Node>> {
 
         int id = map.size();
         createMapEntry(id, map, stmt);
-        stmt.getBody().asBlockStmt().addStatement(0, traceEntryCreator(id));
+        addTraceEntry(stmt.getBody().asBlockStmt(), id);
 
         super.visit(stmt, map);
         return stmt;
@@ -181,8 +212,23 @@ public class TraceVisitor extends ModifierVisitor<Map<Integer, Node>> {
         return StaticJavaParser.parseStatement("prorunvis.Trace.next_elem(" + id + ");");
     }
 
+    /**
+     * Adds a trace call as the first statement of the given body, if the code is instrumented.
+     *
+     * @param body the body to add the trace call to
+     * @param id   the current id to be printed
+     */
+    private void addTraceEntry(final NodeWithStatements<?> body, final int id) {
+        if (instrument) {
+            body.addStatement(0, traceEntryCreator(id));
+        }
+    }
+
     /**
      * Creates a map entry with a clone of the given node while preserving its range.
+     * As the code is not changed if it is not instrumented, the entries then share
+     * a single compilation unit holding only the storage, rather than each getting
+     * a clone of the whole unit.
      *
      * @param id   the key to map
      * @param map  the map in which to put the entry
@@ -190,7 +236,16 @@ public class TraceVisitor extends ModifierVisitor<Map<Integer, Node>> {
      */
     private void createMapEntry(final int id, final Map<Integer, Node> map, final Node node) {
         Node entry = node.clone().setRange(node.getRange().get());
-        entry.setParentNode(node.findCompilationUnit().get().clone());
+        CompilationUnit cu = node.findCompilationUnit().get();
+        if (instrument) {
+            entry.setParentNode(cu.clone());
+        } else {
+            if (storageUnit == null) {
+                storageUnit = new CompilationUnit();
+                cu.getStorage().ifPresent(storage -> storageUnit.setStorage(storage.getPath(), storage.getEncoding()));
+            }
+            entry.setParentNode(storageUnit);
+        }
         map.put(id, entry);
     }
 }
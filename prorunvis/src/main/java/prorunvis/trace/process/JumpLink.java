@@ -11,7 +11,7 @@ public class JumpLink extends Range {
 
     /**
      * A string representation of the relative path
-     * to the file this link object points to.
+     * to the file this link object points to, using '/' as separator.
      */
     private final String filepath;
 
@@ -20,10 +20,18 @@ public class JumpLink extends Range {
      *
      * @param range    The range of code to use as link.
      * @param filepath The relative path to the target file as String.
+     *                 Windows separators are replaced with '/'.
      */
     public JumpLink(final Range range, final String filepath) {
         super(range.begin, range.end);
-        this.filepath = filepath;
+        this.filepath = (filepath == null) ? null : filepath.replace('\\', '/');
+    }
+
+    /**
+     * @return the relative path to the target file, or null if the link points into the same file.
+     */
+    public String getFilepath() {
+        return filepath;
     }
 
     /**
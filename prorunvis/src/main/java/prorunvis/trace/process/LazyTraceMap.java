@@ -0,0 +1,154 @@
+package prorunvis.trace.process;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import prorunvis.instrument.Instrumenter;
+import prorunvis.instrument.Manifest;
+import prorunvis.instrument.TracedNode;
+import prorunvis.preprocess.Preprocessor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The map from trace ids to nodes used by the {@link TraceProcessor}, built from
+ * the {@link Manifest} of an instrumented project instead of parsing and
+ * instrumenting the whole project again. A source file is only parsed once one
+ * of its ids is looked up, so processing a trace parses just the files the
+ * traced program passed through, and none of them is instrumented.
+ * <p>
+ * Every loaded file has to be unchanged since it was instrumented, otherwise
+ * the ids of the trace would point to the wrong code; this is checked with the
+ * hashes and the nodes recorded in the manifest.
+ */
+public final class LazyTraceMap extends AbstractMap<Integer, Node> {
+
+    /**
+     * The manifest of the instrumented project.
+     */
+    private final Manifest manifest;
+
+    /**
+     * The folder of the original source files of the project.
+     */
+    private final Path rootDir;
+
+    /**
+     * The nodes of all files loaded so far, by their id.
+     */
+    private final Map<Integer, Node> nodes = new HashMap<>();
+
+    /**
+     * The indices of the files loaded so far.
+     */
+    private final BitSet loaded = new BitSet();
+
+    /**
+     * @param manifest the manifest written when the project was instrumented
+     * @param rootDir  the folder of the original source files of the project
+     */
+    public LazyTraceMap(final Manifest manifest, final Path rootDir) {
+        this.manifest = manifest;
+        this.rootDir = rootDir.toAbsolutePath();
+    }
+
+    /**
+     * Returns the node of a trace id, parsing the file holding it if it was not parsed yet.
+     *
+     * @throws IllegalStateException if the file changed since it was instrumented
+     * @throws UncheckedIOException  if the file cannot be read
+     */
+    @Override
+    public Node get(final Object key) {
+        if (!(key instanceof Integer id)) {
+            return null;
+        }
+        int index = manifest.fileIndexOf(id);
+        if (index < 0) {
+            return null;
+        }
+        if (!loaded.get(index)) {
+            load(index);
+        }
+        return nodes.get(id);
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return key instanceof Integer id && manifest.fileIndexOf(id) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return manifest.traceIds();
+    }
+
+    /**
+     * Loads all files of the project, which are parsed on a lookup otherwise.
+     */
+    @Override
+    public Set<Entry<Integer, Node>> entrySet() {
+        for (int index = loaded.nextClearBit(0); index < manifest.files().size();
+             index = loaded.nextClearBit(index + 1)) {
+            load(index);
+        }
+        return Collections.unmodifiableMap(nodes).entrySet();
+    }
+
+    /**
+     * @return the number of source files parsed so far
+     */
+    public int loadedFiles() {
+        return loaded.cardinality();
+    }
+
+    private void load(final int index) {
+        Manifest.SourceFile file = manifest.files().get(index);
+        Path path = rootDir.resolve(file.path());
+        byte[] content;
+        try {
+            content = Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the source file " + path, e);
+        }
+        if (!Manifest.hash(content).equals(file.hash())) {
+            throw new IllegalStateException("The source file " + file.path() + " changed since it was instrumented.");
+        }
+
+        // a parser is not thread-safe, so every file gets its own
+        ParseResult<CompilationUnit> result = new JavaParser().parse(new String(content, StandardCharsets.UTF_8));
+        CompilationUnit cu = result.getResult()
+                .orElseThrow(() -> new IllegalStateException("Cannot parse the source file " + file.path()));
+        cu.setStorage(path, StandardCharsets.UTF_8);
+        Preprocessor.run(cu);
+
+        Map<Integer, Node> fileNodes = new HashMap<>();
+        Instrumenter.collect(cu, fileNodes);
+        List<TracedNode> expected = file.nodes();
+        if (fileNodes.size() != expected.size()) {
+            throw new IllegalStateException("The source file " + file.path() + " has " + fileNodes.size()
+                    + " trace ids, but was instrumented with " + expected.size() + ".");
+        }
+        for (int id = 0; id < expected.size(); id++) {
+            Node node = fileNodes.get(id);
+            if (!TracedNode.of(node).equals(expected.get(id))) {
+                throw new IllegalStateException("The trace id " + (file.firstId() + id) + " of " + file.path()
+                        + " does not match the instrumented code.");
+            }
+            nodes.put(file.firstId() + id, node);
+        }
+        loaded.set(index);
+    }
+}
@@ -0,0 +1,108 @@
+package prorunvis.trace.process;
+
+import com.github.javaparser.Range;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A static dictionary holding the canonical ranges and link of every trace id,
+ * taken from the first {@link prorunvis.trace.TraceNode} executed for that id.
+ * As the ranges of a trace id are almost always the same for every execution,
+ * the nodes of repeated executions share the canonical list, and only nodes
+ * whose execution differed (e.g. because of an early exit) keep their own.
+ */
+public class RangeDictionary {
+
+    /**
+     * The canonical ranges of every trace id.
+     */
+    private final SortedMap<Integer, List<Range>> ranges;
+
+    /**
+     * The canonical link of every trace id which has a link.
+     */
+    private final SortedMap<Integer, JumpLink> links;
+
+    /**
+     * Constructs an empty dictionary.
+     */
+    public RangeDictionary() {
+        this.ranges = new TreeMap<>();
+        this.links = new TreeMap<>();
+    }
+
+    /**
+     * Returns the canonical list of ranges for a trace id if it is equal to the
+     * given ranges, otherwise the given ranges. If the trace id has no canonical
+     * ranges yet, an immutable copy of the given ranges becomes canonical.
+     *
+     * @param traceId    the trace id of the node the ranges belong to.
+     * @param nodeRanges the ranges executed by the node.
+     * @return the list the node should keep as its ranges.
+     */
+    public List<Range> intern(final int traceId, final List<Range> nodeRanges) {
+        List<Range> canonical = ranges.get(traceId);
+        if (canonical == null) {
+            canonical = List.copyOf(nodeRanges);
+            ranges.put(traceId, canonical);
+            return canonical;
+        }
+        return canonical.equals(nodeRanges) ? canonical : nodeRanges;
+    }
+
+    /**
+     * Sets the canonical link of a trace id, unless it already has one.
+     *
+     * @param traceId the trace id of the node the link belongs to.
+     * @param link    the link of the node, ignored if null.
+     */
+    public void putLinkIfAbsent(final int traceId, final JumpLink link) {
+        if (link != null) {
+            links.putIfAbsent(traceId, link);
+        }
+    }
+
+    /**
+     * Checks whether the given ranges are the canonical ranges of a trace id.
+     *
+     * @param traceId    the trace id to check.
+     * @param nodeRanges the ranges of a node with this trace id.
+     * @return true if the ranges do not need to be written for the node.
+     */
+    public boolean isCanonical(final int traceId, final List<Range> nodeRanges) {
+        List<Range> canonical = ranges.get(traceId);
+        return canonical != null && (canonical == nodeRanges || canonical.equals(nodeRanges));
+    }
+
+    /**
+     * Checks whether the given link is the canonical link of a trace id,
+     * comparing both range and target file.
+     *
+     * @param traceId the trace id to check.
+     * @param link    the link of a node with this trace id.
+     * @return true if the link does not need to be written for the node.
+     */
+    public boolean isCanonical(final int traceId, final JumpLink link) {
+        JumpLink canonical = links.get(traceId);
+        return canonical != null && link != null
+                && canonical.equals(link) && Objects.equals(canonical.getFilepath(), link.getFilepath());
+    }
+
+    /**
+     * @return the canonical ranges of all trace ids, ordered by trace id.
+     */
+    public SortedMap<Integer, List<Range>> getRanges() {
+        return Collections.unmodifiableSortedMap(ranges);
+    }
+
+    /**
+     * @return the canonical links of all trace ids, ordered by trace id.
+     */
+    public SortedMap<Integer, JumpLink> getLinks() {
+        return Collections.unmodifiableSortedMap(links);
+    }
+}
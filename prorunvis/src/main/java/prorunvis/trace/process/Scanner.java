@@ -1,61 +1,275 @@
 package prorunvis.trace.process;
 
-import java.io.*;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.*;
+import java.util.NoSuchElementException;
 
 /**
- * A Scanner used by {@link TraceProcessor} to convert a
- * trace file to a stack of trace id's for further
- * processing.
+ * A Scanner used by {@link TraceProcessor} to read the trace ids
+ * of a trace file as a forward-only stream of primitive ints.
+ * The file is read through a fixed size buffer, so the memory used
+ * by the scanner does not depend on the length of the trace.
+ * <p>
+ * A trace cut off before the traced program finished ends with the line
+ * {@link #TRUNCATED_MARKER}, which ends the token stream and is reported by
+ * {@link #isTruncated()}.
+ * <p>
+ * The number of bytes read so far can be queried from other threads to report
+ * progress, and reading stops with an {@link InterruptedIOException} once the
+ * reading thread is interrupted.
  */
-public class Scanner {
+public class Scanner implements Closeable {
 
     /**
-     * The stream of tokens from the trace file.
+     * The size of the buffer used for reading the trace file.
      */
-    private final Stack<Integer> tokens;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The line appended to a trace that was cut off, e.g. because the traced
+     * program was killed for exceeding a limit.
+     */
+    public static final String TRUNCATED_MARKER = "#truncated";
 
     /**
      * The path to the trace file read by this scanner.
      */
     private final Path pathToTrace;
 
+    /**
+     * The buffered stream of the trace file, null until {@link #open()} is called.
+     */
+    private InputStream input;
+
+    /**
+     * The size of the trace file in bytes, determined when it is opened.
+     */
+    private volatile long size;
+
+    /**
+     * The number of bytes read from the trace file, updated whenever the buffer is refilled.
+     */
+    private volatile long bytesRead;
+
+    /**
+     * The next token of the trace, only valid if {@link #hasLookahead} is true.
+     */
+    private int lookahead;
+
+    /**
+     * Whether {@link #lookahead} holds a token that has not been consumed yet.
+     */
+    private boolean hasLookahead;
+
+    /**
+     * Whether the end of the trace file has been reached.
+     */
+    private boolean endOfFile;
+
+    /**
+     * Whether the trace ended with the {@link #TRUNCATED_MARKER}.
+     */
+    private boolean truncated;
+
     /**
      * Constructs a scanner to read a token stream of trace ids.
      *
      * @param path The path to the trace file.
      */
     public Scanner(final String path) {
-        this.tokens = new Stack<>();
         this.pathToTrace = Paths.get(path);
     }
 
     /**
-     * Reads the file specified by {@link #pathToTrace} to {@link #tokens}
-     * in reverse order.
+     * Opens the file specified by {@link #pathToTrace} for reading.
      *
-     * @return a stack of Integers containing the trace id's with the top element
-     * being the first id in the trace
      * @throws IOException If the file does not exist or could not be
      *                     opened for other reasons.
      */
-    public Stack<Integer> readFile() throws IOException {
-
+    public void open() throws IOException {
         try {
-            File traceFile = pathToTrace.toFile();
-            BufferedReader reader = new BufferedReader(new FileReader(traceFile));
-            List<String> temp = new ArrayList<>(reader.lines().toList());
-            //reverse the list before pushing on the stack to get the correct order
-            Collections.reverse(temp);
-            temp.forEach(x -> tokens.push(Integer.parseInt(x)));
-            //close reader
-            reader.close();
-        } catch (FileNotFoundException e) {
+            size = Files.size(pathToTrace);
+            bytesRead = 0;
+            input = new BufferedInputStream(new ProgressInputStream(Files.newInputStream(pathToTrace)), BUFFER_SIZE);
+        } catch (NoSuchFileException e) {
             throw new IOException("Could not read file.", e);
         }
+        hasLookahead = false;
+        endOfFile = false;
+        truncated = false;
+    }
 
-        return tokens;
+    /**
+     * Checks whether there are tokens left in the trace.
+     *
+     * @return true if another call to {@link #next()} will succeed
+     */
+    public boolean hasNext() {
+        fill();
+        return hasLookahead;
+    }
+
+    /**
+     * Returns the next token without consuming it.
+     *
+     * @return the next trace id
+     * @throws NoSuchElementException if the end of the trace has been reached
+     */
+    public int peek() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No tokens left in trace.");
+        }
+        return lookahead;
+    }
+
+    /**
+     * Consumes and returns the next token.
+     *
+     * @return the next trace id
+     * @throws NoSuchElementException if the end of the trace has been reached
+     */
+    public int next() {
+        int token = peek();
+        hasLookahead = false;
+        return token;
+    }
+
+    /**
+     * @return true if the end of the trace has been reached and the trace
+     *         was cut off before the traced program finished.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return the size of the trace file in bytes, 0 before it is opened.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes read from the trace file so far, which is
+     *         ahead of the consumed tokens by at most the size of the buffer.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Closes the underlying file.
+     *
+     * @throws IOException If the file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (input != null) {
+            input.close();
+            input = null;
+        }
+    }
+
+    /**
+     * Reads the next token from the file into {@link #lookahead}
+     * if there is none pending. Tokens are unsigned decimal numbers
+     * separated by line breaks.
+     */
+    private void fill() {
+        if (hasLookahead || endOfFile) {
+            return;
+        }
+        if (input == null) {
+            throw new IllegalStateException("Scanner has not been opened.");
+        }
+
+        try {
+            int c = input.read();
+            while (c == '\n' || c == '\r' || c == ' ' || c == '\t') {
+                c = input.read();
+            }
+            if (c == -1) {
+                endOfFile = true;
+                return;
+            }
+            if (c == TRUNCATED_MARKER.charAt(0)) {
+                readMarker();
+                return;
+            }
+
+            int value = 0;
+            while (c >= '0' && c <= '9') {
+                value = Math.addExact(Math.multiplyExact(value, 10), c - '0');
+                c = input.read();
+            }
+            if (c != '\n' && c != '\r' && c != -1) {
+                throw new IOException("Malformed token in trace file: '" + (char) c + "'");
+            }
+            if (c == -1) {
+                endOfFile = true;
+            }
+
+            lookahead = value;
+            hasLookahead = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ArithmeticException e) {
+            throw new UncheckedIOException(new IOException("Trace id out of range.", e));
+        }
+    }
+
+    /**
+     * Reads the rest of a line starting with the first character of the
+     * {@link #TRUNCATED_MARKER}, which must be the marker and end the trace.
+     *
+     * @throws IOException If the line is no marker or followed by more tokens.
+     */
+    private void readMarker() throws IOException {
+        StringBuilder line = new StringBuilder().append(TRUNCATED_MARKER.charAt(0));
+        int c = input.read();
+        while (c != '\n' && c != '\r' && c != -1 && line.length() <= TRUNCATED_MARKER.length()) {
+            line.append((char) c);
+            c = input.read();
+        }
+        while (c == '\n' || c == '\r' || c == ' ' || c == '\t') {
+            c = input.read();
+        }
+        if (!line.toString().equals(TRUNCATED_MARKER) || c != -1) {
+            throw new IOException("Malformed marker in trace file: '" + line + "'");
+        }
+        truncated = true;
+        endOfFile = true;
+    }
+
+    /**
+     * The stream below the buffer, counting the bytes read for {@link #getBytesRead()}
+     * and checking for interruption on every refill of the buffer.
+     */
+    private final class ProgressInputStream extends FilterInputStream {
+
+        ProgressInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Reading the trace file was interrupted.");
+            }
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                bytesRead += n;
+            }
+            return n;
+        }
     }
 }
@@ -10,9 +10,11 @@ import com.github.javaparser.ast.nodeTypes.*;
 import com.github.javaparser.ast.stmt.*;
 import com.google.common.collect.Iterables;
 import prorunvis.trace.TraceNode;
+import prorunvis.trace.TraceNodeTable;
 import prorunvis.trace.TracedCode;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Stream;
@@ -25,37 +27,59 @@ public class TraceProcessor {
     private final List<TraceNode> nodeList;
     private final Map<Integer, Node> traceMap;
     private TraceNode current;
+    private int currentIndex;
     private Node nodeOfCurrent;
-    private final Scanner scanner;
-    private Stack<Integer> tokens;
+    private final Scanner tokens;
     private List<Range> methodCallRanges;
     private JumpPackage jumpPackage;
     private final Path rootDir;
+    private final RangeDictionary rangeDictionary;
+
+    /**
+     * Set once the tokens of a truncated trace are exhausted. From then on no
+     * further ranges are added, and every node still being processed is marked
+     * as truncated while the processing unwinds.
+     */
+    private boolean cutOff;
 
     public TraceProcessor(final Map<Integer, Node> trace, final String traceFilePath, final Path rootDir) {
-        this.nodeList = new LinkedList<>();
+        this.nodeList = new ArrayList<>();
         this.traceMap = trace;
-        this.scanner = new Scanner(traceFilePath);
+        this.tokens = new Scanner(traceFilePath);
         this.methodCallRanges = new ArrayList<>();
         this.rootDir = rootDir.toAbsolutePath();
+        this.rangeDictionary = new RangeDictionary();
     }
 
     public void start() throws IOException {
         try {
-            tokens = scanner.readFile();
+            tokens.open();
         } catch (IOException e) {
             throw new IOException("Could not read trace file.", e);
         }
-        createRoot();
+        try (tokens) {
+            createRoot();
+            collectLinks();
+        } catch (UncheckedIOException e) {
+            throw new IOException("Could not read trace file.", e.getCause());
+        }
     }
 
     private void createRoot() {
         TraceNode root = new TraceNode(null, "root");
         nodeList.add(root);
         current = root;
+        currentIndex = 0;
+
+        // A program cut off before entering main leaves only the root
+        if (!tokens.hasNext()) {
+            root.setTruncated(tokens.isTruncated());
+            return;
+        }
 
         // Add first node (main) as a child
         createNewTraceNode();
+        root.setTruncated(cutOff);
 
         // Set a default link for the main method
         TraceNode main = nodeList.get(current.getChildrenIndices().get(0));
@@ -67,8 +91,17 @@ public class TraceProcessor {
         main.setLink(link);
     }
 
+    private void collectLinks() {
+        for (TraceNode node : nodeList) {
+            if (node.getParentIndex() != null) {
+                rangeDictionary.putLinkIfAbsent(Integer.parseInt(node.getTraceID()), node.getLink());
+            }
+        }
+    }
+
     private boolean processChild() {
-        if (tokens.empty()) {
+        if (!tokens.hasNext()) {
+            cutOff = tokens.isTruncated();
             return false;
         }
 
@@ -91,19 +124,21 @@ public class TraceProcessor {
     }
 
     private void createNewTraceNode() {
-        int tokenValue = tokens.pop();
+        int tokenValue = tokens.next();
         String traceID = String.valueOf(tokenValue);
-        int parentIndex = nodeList.indexOf(current);
+        int parentIndex = currentIndex;
         TraceNode traceNode = new TraceNode(parentIndex, traceID);
 
+        int index = nodeList.size();
         nodeList.add(traceNode);
-        current.addChildIndex(nodeList.indexOf(traceNode));
+        current.addChildIndex(index);
 
         TraceNode savedCurrent = current;
         Node savedNodeOfCurrent = nodeOfCurrent;
         List<Range> savedMethodCallRanges = methodCallRanges;
 
         current = traceNode;
+        currentIndex = index;
         nodeOfCurrent = traceMap.get(tokenValue);
         methodCallRanges = new ArrayList<>();
 
@@ -130,6 +165,7 @@ public class TraceProcessor {
         fillRanges((getBlockStmt() == null)
                 ? nodeOfCurrent.getChildNodes()
                 : getBlockStmt().getChildNodes(), null);
+        traceNode.setTruncated(cutOff);
 
         // If node is a loop, set iteration
         if (nodeOfCurrent instanceof NodeWithBody<?>) {
@@ -162,7 +198,7 @@ public class TraceProcessor {
                 current.addOutLink(outLink);
             }
             if (nodeOfCurrent instanceof TryStmt) {
-                if (!tokens.empty()
+                if (tokens.hasNext()
                         && nodeOfCurrent.getRange().get().contains(traceMap.get(tokens.peek()).getRange().get())) {
                     nodeList.get(jumpPackage.getStart()).addOutLink(outLink);
                     nodeList.get(jumpPackage.getStart()).setOut(nodeList.size());
@@ -198,7 +234,11 @@ public class TraceProcessor {
             }
         }
 
-        current = nodeList.get(traceNode.getParentIndex());
+        // share the ranges with earlier executions of the same id if they are identical
+        traceNode.setRanges(rangeDictionary.intern(tokenValue, traceNode.getRanges()));
+
+        current = nodeList.get(parentIndex);
+        currentIndex = parentIndex;
         nodeOfCurrent = savedNodeOfCurrent;
         methodCallRanges = savedMethodCallRanges;
     }
@@ -264,6 +304,10 @@ public class TraceProcessor {
         boolean skipNext = false;
 
         for (int i = 0; i < childrenOfCurrent.size();) {
+            // statements after the end of a truncated trace were not executed
+            if (cutOff) {
+                return;
+            }
             Node currentNode = childrenOfCurrent.get(i);
 
             if (nextRangeToIgnore == null) {
@@ -273,6 +317,8 @@ public class TraceProcessor {
                             (traceMap.get(Integer.parseInt(nextChild.getTraceID())) instanceof MethodDeclaration)
                                     ? nextChild.getLink()
                                     : traceMap.get(Integer.parseInt(nextChild.getTraceID())).getRange().get();
+                } else if (cutOff) {
+                    return;
                 } else {
                     nextRangeToIgnore = new Range(nodeOfCurrent.getRange().get().end.nextLine(),
                             nodeOfCurrent.getRange().get().end.nextLine());
@@ -314,10 +360,12 @@ public class TraceProcessor {
         }
 
         if (nodeOfCurrent instanceof ForStmt forStmt) {
-            for (boolean cont = true; cont;) {
+            for (boolean cont = !cutOff; cont;) {
                 cont = processChild();
             }
-            forStmt.getUpdate().forEach(node -> current.addRange(node.getRange().get()));
+            if (!cutOff) {
+                forStmt.getUpdate().forEach(node -> current.addRange(node.getRange().get()));
+            }
         }
     }
 
@@ -356,25 +404,25 @@ public class TraceProcessor {
             jumpPackage = new JumpPackage(List.of(MethodDeclaration.class),
                     new Range(returnStmt.getBegin().get(),
                             returnStmt.getBegin().get().right("return".length())),
-                    nodeList.indexOf(current));
+                    currentIndex);
             return true;
         } else if (currentNode instanceof ContinueStmt continueStmt) {
             jumpPackage = new JumpPackage(List.of(ForStmt.class, WhileStmt.class,
                     DoStmt.class, ForEachStmt.class),
                     continueStmt.getRange().get(),
-                    nodeList.indexOf(current));
+                    currentIndex);
             return true;
         } else if (currentNode instanceof BreakStmt breakStmt) {
             jumpPackage = new JumpPackage(List.of(ForStmt.class, WhileStmt.class,
                     DoStmt.class, ForEachStmt.class, SwitchEntry.class),
                     breakStmt.getRange().get(),
-                    nodeList.indexOf(current));
+                    currentIndex);
             return true;
         } else if (currentNode instanceof ThrowStmt throwStmt) {
             jumpPackage = new JumpPackage(List.of(TryStmt.class),
                     new Range(throwStmt.getBegin().get(),
                             throwStmt.getBegin().get().right("throw".length())),
-                    nodeList.indexOf(current));
+                    currentIndex);
             return true;
         }
         return false;
@@ -427,6 +475,53 @@ public class TraceProcessor {
         return this.nodeList;
     }
 
+    /**
+     * @return the canonical ranges and links of all trace ids in the processed trace.
+     */
+    public RangeDictionary getRangeDictionary() {
+        return this.rangeDictionary;
+    }
+
+    /**
+     * @return true if the processed trace was cut off before the traced program
+     *         finished. The nodes executing at that point are marked as truncated.
+     */
+    public boolean isTruncated() {
+        return tokens.isTruncated();
+    }
+
+    /**
+     * @return the size of the trace file in bytes, known once {@link #start()} opened it.
+     */
+    public long getTraceSize() {
+        return tokens.getSize();
+    }
+
+    /**
+     * Returns how much of the trace file has been read. This may be called from
+     * another thread while {@link #start()} is running, to report its progress.
+     *
+     * @return the number of bytes of the trace file read so far.
+     */
+    public long getBytesRead() {
+        return tokens.getBytesRead();
+    }
+
+    /**
+     * Compacts the processed trace into a {@link TraceNodeTable}. The nodes are
+     * handed over to the table: the node list is empty afterwards, so only the
+     * compact representation stays in memory. Use {@link TraceNodeTable#asList()}
+     * where {@link TraceNode} objects are needed.
+     *
+     * @return the processed trace as a compact {@link TraceNodeTable}.
+     */
+    public TraceNodeTable getNodeTable() {
+        TraceNodeTable table = TraceNodeTable.of(this.nodeList);
+        this.nodeList.clear();
+        this.current = null;
+        return table;
+    }
+
     public String toString() {
         StringBuilder builder = new StringBuilder();
         for (TraceNode node : nodeList) {
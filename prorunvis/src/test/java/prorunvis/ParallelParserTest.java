@@ -0,0 +1,91 @@
+package prorunvis;
+
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class is for testing the {@link ParallelParser} class.
+ */
+class ParallelParserTest {
+
+    /**
+     * Temporary directory for the source files used in these tests.
+     */
+    @TempDir
+    private Path tempDir;
+
+    /**
+     * Tests that the files of a project are returned in the order of their
+     * paths, whatever order they were written in, and that only Java source
+     * files are parsed.
+     *
+     * @throws IOException
+     */
+    @Test
+    void parsesInOrderOfPaths() throws IOException {
+        List<Path> written = new ArrayList<>();
+        for (int i = 99; i >= 0; i--) {
+            String pkg = "p" + (i % 7);
+            written.add(write(pkg + "/C" + i + ".java", "package " + pkg + "; class C" + i + " { }"));
+        }
+        write("notes.txt", "class Text { }");
+
+        List<Path> files = ParallelParser.sourceFiles(tempDir);
+        assertEquals(100, files.size());
+        assertEquals(files.stream().sorted().toList(), files);
+
+        List<CompilationUnit> cus = ParallelParser.parse(tempDir);
+        assertEquals(written.stream().sorted().toList(),
+                cus.stream().map(cu -> cu.getStorage().orElseThrow().getPath()).toList());
+        assertEquals(cus.stream().map(CompilationUnit::toString).toList(),
+                ParallelParser.parse(tempDir).stream().map(CompilationUnit::toString).toList());
+    }
+
+    /**
+     * Tests that every file gets a result, also one with syntax errors, the
+     * action is run on every parsed compilation unit, and no symbol resolver
+     * is configured by the default configuration.
+     *
+     * @throws IOException
+     */
+    @Test
+    void runsActionOnEveryUnit() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            write("C" + i + ".java", "class C" + i + " { }");
+        }
+        write("Broken.java", "class {");
+        Set<CompilationUnit> visited = ConcurrentHashMap.newKeySet();
+
+        List<ParseResult<CompilationUnit>> results = ParallelParser.parse(ParallelParser.sourceFiles(tempDir),
+                ParserConfiguration::new, visited::add);
+
+        assertEquals(21, results.size());
+        assertFalse(results.get(0).isSuccessful());
+        assertTrue(results.subList(1, results.size()).stream().allMatch(ParseResult::isSuccessful));
+        for (ParseResult<CompilationUnit> result : results) {
+            CompilationUnit cu = result.getResult().orElseThrow();
+            assertTrue(visited.contains(cu));
+            assertFalse(cu.containsData(Node.SYMBOL_RESOLVER_KEY));
+        }
+    }
+
+    private Path write(final String path, final String content) throws IOException {
+        Path file = tempDir.resolve(path);
+        Files.createDirectories(file.getParent());
+        return Files.writeString(file, content);
+    }
+}
@@ -0,0 +1,84 @@
+package prorunvis.compileandrun;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import prorunvis.CompileDiagnostic;
+import prorunvis.InMemoryCompiler;
+
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class is for testing the {@link InMemoryCompiler} class.
+ */
+class InMemoryCompilerTest {
+
+    /**
+     * Temporary directory for the sources and classes used in these tests.
+     */
+    @TempDir
+    private Path tempDir;
+
+    /**
+     * Tests that the classes of a file and of the sources it refers to are
+     * compiled in memory and written in the layout of their packages.
+     *
+     * @throws IOException
+     */
+    @Test
+    void compilesReferencedSources() throws IOException {
+        Path main = write("app/Main.java", "package app; public class Main { util.Helper helper; }");
+        write("util/Helper.java", "package util; public class Helper { }");
+
+        InMemoryCompiler.Result result = InMemoryCompiler.compile(tempDir, List.of(main));
+
+        assertTrue(result.succeeded());
+        assertEquals(List.of("app.Main", "util.Helper"), List.copyOf(result.classes().keySet()));
+        Path classes = tempDir.resolve("classes");
+        result.write(classes);
+        assertTrue(Files.isRegularFile(classes.resolve("app/Main.class")));
+        assertTrue(Files.isRegularFile(classes.resolve("util/Helper.class")));
+    }
+
+    /**
+     * Tests that errors are reported with their file and line, and no classes are returned.
+     *
+     * @throws IOException
+     */
+    @Test
+    void reportsErrors() throws IOException {
+        Path main = write("Main.java", "public class Main {\n    int x = \"text\";\n}");
+
+        InMemoryCompiler.Result result = InMemoryCompiler.compile(tempDir, List.of(main));
+
+        assertFalse(result.succeeded());
+        assertTrue(result.classes().isEmpty());
+        CompileDiagnostic error = result.diagnostics().get(0);
+        assertEquals(Diagnostic.Kind.ERROR, error.kind());
+        assertEquals(2, error.line());
+        assertTrue(error.toString().startsWith(error.source() + ":2: error: "));
+    }
+
+    /**
+     * Tests that the classes of the compiling JVM are not visible to the compiled code.
+     *
+     * @throws IOException
+     */
+    @Test
+    void hidesOwnClassPath() throws IOException {
+        Path main = write("Main.java", "public class Main { prorunvis.InMemoryCompiler compiler; }");
+
+        assertFalse(InMemoryCompiler.compile(tempDir, List.of(main)).succeeded());
+    }
+
+    private Path write(final String path, final String content) throws IOException {
+        Path file = tempDir.resolve(path);
+        Files.createDirectories(file.getParent());
+        return Files.writeString(file, content);
+    }
+}
@@ -0,0 +1,80 @@
+package prorunvis.compileandrun;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import prorunvis.RotatingLog;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class is for testing the {@link RotatingLog} class.
+ */
+class RotatingLogTest {
+
+    /**
+     * Temporary directory for the log files used in these tests.
+     */
+    @TempDir
+    private Path tempDir;
+
+    /**
+     * Tests that a log keeps at most the given number of files of the given size,
+     * dropping the oldest output.
+     *
+     * @throws IOException
+     */
+    @Test
+    void rotatesAndDropsOldestFile() throws IOException {
+        Path file = tempDir.resolve("stdout.log");
+        try (RotatingLog log = new RotatingLog(file, 4, 3)) {
+            log.write("0123456789abcdef".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals("cdef", Files.readString(file));
+        assertEquals("89ab", Files.readString(tempDir.resolve("stdout.log.1")));
+        assertEquals("4567", Files.readString(tempDir.resolve("stdout.log.2")));
+        assertFalse(Files.exists(tempDir.resolve("stdout.log.3")));
+    }
+
+    /**
+     * Tests that the tail of a log continues into the rotated files and
+     * sees output written while the log is open.
+     *
+     * @throws IOException
+     */
+    @Test
+    void tailSpansRotatedFiles() throws IOException {
+        Path file = tempDir.resolve("stderr.log");
+        try (RotatingLog log = new RotatingLog(file, 4, 3)) {
+            log.write("0123456".getBytes(StandardCharsets.UTF_8));
+            assertEquals("23456", RotatingLog.tail(file, 5));
+            assertEquals("0123456", RotatingLog.tail(file, 100));
+        }
+    }
+
+    /**
+     * Tests that a new log replaces the files of an earlier one, and that
+     * a missing log reads as empty.
+     *
+     * @throws IOException
+     */
+    @Test
+    void replacesEarlierLog() throws IOException {
+        Path file = tempDir.resolve("stdout.log");
+        assertEquals("", RotatingLog.tail(file, 10));
+        try (RotatingLog log = new RotatingLog(file, 2, 3)) {
+            log.write("abcdef".getBytes(StandardCharsets.UTF_8));
+        }
+        try (RotatingLog log = new RotatingLog(file, 2, 3)) {
+            log.write('x');
+        }
+
+        assertEquals("x", RotatingLog.tail(file, 10));
+        assertFalse(Files.exists(tempDir.resolve("stdout.log.1")));
+    }
+}
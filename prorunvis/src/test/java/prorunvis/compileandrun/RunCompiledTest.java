@@ -0,0 +1,120 @@
+package prorunvis.compileandrun;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import prorunvis.CompileAndRun;
+import prorunvis.LaunchOptions;
+import prorunvis.RunLimits;
+import prorunvis.RunLogs;
+import prorunvis.RunOutcome;
+import prorunvis.instrument.Instrumenter;
+import prorunvis.preprocess.Preprocessor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class is for testing {@link CompileAndRun#compile} and
+ * {@link CompileAndRun#runCompiled}, which compile a project once and run it many times.
+ */
+class RunCompiledTest {
+
+    /**
+     * Temporary directory for the instrumented and compiled code used in these tests.
+     */
+    @TempDir
+    private Path tempDir;
+
+    /**
+     * Tests that runs of the same classes in different working directories
+     * each write their own trace, and leave the classes unchanged.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    void runsClassesCompiledOnce() throws IOException, InterruptedException {
+        RunLogs logs = RunLogs.in(tempDir.resolve("logs"));
+        Path classes = compile(logs);
+        List<Path> compiled = list(classes);
+
+        Path first = tempDir.resolve("first");
+        Path second = tempDir.resolve("second");
+        assertEquals(RunOutcome.COMPLETED, CompileAndRun.runCompiled("Main", classes.toString(), first.toString(),
+                Thread::new, RunLimits.NONE, logs));
+        assertEquals(RunOutcome.COMPLETED, CompileAndRun.runCompiled("Main", classes.toString(), second.toString(),
+                Thread::new, RunLimits.NONE, logs));
+
+        String trace = Files.readString(first.resolve("Trace.tr"));
+        assertFalse(trace.isEmpty());
+        assertEquals(trace, Files.readString(second.resolve("Trace.tr")));
+        assertEquals(compiled, list(classes));
+    }
+
+    /**
+     * Tests that runs from the archive of the classes write the same trace and
+     * output as runs from the classes folder, that the first run dumps the
+     * archive the following runs load, and that the archive is kept next to
+     * the classes, which are left unchanged.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    void runsFromSharedArchive() throws IOException, InterruptedException {
+        RunLogs logs = RunLogs.in(tempDir.resolve("logs"));
+        Path classes = compile(logs);
+        List<Path> compiled = list(classes);
+        CompileAndRun.runCompiled("Main", classes.toString(), tempDir.resolve("plain").toString(),
+                Thread::new, RunLimits.NONE, logs);
+        String trace = Files.readString(tempDir.resolve("plain/Trace.tr"));
+
+        LaunchOptions options = new LaunchOptions(true, List.of("-XX:TieredStopAtLevel=1", " "));
+        for (String run : new String[] {"first", "second"}) {
+            assertEquals(RunOutcome.COMPLETED, CompileAndRun.runCompiled("Main", classes.toString(),
+                    tempDir.resolve(run).toString(), Thread::new, RunLimits.NONE, logs, options));
+            assertEquals(trace, Files.readString(tempDir.resolve(run).resolve("Trace.tr")));
+            assertEquals("done", logs.tail(RunLogs.STDOUT, 100).strip());
+            assertEquals("", logs.tail(RunLogs.STDERR, 100));
+            try (Stream<Path> archives = Files.list(tempDir.resolve("classes.cds"))) {
+                assertEquals(List.of("classes-" + Runtime.version() + ".jsa", "classes.jar"),
+                        archives.map(path -> path.getFileName().toString()).sorted().toList());
+            }
+            assertEquals(compiled, list(classes));
+        }
+    }
+
+    /**
+     * Instruments and compiles a program printing "done".
+     *
+     * @return the folder of the compiled classes
+     */
+    private Path compile(final RunLogs logs) throws IOException, InterruptedException {
+        Path instrumented = tempDir.resolve("instrumented");
+        CompilationUnit cu = StaticJavaParser.parse("class Main { public static void main(String[] args) {"
+                + " if (args.length == 0) { System.out.println(\"done\"); } } }");
+        Preprocessor.run(cu);
+        Instrumenter.run(cu, new HashMap<>());
+        Files.createDirectories(instrumented);
+        Files.writeString(instrumented.resolve("Main.java"), cu.toString());
+        Instrumenter.saveTraceClass(instrumented.toFile());
+
+        Path classes = tempDir.resolve("classes");
+        CompileAndRun.compile(instrumented.toString(), classes.toString(), Thread::new, logs);
+        return classes;
+    }
+
+    private static List<Path> list(final Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.sorted().toList();
+        }
+    }
+}
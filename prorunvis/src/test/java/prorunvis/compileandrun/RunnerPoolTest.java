@@ -0,0 +1,187 @@
+package prorunvis.compileandrun;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import prorunvis.CompileAndRun;
+import prorunvis.RunLimits;
+import prorunvis.RunLogs;
+import prorunvis.RunOutcome;
+import prorunvis.RunnerPool;
+import prorunvis.instrument.Instrumenter;
+import prorunvis.preprocess.Preprocessor;
+import prorunvis.trace.process.Scanner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class is for testing the {@link RunnerPool} class.
+ */
+class RunnerPoolTest {
+
+    /**
+     * Temporary directory for the instrumented and compiled code used in these tests.
+     */
+    @TempDir
+    private Path tempDir;
+
+    /**
+     * Tests that a program run by a worker writes the same trace and output
+     * as in a JVM of its own, and that its static state is not kept for the next run.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    void runsLikeOwnJvm() throws IOException, InterruptedException {
+        try (RunnerPool pool = new RunnerPool(1, 10, 0, Thread::new)) {
+            Path classes = compile("class Main { static int runs; public static void main(String[] args) {"
+                    + " runs++; if (runs == 1) { System.out.println(runs); } } }");
+            assertTrue(pool.canRun(classes, RunLimits.NONE));
+
+            RunLogs ownLogs = RunLogs.in(tempDir.resolve("own"));
+            CompileAndRun.runCompiled("Main", classes.toString(), tempDir.resolve("own").toString(),
+                    Thread::new, RunLimits.NONE, ownLogs);
+            String trace = Files.readString(tempDir.resolve("own/Trace.tr"));
+
+            for (String run : new String[] {"first", "second"}) {
+                RunLogs logs = RunLogs.in(tempDir.resolve(run));
+                assertEquals(RunOutcome.COMPLETED,
+                        pool.run("Main", classes, tempDir.resolve(run), RunLimits.NONE, logs));
+                assertEquals(trace, Files.readString(tempDir.resolve(run).resolve("Trace.tr")));
+                assertEquals("1", logs.tail(RunLogs.STDOUT, 100).strip());
+            }
+        }
+    }
+
+    /**
+     * Tests that a program ending its JVM ends with its exit value, and the
+     * worker is replaced for the next program.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    void replacesExitedWorker() throws IOException, InterruptedException {
+        try (RunnerPool pool = new RunnerPool(1, 10, 0, Thread::new)) {
+            Path classes = compile("class Main { public static void main(String[] args) {"
+                    + " System.err.println(\"exiting\"); System.exit(3); } }");
+            RunLogs logs = RunLogs.in(tempDir.resolve("first"));
+            assertEquals(RunOutcome.COMPLETED,
+                    pool.run("Main", classes, tempDir.resolve("first"), RunLimits.NONE, logs));
+            assertEquals("exiting", logs.tail(RunLogs.STDERR, 100).strip());
+
+            Path other = compile("class Other { public static void main(String[] args) {"
+                    + " throw new IllegalStateException(); } }");
+            RunLogs otherLogs = RunLogs.in(tempDir.resolve("second"));
+            assertEquals(RunOutcome.COMPLETED,
+                    pool.run("Other", other, tempDir.resolve("second"), RunLimits.NONE, otherLogs));
+            assertTrue(otherLogs.tail(RunLogs.STDERR, 1000)
+                    .startsWith("Exception in thread \"main\" java.lang.IllegalStateException"));
+        }
+    }
+
+    /**
+     * Tests that a worker is kept for the next program, but replaced after a
+     * program replacing System.out or changing the default locale or time
+     * zone, whose changes are not seen by the next program.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    void replacesWorkerAfterGlobalChanges() throws IOException, InterruptedException {
+        try (RunnerPool pool = new RunnerPool(1, 10, 0, Thread::new)) {
+            Path quiet = compile("class Quiet { public static void main(String[] args) {"
+                    + " System.out.println(ProcessHandle.current().pid() + \" \" + java.util.Locale.getDefault()"
+                    + " + \" \" + java.util.TimeZone.getDefault().getID()); } }");
+            Path replacing = compile("class Replacing { public static void main(String[] args) {"
+                    + " System.out.println(ProcessHandle.current().pid());"
+                    + " System.setOut(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()));"
+                    + " java.util.Locale.setDefault(java.util.Locale.JAPAN);"
+                    + " java.util.TimeZone.setDefault(java.util.TimeZone.getTimeZone(\"Pacific/Kiritimati\")); } }");
+
+            String first = run(pool, "Quiet", quiet, "first");
+            assertEquals(first, run(pool, "Quiet", quiet, "second"));
+            String pid = run(pool, "Replacing", replacing, "replacing");
+            assertEquals(first.split(" ")[0], pid);
+
+            String after = run(pool, "Quiet", quiet, "after");
+            assertNotEquals(pid, after.split(" ")[0]);
+            assertEquals(first.substring(pid.length()), after.substring(after.indexOf(' ')));
+        }
+    }
+
+    /**
+     * Tests that a worker is replaced after a program leaves a file in its
+     * working directory, so the next program does not see the file.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    void replacesWorkerAfterWrittenFiles() throws IOException, InterruptedException {
+        try (RunnerPool pool = new RunnerPool(1, 10, 0, Thread::new)) {
+            Path writing = compile("class Writing { public static void main(String[] args) throws Exception {"
+                    + " System.out.println(new java.io.File(\"left.txt\").exists());"
+                    + " java.nio.file.Files.writeString(java.nio.file.Path.of(\"left.txt\"), \"left\"); } }");
+
+            assertEquals("false", run(pool, "Writing", writing, "first"));
+            assertEquals("false", run(pool, "Writing", writing, "second"));
+        }
+    }
+
+    /**
+     * Tests that a program exceeding its time is stopped and its trace marked as truncated.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    void stopsProgramAfterTimeout() throws IOException, InterruptedException {
+        try (RunnerPool pool = new RunnerPool(1, 10, 0, Thread::new)) {
+            Path classes = compile("class Main { public static void main(String[] args) { while (true) { } } }");
+            RunLimits limits = new RunLimits(Duration.ofMillis(500), 0, 0);
+            assertEquals(RunOutcome.TIMED_OUT, pool.run("Main", classes, tempDir.resolve("run"), limits,
+                    RunLogs.in(tempDir.resolve("run"))));
+            assertTrue(Files.readString(tempDir.resolve("run/Trace.tr")).contains(Scanner.TRUNCATED_MARKER));
+        }
+    }
+
+    /**
+     * Runs a program in the pool and returns its standard output.
+     */
+    private String run(final RunnerPool pool, final String mainClass, final Path classes, final String run)
+            throws IOException, InterruptedException {
+        RunLogs logs = RunLogs.in(tempDir.resolve(run));
+        assertEquals(RunOutcome.COMPLETED, pool.run(mainClass, classes, tempDir.resolve(run), RunLimits.NONE, logs));
+        return logs.tail(RunLogs.STDOUT, 1000).strip();
+    }
+
+    /**
+     * Instruments and compiles a program consisting of a single class.
+     *
+     * @return the folder of the compiled classes
+     */
+    private Path compile(final String source) throws IOException, InterruptedException {
+        CompilationUnit cu = StaticJavaParser.parse(source);
+        Preprocessor.run(cu);
+        Instrumenter.run(cu, new HashMap<>());
+        Path dir = Files.createTempDirectory(tempDir, "program");
+        Path instrumented = dir.resolve("instrumented");
+        Files.createDirectories(instrumented);
+        Files.writeString(instrumented.resolve(cu.getType(0).getNameAsString() + ".java"), cu.toString());
+        Instrumenter.saveTraceClass(instrumented.toFile());
+        Path classes = dir.resolve("classes");
+        CompileAndRun.compile(instrumented.toString(), classes.toString(), Thread::new,
+                RunLogs.in(dir.resolve("logs")));
+        return classes;
+    }
+}
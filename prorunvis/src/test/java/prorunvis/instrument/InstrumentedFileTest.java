@@ -0,0 +1,103 @@
+package prorunvis.instrument;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import prorunvis.preprocess.Preprocessor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class is for testing the {@link InstrumentedFile} class.
+ */
+class InstrumentedFileTest {
+
+    /**
+     * The files of a project with two classes in different packages.
+     */
+    private final List<Path> files = List.of(
+            Paths.get("src/test/testfiles/compileandrun/test1/Test1.java"),
+            Paths.get("src/test/testfiles/compileandrun/test1/testing/Test2.java"));
+
+    /**
+     * Temporary directory for the saved files used in these tests.
+     */
+    @TempDir
+    private Path tempDir;
+
+    /**
+     * Tests that files instrumented on their own and offset by the ids of the
+     * files before them equal the files instrumented together.
+     *
+     * @throws IOException
+     */
+    @Test
+    void offsetFilesEqualProjectInstrumentation() throws IOException {
+        Map<Integer, Node> map = new HashMap<>();
+        int firstId = 0;
+        for (Path file : files) {
+            CompilationUnit together = parse(file);
+            Instrumenter.run(together, map);
+
+            InstrumentedFile alone = InstrumentedFile.of(parse(file));
+            assertEquals(together.toString(), alone.source(firstId));
+            firstId += alone.traceIds();
+        }
+        assertEquals(map.size(), firstId);
+    }
+
+    /**
+     * Tests that only the trace calls added by the instrumentation are offset,
+     * not text equal to a trace call in string literals and comments.
+     */
+    @Test
+    void offsetsOnlyAddedTraceCalls() {
+        String literal = "\"prorunvis.Trace.next_elem(0)\"";
+        CompilationUnit cu = StaticJavaParser.parse("class Main { public static void main(String[] args) {\n"
+                + "    // prorunvis.Trace.next_elem(1)\n"
+                + "    if (args.length == 0) { System.out.println(" + literal + "); } } }");
+        Preprocessor.run(cu);
+        InstrumentedFile file = InstrumentedFile.of(cu);
+
+        String source = file.source(7);
+        assertTrue(source.contains("System.out.println(" + literal + ")"));
+        assertTrue(source.contains("// prorunvis.Trace.next_elem(1)"));
+        for (int id = 7; id < 7 + file.traceIds(); id++) {
+            assertTrue(source.contains("prorunvis.Trace.next_elem(" + id + ");"));
+        }
+        // the added calls, the comment and the literal
+        assertEquals(file.traceIds() + 2, source.split("prorunvis\\.Trace\\.next_elem\\(", -1).length - 1);
+        assertEquals(source, InstrumentedFile.fromJson(file.toJson()).source(7));
+    }
+
+    /**
+     * Tests that a file is saved at the path given by its package.
+     *
+     * @throws IOException
+     */
+    @Test
+    void savesByPackage() throws IOException {
+        InstrumentedFile file = InstrumentedFile.of(parse(files.get(1)));
+        Path saved = file.save(tempDir, "Test2.java", 5);
+
+        assertEquals(tempDir.resolve("testing/Test2.java"), saved);
+        assertEquals(file.source(5), Files.readString(saved));
+        assertTrue(Files.readString(saved).contains("prorunvis.Trace.next_elem(5)"));
+    }
+
+    private static CompilationUnit parse(final Path file) throws IOException {
+        CompilationUnit cu = StaticJavaParser.parse(file);
+        Preprocessor.run(cu);
+        return cu;
+    }
+}
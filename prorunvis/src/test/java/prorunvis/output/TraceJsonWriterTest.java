@@ -0,0 +1,165 @@
+package prorunvis.output;
+
+import com.github.javaparser.Range;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.jupiter.api.Test;
+import prorunvis.trace.TraceNode;
+import prorunvis.trace.TraceNodeTable;
+import prorunvis.trace.process.JumpLink;
+import prorunvis.trace.process.RangeDictionary;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class is for testing the {@link TraceJsonWriter} and {@link TraceJsonReader} classes.
+ */
+class TraceJsonWriterTest {
+
+    /**
+     * Tests that the {@link SchemaVersion#V1} schema is written exactly like
+     * Gson serialized the node list before the writer existed, compact and
+     * pretty printed, and that it is read back unchanged.
+     *
+     * @throws IOException
+     */
+    @Test
+    void writesV1LikeGson() throws IOException {
+        List<TraceNode> nodes = createNodes(new RangeDictionary());
+
+        String compact = write(new TraceJsonWriter(false), nodes);
+        assertEquals(new Gson().toJson(nodes), compact);
+        String pretty = write(new TraceJsonWriter(true), nodes);
+        assertEquals(new GsonBuilder().setPrettyPrinting().create().toJson(nodes), pretty);
+
+        assertEquals(new Gson().toJson(nodes), new Gson().toJson(TraceJsonReader.read(new StringReader(compact))));
+    }
+
+    /**
+     * Tests that nodes written in the {@link SchemaVersion#V2} schema are read
+     * back unchanged.
+     *
+     * @throws IOException
+     */
+    @Test
+    void roundTripV2() throws IOException {
+        List<TraceNode> nodes = createNodes(new RangeDictionary());
+
+        String json = write(new TraceJsonWriter(false, SchemaVersion.V2), nodes);
+        assertTrue(json.startsWith("{\"version\":2,"));
+        assertFalse(json.contains("\"static\""));
+
+        assertEquals(new Gson().toJson(nodes), new Gson().toJson(TraceJsonReader.read(new StringReader(json))));
+    }
+
+    /**
+     * Tests that nodes written in the {@link SchemaVersion#V3} schema leave out
+     * their canonical ranges and links, and get them back from the dictionary
+     * when read, while differing ranges and a missing link are kept.
+     *
+     * @throws IOException
+     */
+    @Test
+    void roundTripV3() throws IOException {
+        RangeDictionary dictionary = new RangeDictionary();
+        List<TraceNode> nodes = createNodes(dictionary);
+
+        String json = write(new TraceJsonWriter(false, SchemaVersion.V3, dictionary), nodes);
+        assertTrue(json.startsWith("{\"version\":3,"));
+        // only the root and the iteration left early carry ranges besides the dictionary
+        assertEquals(2 + dictionary.getRanges().size(), json.split("\"ranges\"", -1).length - 1);
+        assertTrue(json.contains("\"link\":null"));
+
+        List<TraceNode> read = TraceJsonReader.read(new StringReader(json));
+        assertEquals(new Gson().toJson(nodes), new Gson().toJson(read));
+        assertSame(read.get(2).getRanges(), read.get(3).getRanges());
+        assertNull(read.get(4).getLink());
+    }
+
+    /**
+     * Tests that a {@link TraceNodeTable} is written exactly like the nodes it
+     * was created from, so the nodes can be released once they are compacted.
+     *
+     * @throws IOException
+     */
+    @Test
+    void writesTableLikeNodes() throws IOException {
+        RangeDictionary dictionary = new RangeDictionary();
+        List<TraceNode> nodes = createNodes(dictionary);
+        List<TraceNode> view = TraceNodeTable.of(nodes).asList();
+
+        assertEquals(write(new TraceJsonWriter(false), nodes), write(new TraceJsonWriter(false), view));
+        for (SchemaVersion version : SchemaVersion.values()) {
+            TraceJsonWriter writer = new TraceJsonWriter(false, version, dictionary);
+            assertEquals(write(writer, nodes), write(writer, view));
+        }
+    }
+
+    /**
+     * Tests that an unknown schema version is rejected.
+     */
+    @Test
+    void rejectsUnknownVersion() {
+        assertTrue(SchemaVersion.find(4).isEmpty());
+        assertEquals(SchemaVersion.V3, SchemaVersion.find(3).orElseThrow());
+        assertThrows(IOException.class,
+                () -> TraceJsonReader.read(new StringReader("{\"version\":4,\"nodes\":[]}")));
+    }
+
+    private static String write(final TraceJsonWriter writer, final List<TraceNode> nodes) throws IOException {
+        StringWriter out = new StringWriter();
+        writer.write(nodes, out);
+        return out.toString();
+    }
+
+    /**
+     * Creates the nodes of a main method running a loop three times, leaving the
+     * last iteration early, with the ranges and links interned like
+     * {@link prorunvis.trace.process.TraceProcessor} does.
+     */
+    private static List<TraceNode> createNodes(final RangeDictionary dictionary) {
+        List<TraceNode> nodes = new ArrayList<>();
+
+        TraceNode root = new TraceNode(null, "root");
+        root.addChildIndex(1);
+        nodes.add(root);
+
+        TraceNode main = new TraceNode(0, "0");
+        main.setNodeType("Function");
+        main.setNodeMethodName("main(String[])");
+        main.setUniqueTraceId("0");
+        main.addRange(Range.range(2, 5, 2, 20));
+        main.setLink(new JumpLink(Range.range(1, 24, 1, 27), "Test.java"));
+        main.addOutLink(new JumpLink(Range.range(6, 5, 6, 11), "Test.java"));
+        nodes.add(main);
+
+        for (int iteration = 1; iteration <= 3; iteration++) {
+            TraceNode loop = new TraceNode(1, "1");
+            loop.setNodeType("Loop");
+            loop.setIteration(iteration);
+            loop.setUniqueTraceId("1_iter" + iteration);
+            loop.addRange(Range.range(4, 5, 4, 9));
+            if (iteration < 3) {
+                loop.addRange(Range.range(5, 5, 5, 9));
+                loop.setLink(new JumpLink(Range.range(3, 5, 3, 7), null));
+            } else {
+                loop.setTruncated(true);
+            }
+            main.addChildIndex(nodes.size());
+            nodes.add(loop);
+        }
+
+        for (TraceNode node : nodes.subList(1, nodes.size())) {
+            int id = Integer.parseInt(node.getTraceID());
+            node.setRanges(dictionary.intern(id, node.getRanges()));
+            dictionary.putLinkIfAbsent(id, node.getLink());
+        }
+        return nodes;
+    }
+}
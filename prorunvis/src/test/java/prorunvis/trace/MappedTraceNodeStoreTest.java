@@ -0,0 +1,80 @@
+package prorunvis.trace;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class is for testing the {@link MappedTraceNodeStore} class.
+ */
+class MappedTraceNodeStoreTest {
+
+    /**
+     * Temporary directory for the store files used in these tests.
+     */
+    @TempDir
+    private Path tempDir;
+
+    /**
+     * Tests that a store read back from disk holds the same nodes it was written from.
+     *
+     * @throws IOException
+     */
+    @Test
+    void writeAndOpen() throws IOException {
+        List<TraceNode> nodes = TraceNodeTableTest.createNodes();
+        Path file = tempDir.resolve("processedTrace.bin");
+        MappedTraceNodeStore.write(TraceNodeTable.of(nodes), file);
+
+        MappedTraceNodeStore store = MappedTraceNodeStore.open(file);
+        assertEquals(nodes.size(), store.size());
+        assertEquals(3, store.getChild(1, 1));
+        assertEquals(2, store.getIterationCount(3));
+        assertEquals(2, store.getIterationNode(3, 0));
+        assertTrue(store.isTruncated(3));
+        for (int i = 0; i < nodes.size(); i++) {
+            TraceNodeTableTest.assertNodeEquals(nodes.get(i), store.getNode(i));
+        }
+    }
+
+    /**
+     * Tests that a store mapped in chunks smaller than its sections, as stores
+     * larger than a single mapping are, holds the same nodes.
+     *
+     * @throws IOException
+     */
+    @Test
+    void openInChunks() throws IOException {
+        List<TraceNode> nodes = TraceNodeTableTest.createNodes();
+        Path file = tempDir.resolve("processedTrace.bin");
+        MappedTraceNodeStore.write(TraceNodeTable.of(nodes), file);
+
+        for (int chunkBytes = Integer.BYTES; chunkBytes <= 256; chunkBytes <<= 1) {
+            MappedTraceNodeStore store = MappedTraceNodeStore.open(file, chunkBytes);
+            assertEquals(nodes.size(), store.size());
+            assertEquals(3, store.getChild(1, 1));
+            assertEquals(2, store.getIterationNode(3, 0));
+            for (int i = 0; i < nodes.size(); i++) {
+                TraceNodeTableTest.assertNodeEquals(nodes.get(i), store.getNode(i));
+            }
+        }
+    }
+
+    /**
+     * Tests that files which are no store are rejected.
+     *
+     * @throws IOException
+     */
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path file = tempDir.resolve("processedTrace.json");
+        Files.writeString(file, "[".repeat(200));
+        assertThrows(IOException.class, () -> MappedTraceNodeStore.open(file));
+    }
+}
@@ -0,0 +1,98 @@
+package prorunvis.trace;
+
+import com.github.javaparser.Range;
+import org.junit.jupiter.api.Test;
+import prorunvis.trace.process.JumpLink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class is for testing the {@link TraceNodeTable} class.
+ */
+class TraceNodeTableTest {
+
+    /**
+     * Tests that a table and its list view hold the same information
+     * as the nodes it was created from.
+     */
+    @Test
+    void roundTrip() {
+        List<TraceNode> nodes = createNodes();
+        TraceNodeTable table = TraceNodeTable.of(nodes);
+
+        assertEquals(4, table.size());
+        assertEquals(TraceNodeSource.NONE, table.getParent(0));
+        assertEquals(TraceNodeSource.NONE, table.getTraceId(0));
+        assertEquals(2, table.getChildCount(1));
+        assertEquals(3, table.getChild(1, 1));
+        assertEquals(2, table.getIteration(3));
+        assertEquals(Range.range(4, 5, 4, 9), table.getRange(3, 0));
+        assertEquals("Test.java", table.getLink(1).getFilepath());
+        assertNull(table.getLink(2).getFilepath());
+        assertEquals(0, table.getIterationCount(1));
+        assertEquals(2, table.getIterationCount(2));
+        assertEquals(3, table.getIterationNode(2, 1));
+        assertTrue(table.isTruncated(3));
+        assertFalse(table.isTruncated(2));
+
+        List<TraceNode> view = table.asList();
+        assertEquals(nodes.size(), view.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            assertNodeEquals(nodes.get(i), view.get(i));
+        }
+    }
+
+    static void assertNodeEquals(final TraceNode expected, final TraceNode actual) {
+        assertEquals(expected.getTraceID(), actual.getTraceID());
+        assertEquals(expected.getUniqueTraceId(), actual.getUniqueTraceId());
+        assertEquals(expected.getParentIndex(), actual.getParentIndex());
+        assertEquals(expected.getChildrenIndices(), actual.getChildrenIndices());
+        assertEquals(expected.getRanges(), actual.getRanges());
+        assertEquals(String.valueOf(expected.getLink()), String.valueOf(actual.getLink()));
+        assertEquals(expected.getOutLinks().toString(), actual.getOutLinks().toString());
+        assertEquals(expected.getOutIndex(), actual.getOutIndex());
+        assertEquals(expected.getIteration(), actual.getIteration());
+        assertEquals(expected.getNodeType(), actual.getNodeType());
+        assertEquals(expected.getNodeMethodName(), actual.getNodeMethodName());
+        assertEquals(expected.isTruncated(), actual.isTruncated());
+    }
+
+    static List<TraceNode> createNodes() {
+        List<TraceNode> nodes = new ArrayList<>();
+        Range body = Range.range(4, 5, 4, 9);
+
+        TraceNode root = new TraceNode(null, "root");
+        root.addChildIndex(1);
+        nodes.add(root);
+
+        TraceNode main = new TraceNode(0, "0");
+        main.setNodeType("Function");
+        main.setNodeMethodName("main(String[])");
+        main.setUniqueTraceId("0");
+        main.addChildIndex(2);
+        main.addChildIndex(3);
+        main.addRange(Range.range(2, 5, 2, 20));
+        main.setLink(new JumpLink(Range.range(1, 24, 1, 27), "Test.java"));
+        main.addOutLink(new JumpLink(Range.range(6, 5, 6, 11), "Test.java"));
+        nodes.add(main);
+
+        for (int iteration = 1; iteration <= 2; iteration++) {
+            TraceNode loop = new TraceNode(1, "1");
+            loop.setNodeType("Loop");
+            loop.setIteration(iteration);
+            loop.setUniqueTraceId(iteration > 0 ? "1_iter" + iteration : "1");
+            loop.addRange(body);
+            loop.setLink(new JumpLink(Range.range(3, 5, 3, 7), null));
+            nodes.add(loop);
+        }
+
+        // the trace was cut during the second iteration
+        for (int index : List.of(0, 1, 3)) {
+            nodes.get(index).setTruncated(true);
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,192 @@
+package prorunvis.trace.process;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import prorunvis.CompileAndRun;
+import prorunvis.RunLimits;
+import prorunvis.RunLogs;
+import prorunvis.instrument.InstrumentedFile;
+import prorunvis.instrument.Instrumenter;
+import prorunvis.instrument.Manifest;
+import prorunvis.preprocess.Preprocessor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class is for testing the {@link LazyTraceMap}, processing the programs of
+ * the {@link TraceProcessorTest} from a {@link Manifest} instead of the
+ * instrumented compilation units.
+ */
+class LazyTraceMapTest {
+
+    /**
+     * Testdirectory for TraceProcessor tests.
+     */
+    private final String testDir = "src/test/testfiles/traceprocessor/";
+
+    /**
+     * Temporary directory for the instrumented and compiled code used in these tests.
+     */
+    @TempDir
+    private Path tempDir;
+
+    /**
+     * Tests that a trace processed with the nodes of the manifest equals the
+     * trace processed with the nodes of the instrumentation.
+     *
+     * @throws IOException
+     */
+    @Test
+    void processesLikeInstrumentedMap() throws IOException {
+        process(Paths.get(testDir + "returntest/resources/in"));
+        process(Paths.get(testDir + "breakcontinuetest/resources/in"));
+        process(Paths.get(testDir + "throwtest/resources/in"));
+    }
+
+    /**
+     * Tests that only the files the trace passes through are parsed.
+     *
+     * @throws IOException
+     */
+    @Test
+    void parsesOnlyTracedFiles() throws IOException {
+        Path rootDir = tempDir.resolve("in");
+        Files.createDirectories(rootDir);
+        Files.copy(Paths.get(testDir + "returntest/resources/in/ReturnTest.java"),
+                rootDir.resolve("ReturnTest.java"));
+        Files.writeString(rootDir.resolve("Unused.java"), "class Unused { void unused() { } }");
+
+        Path out = tempDir.resolve("out");
+        Manifest manifest = instrument(rootDir, out);
+        LazyTraceMap map = new LazyTraceMap(manifest, rootDir);
+        TraceProcessor processor = new TraceProcessor(map, run(manifest, out).toString(), rootDir);
+        processor.start();
+
+        assertEquals(2, manifest.files().size());
+        assertEquals(1, map.loadedFiles());
+    }
+
+    /**
+     * Tests that a file changed since it was instrumented is rejected.
+     *
+     * @throws IOException
+     */
+    @Test
+    void rejectsChangedFile() throws IOException {
+        Path rootDir = tempDir.resolve("in");
+        Files.createDirectories(rootDir);
+        Path file = rootDir.resolve("Changed.java");
+        Files.writeString(file, "class Changed { void changed() { } }");
+
+        LazyTraceMap map = new LazyTraceMap(instrument(rootDir, tempDir.resolve("out")), rootDir);
+        Files.writeString(file, "class Changed { void changed() { if (true) { } } }");
+
+        assertThrows(IllegalStateException.class, () -> map.get(0));
+    }
+
+    /**
+     * Tests that a manifest is read back as written.
+     *
+     * @throws IOException
+     */
+    @Test
+    void readsWrittenManifest() throws IOException {
+        Manifest manifest = instrument(Paths.get(testDir + "throwtest/resources/in"), tempDir.resolve("out"));
+        Path file = tempDir.resolve(Manifest.FILE_NAME);
+        manifest.write(file);
+
+        assertEquals(manifest, Manifest.read(file));
+        assertEquals(-1, manifest.fileIndexOf(manifest.traceIds()));
+        assertEquals(manifest.files().size() - 1, manifest.fileIndexOf(manifest.traceIds() - 1));
+    }
+
+    /**
+     * Instruments, compiles and runs a project, then processes its trace with a
+     * {@link LazyTraceMap} and with the map of instrumenting all files in the
+     * same order, and compares the results.
+     *
+     * @param rootDir the folder of the project.
+     * @throws IOException
+     */
+    private void process(final Path rootDir) throws IOException {
+        Path out = tempDir.resolve(rootDir.getParent().getParent().getFileName());
+        Manifest manifest = instrument(rootDir, out);
+        Path traceFile = run(manifest, out);
+
+        Map<Integer, Node> map = new HashMap<>();
+        for (Path path : sourceFiles(rootDir)) {
+            CompilationUnit cu = StaticJavaParser.parse(path);
+            Preprocessor.run(cu);
+            Instrumenter.run(cu, map);
+        }
+        TraceProcessor expected = new TraceProcessor(map, traceFile.toString(), rootDir);
+        expected.start();
+
+        TraceProcessor actual = new TraceProcessor(new LazyTraceMap(manifest, rootDir), traceFile.toString(),
+                rootDir);
+        actual.start();
+
+        assertFalse(actual.getNodeList().isEmpty());
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    /**
+     * Instruments the files of a project one by one in the order of their paths,
+     * saving them to "instrumented" in the output folder.
+     */
+    private Manifest instrument(final Path rootDir, final Path outDir) throws IOException {
+        Path out = outDir.resolve("instrumented");
+        List<Manifest.SourceFile> sourceFiles = new ArrayList<>();
+        String mainClass = null;
+        int firstId = 0;
+        for (Path path : sourceFiles(rootDir)) {
+            CompilationUnit cu = StaticJavaParser.parse(path);
+            Preprocessor.run(cu);
+            InstrumentedFile file = InstrumentedFile.of(cu);
+            String fileName = path.getFileName().toString();
+            file.save(out, fileName, firstId);
+            if (mainClass == null && file.mainMethod()) {
+                mainClass = file.className(fileName);
+            }
+            sourceFiles.add(new Manifest.SourceFile(rootDir.relativize(path).toString(),
+                    Manifest.hash(Files.readAllBytes(path)), firstId, file.nodes()));
+            firstId += file.traceIds();
+        }
+        Instrumenter.saveTraceClass(out.toFile());
+        return Manifest.of(sourceFiles, mainClass);
+    }
+
+    private static List<Path> sourceFiles(final Path rootDir) throws IOException {
+        try (Stream<Path> walk = Files.walk(rootDir)) {
+            return walk.filter(path -> path.toString().endsWith(".java")).sorted().toList();
+        }
+    }
+
+    /**
+     * Compiles and runs the project instrumented to the output folder.
+     *
+     * @return the trace file
+     */
+    private Path run(final Manifest manifest, final Path outDir) throws IOException {
+        Path compiled = outDir.resolve("compiled");
+        try {
+            CompileAndRun.run(manifest.mainClass(), outDir.resolve("instrumented").toString(), compiled.toString(),
+                    Thread::new, RunLimits.NONE, RunLogs.in(outDir.resolve("logs")));
+        } catch (InterruptedException ignored) {
+        }
+        return compiled.resolve("Trace.tr");
+    }
+}
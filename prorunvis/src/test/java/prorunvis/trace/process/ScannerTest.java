@@ -0,0 +1,112 @@
+package prorunvis.trace.process;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class is for testing the {@link Scanner} class.
+ */
+class ScannerTest {
+
+    /**
+     * Temporary directory for the trace files used in these tests.
+     */
+    @TempDir
+    private Path tempDir;
+
+    /**
+     * Tests that the tokens are read in the order of the trace file,
+     * regardless of the line separator used.
+     *
+     * @throws IOException
+     */
+    @Test
+    void readsTokensInOrder() throws IOException {
+        Path trace = tempDir.resolve("Trace.tr");
+        Files.writeString(trace, "3\n0\r\n12\n\n7");
+
+        List<Integer> tokens = new ArrayList<>();
+        try (Scanner scanner = new Scanner(trace.toString())) {
+            scanner.open();
+            assertEquals(3, scanner.peek());
+            while (scanner.hasNext()) {
+                tokens.add(scanner.next());
+            }
+            assertThrows(NoSuchElementException.class, scanner::peek);
+        }
+
+        assertIterableEquals(List.of(3, 0, 12, 7), tokens);
+    }
+
+    /**
+     * Tests that a trace file containing something other than ids is rejected.
+     *
+     * @throws IOException
+     */
+    @Test
+    void rejectsMalformedTokens() throws IOException {
+        Path trace = tempDir.resolve("Trace.tr");
+        Files.writeString(trace, "1\nx2\n");
+
+        try (Scanner scanner = new Scanner(trace.toString())) {
+            scanner.open();
+            assertEquals(1, scanner.next());
+            assertThrows(UncheckedIOException.class, scanner::next);
+        }
+    }
+
+    /**
+     * Tests that the marker of a truncated trace ends the tokens and is reported.
+     *
+     * @throws IOException
+     */
+    @Test
+    void readsTruncationMarker() throws IOException {
+        Path trace = tempDir.resolve("Trace.tr");
+        Files.writeString(trace, "0\n1\n" + Scanner.TRUNCATED_MARKER + "\n");
+
+        try (Scanner scanner = new Scanner(trace.toString())) {
+            scanner.open();
+            assertEquals(0, scanner.next());
+            assertFalse(scanner.isTruncated());
+            assertEquals(1, scanner.next());
+            assertFalse(scanner.hasNext());
+            assertTrue(scanner.isTruncated());
+        }
+    }
+
+    /**
+     * Tests that ids following the marker of a truncated trace are rejected.
+     *
+     * @throws IOException
+     */
+    @Test
+    void rejectsTokensAfterMarker() throws IOException {
+        Path trace = tempDir.resolve("Trace.tr");
+        Files.writeString(trace, Scanner.TRUNCATED_MARKER + "\n3\n");
+
+        try (Scanner scanner = new Scanner(trace.toString())) {
+            scanner.open();
+            assertThrows(UncheckedIOException.class, scanner::hasNext);
+        }
+    }
+
+    /**
+     * Tests that opening a missing trace file fails with an {@link IOException}.
+     */
+    @Test
+    void missingFile() {
+        Scanner scanner = new Scanner(tempDir.resolve("missing.tr").toString());
+        assertThrows(IOException.class, scanner::open);
+    }
+}
@@ -6,9 +6,12 @@ import com.github.javaparser.symbolsolver.utils.SymbolSolverCollectionStrategy;
 import com.github.javaparser.utils.ProjectRoot;
 import org.junit.jupiter.api.Test;
 import prorunvis.CompileAndRun;
+import prorunvis.RunLimits;
+import prorunvis.RunOutcome;
 import prorunvis.Tester;
 import prorunvis.instrument.Instrumenter;
 import prorunvis.preprocess.Preprocessor;
+import prorunvis.trace.TraceNode;
 
 import java.io.*;
 import java.nio.file.Path;
@@ -57,6 +60,54 @@ class TraceProcessorTest extends Tester {
                 testDir + "throwtestsolution/expectedTracenodes.tr");
     }
 
+    /**
+     * Tests that the trace of a program stopped for exceeding its trace size
+     * is processed into a valid tree, with the nodes executing at the end of
+     * the trace marked as truncated.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Test
+    void truncatedTest() throws IOException, InterruptedException {
+        String resourcePath = testDir + "truncatedtest/resources";
+        Path rootDir = Paths.get(resourcePath + "/in");
+        ProjectRoot projectRoot = new SymbolSolverCollectionStrategy().
+                collect(rootDir.toAbsolutePath());
+        List<CompilationUnit> cus = createCompilationUnits(projectRoot);
+
+        Map<Integer, Node> map = new HashMap<>();
+        cus.forEach(cu -> {
+            Preprocessor.run(cu);
+            Instrumenter.run(cu, map);
+        });
+        Instrumenter.saveInstrumented(projectRoot, resourcePath + "/out/instrumented");
+        File traceFile = new File(resourcePath + "/out/compiled/Trace.tr");
+        traceFile.delete();
+
+        RunOutcome outcome = CompileAndRun.run(cus, resourcePath + "/out/instrumented",
+                resourcePath + "/out/compiled", Thread::new, new RunLimits(null, 0, 100));
+        assertEquals(RunOutcome.TRACE_LIMIT_EXCEEDED, outcome);
+
+        TraceProcessor processor = new TraceProcessor(map, traceFile.getPath(), rootDir);
+        processor.start();
+        assertTrue(processor.isTruncated());
+
+        List<TraceNode> nodes = processor.getNodeList();
+        TraceNode last = nodes.get(nodes.size() - 1);
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int child : nodes.get(i).getChildrenIndices()) {
+                assertEquals(i, nodes.get(child).getParentIndex());
+            }
+        }
+        // exactly the last node and its ancestors were executing when the trace was cut
+        for (TraceNode node = last; node != null;
+             node = node.getParentIndex() == null ? null : nodes.get(node.getParentIndex())) {
+            assertTrue(node.isTruncated());
+        }
+        assertEquals(3, nodes.stream().filter(TraceNode::isTruncated).count());
+    }
+
     /**
      * Runs the program normally with the given input and compares the output to a
      * given expected result.
@@ -0,0 +1,15 @@
+public class EndlessTest {
+    public static void main(String[] args) {
+        int i = 0;
+        while (true) {
+            i = step(i);
+            if (i < 0) {
+                System.out.println(i);
+            }
+        }
+    }
+
+    static int step(int i) {
+        return i + 1;
+    }
+}